@@ -9,6 +9,7 @@ public class Main {
     public static void main(String[] args) throws IOException {
 
         int PORT = Integer.parseInt(ApplicationConfig.getProperty("javalin.port"));
+        ApplicationConfig.configureThreads();
         Javalin app = Javalin.create();
         ApplicationConfig.startServer(app, PORT);
     }
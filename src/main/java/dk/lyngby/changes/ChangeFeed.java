@@ -0,0 +1,304 @@
+package dk.lyngby.changes;
+
+import dk.lyngby.config.ApplicationConfig;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.dto.ChangeFeedMetricsDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Fans the hotel and room changes out to every subscribed stream. The daos publish after their transaction has committed,
+// publishing only puts the event in each subscriber's bounded queue, so a write never waits on a stream.
+// A few sender threads write the queues out, a subscriber whose queue is full or whose client takes longer than the write
+// timeout to take a write is too slow and is disconnected, so it never holds a sender for the others. It reconnects with the id of the last event it got and catches up from the outbox.
+// That id is the position in every shard up to which the client has all events, see ChangeEventDao
+public class ChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final Duration HEARTBEAT = Duration.ofSeconds(15);
+    // a position whose transaction rolled back is never published
+    private static final Duration PENDING_TIMEOUT = Duration.ofMinutes(1);
+
+    private static ChangeFeed instance;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(threads("change-feed-timer"));
+    private final int bufferSize;
+    private final long writeTimeoutNanos;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+    // per shard the positions handed out on this node and not published yet, with the nano time they were handed out
+    private final Map<Integer, ConcurrentSkipListMap<Long, Long>> pending = new ConcurrentHashMap<>();
+
+    // Where a subscriber's events are written, an SSE stream in the app
+    public interface Sink {
+        // the last event id is the position the client resumes from
+        void send(ChangeEventDto event, String lastEventId);
+
+        // the events since the client's last event are gone, it has to reload everything it holds
+        void reset();
+
+        void heartbeat();
+
+        boolean isClosed();
+
+        void close();
+    }
+
+    public ChangeFeed(int bufferSize, int senderThreads, Duration writeTimeout) {
+        this.bufferSize = bufferSize;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        this.senders = Executors.newFixedThreadPool(senderThreads, threads("change-feed"));
+        timer.scheduleAtFixedRate(() -> subscribers.forEach(Subscriber::ping), HEARTBEAT.toMillis(), HEARTBEAT.toMillis(), TimeUnit.MILLISECONDS);
+        long checkMillis = Math.max(1, writeTimeout.toMillis() / 2);
+        timer.scheduleAtFixedRate(() -> subscribers.forEach(Subscriber::checkWrite), checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized ChangeFeed getInstance() {
+        if (instance == null) {
+            instance = new ChangeFeed(getProperty("changes.subscriber.buffer", 1000), getProperty("changes.sender.threads", 4),
+                    Duration.ofMillis(getProperty("changes.write.timeout.millis", 10_000)));
+        }
+        return instance;
+    }
+
+    // A position handed out in a transaction that has not committed yet, the events after it are not acknowledged to the
+    // subscribers until it is published, its transaction may commit first
+    public void allocated(int shard, long position) {
+        pending.computeIfAbsent(shard, s -> new ConcurrentSkipListMap<>()).put(position, System.nanoTime());
+    }
+
+    public void publish(ChangeEventDto event) {
+        published.increment();
+        Published offered = new Published(event, acknowledged(event.shard(), event.position()));
+        for (Subscriber subscriber : subscribers) subscriber.offer(offered);
+        ConcurrentSkipListMap<Long, Long> positions = pending.get(event.shard());
+        if (positions != null) positions.remove(event.position());
+    }
+
+    public void publish(List<ChangeEventDto> events) {
+        events.forEach(this::publish);
+    }
+
+    // Events published from now on are held for the subscriber until it is started
+    public Subscriber subscribe(Sink sink) {
+        Subscriber subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    // Deletes the outbox rows older than the retention once an hour, a client that has been away longer gets a reset
+    public void startRetention(Duration retention, Consumer<Instant> deleteBefore) {
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                deleteBefore.accept(Instant.now().minus(retention));
+            } catch (RuntimeException e) {
+                logger.warn("Could not delete old change events", e);
+            }
+        }, 0, 1, TimeUnit.HOURS);
+    }
+
+    // The position before the first one of the shard that is still pending below the published one, those events are
+    // published later and the client must not skip them when it resumes
+    private long acknowledged(int shard, long position) {
+        ConcurrentSkipListMap<Long, Long> positions = pending.get(shard);
+        if (positions == null) return Long.MAX_VALUE;
+        long expired = System.nanoTime() - PENDING_TIMEOUT.toNanos();
+        for (Map.Entry<Long, Long> first : positions.headMap(position).entrySet()) {
+            if (first.getValue() - expired > 0) return first.getKey() - 1;
+            positions.remove(first.getKey(), first.getValue());
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public ChangeFeedMetricsDto getMetrics() {
+        return new ChangeFeedMetricsDto(subscribers.size(), bufferSize, published.sum(), slowDisconnects.sum());
+    }
+
+    public void shutdown() {
+        subscribers.forEach(Subscriber::cancel);
+        senders.shutdown();
+        timer.shutdown();
+    }
+
+    private static int getProperty(String propName, int defaultValue) {
+        try {
+            String value = ApplicationConfig.getProperty(propName);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (IOException e) {
+            return defaultValue;
+        }
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Published(ChangeEventDto event, long acknowledged) {
+    }
+
+    // At most one sender works on a subscriber at a time, the one that wins the scheduled flag, so a stream is written in order
+    public final class Subscriber {
+
+        private final Sink sink;
+        // per shard the last position sent and the one the client has everything up to, only touched by the sender that holds
+        // the scheduled flag. Events are queued in publish order, so the last one sent knows which earlier ones are still missing
+        private long[] positions;
+        private long[] acknowledged;
+        private final ArrayBlockingQueue<Published> queue = new ArrayBlockingQueue<>(bufferSize);
+        // held from subscribe until start, live events wait in the queue while the missed ones are replayed
+        private final AtomicBoolean scheduled = new AtomicBoolean(true);
+        private volatile boolean pingPending;
+        private volatile boolean cancelled;
+        // the sender while it is in a write to the sink and since when, guarded by the subscriber
+        private Thread writer;
+        private long writingSince;
+
+        private Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        // Sends the replayed events first, null when the client's last event is no longer known. The positions are the ones
+        // the client had, or the shards' current ones when it starts over. Live events that were also replayed are skipped
+        public void start(List<ChangeEventDto> replay, long[] positions) {
+            senders.execute(() -> {
+                try {
+                    this.positions = positions.clone();
+                    this.acknowledged = positions.clone();
+                    Set<Integer> replayed = new HashSet<>();
+                    if (replay == null) {
+                        write(sink::reset);
+                    } else {
+                        // the outbox has every event up to the last one replayed
+                        for (ChangeEventDto event : replay) {
+                            send(new Published(event, Long.MAX_VALUE));
+                            replayed.add(event.id());
+                        }
+                    }
+                    Published published;
+                    while (!cancelled && (published = queue.poll()) != null) {
+                        if (!replayed.contains(published.event().id())) send(published);
+                    }
+                } catch (RuntimeException e) {
+                    cancel();
+                } finally {
+                    scheduled.set(false);
+                }
+                schedule();
+            });
+        }
+
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            subscribers.remove(this);
+            queue.clear();
+            if (!sink.isClosed()) sink.close();
+        }
+
+        private void offer(Published published) {
+            if (cancelled) return;
+            if (!queue.offer(published)) {
+                slowDisconnects.increment();
+                logger.warn("Change stream disconnected, {} events were waiting to be sent", bufferSize);
+                cancel();
+                return;
+            }
+            schedule();
+        }
+
+        private void ping() {
+            pingPending = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) senders.execute(this::drain);
+        }
+
+        private void drain() {
+            try {
+                if (pingPending) {
+                    pingPending = false;
+                    write(sink::heartbeat);
+                }
+                Published published;
+                while (!cancelled && (published = queue.poll()) != null) send(published);
+                if (sink.isClosed()) cancel();
+            } catch (RuntimeException e) {
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+            // an event offered after the last poll found the flag still set
+            if (!queue.isEmpty() || pingPending) schedule();
+        }
+
+        private void send(Published published) {
+            ChangeEventDto event = published.event();
+            int shard = event.shard();
+            if (shard < positions.length) {
+                positions[shard] = Math.max(positions[shard], event.position());
+                acknowledged[shard] = Math.min(positions[shard], published.acknowledged());
+            }
+            StringJoiner lastEventId = new StringJoiner(".");
+            for (long position : acknowledged) lastEventId.add(String.valueOf(position));
+            write(() -> sink.send(event, lastEventId.toString()));
+        }
+
+        // A blocking write to a client that stopped reading is interrupted by checkWrite, the sink then throws or is closed
+        private void write(Runnable write) {
+            synchronized (this) {
+                writer = Thread.currentThread();
+                writingSince = System.nanoTime();
+            }
+            try {
+                write.run();
+            } finally {
+                synchronized (this) {
+                    writer = null;
+                }
+                // an interrupt that came after the write finished must not hit the sender's next subscriber
+                Thread.interrupted();
+            }
+        }
+
+        private void checkWrite() {
+            synchronized (this) {
+                if (writer == null || System.nanoTime() - writingSince < writeTimeoutNanos) return;
+                writer.interrupt();
+                writer = null;
+            }
+            slowDisconnects.increment();
+            logger.warn("Change stream disconnected, a write took longer than {} ms", TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+            cancel();
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package dk.lyngby.config;
 
+import com.fasterxml.jackson.databind.SerializationFeature;
 import dk.lyngby.controller.impl.AccessManagerController;
 import dk.lyngby.routes.Routes;
 import io.javalin.Javalin;
 import io.javalin.config.JavalinConfig;
+import io.javalin.json.JavalinJackson;
 import io.javalin.plugin.bundled.RouteOverviewPlugin;
+import io.javalin.util.ConcurrencyUtil;
 import lombok.NoArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.Properties;
 
 @NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
@@ -18,21 +22,41 @@ public class ApplicationConfig {
 
     private static final AccessManagerController ACCESS_MANAGER_HANDLER = new AccessManagerController();
     private static final Logger logger = LoggerFactory.getLogger(ApplicationConfig.class);
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
 
     private static void configuration(JavalinConfig config) {
         config.routing.contextPath = "/api/v1"; // base path for all routes
         config.http.defaultContentType = "application/json"; // default content type for requests
         config.plugins.register(new RouteOverviewPlugin("/routes")); // enables route overview at /
         config.accessManager(ACCESS_MANAGER_HANDLER::accessManagerHandler);
+        config.jsonMapper(new JavalinJackson().updateMapper(mapper -> mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS))); // dates as "2024-12-24"
     }
 
     public static void startServer(Javalin app, int port) {
         Routes routes = new Routes();
         app.updateConfig(ApplicationConfig::configuration);
+        app.updateConfig(config -> config.requestLogger.http(routes::requestEnded));
         app.routes(routes.getRoutes(app));
         app.start(port);
     }
 
+    // Must run before Javalin.create(), Jetty's thread pool is built with the app. Javalin picks virtual threads
+    // on its own whenever the JDK has them, so the choice is always made here (javalin.virtual.threads -> JAVALIN_VIRTUAL_THREADS)
+    public static void configureThreads() throws IOException {
+        String envValue = System.getenv("JAVALIN_VIRTUAL_THREADS");
+        boolean virtualThreads = Boolean.parseBoolean(envValue != null ? envValue : getProperty("javalin.virtual.threads"));
+        ConcurrencyUtil.INSTANCE.setUseLoom(virtualThreads);
+
+        if (!virtualThreads) {
+            logger.info("Jetty handles requests on its platform thread pool");
+        } else if (!ConcurrencyUtil.isLoomAvailable()) {
+            logger.warn("Virtual threads need Java 21, Jetty stays on its platform thread pool");
+        } else {
+            logger.info("Jetty handles requests on virtual threads");
+            PinnedThreadMonitor.start(PINNED_THRESHOLD);
+        }
+    }
+
     public static void stopServer(Javalin app) {
         app.stop();
     }
@@ -0,0 +1,54 @@
+package dk.lyngby.config;
+
+import dk.lyngby.dto.CacheRegionMetricsDto;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.NoArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class CacheMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheMetrics.class);
+
+    // Hits, misses and puts come from hibernate, evictions from the jcache statistics of the region
+    public static List<CacheRegionMetricsDto> getRegionMetrics(EntityManagerFactory emf) {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        return Arrays.stream(statistics.getSecondLevelCacheRegionNames())
+                .sorted()
+                .map(region -> toRegionMetrics(region, statistics.getCacheRegionStatistics(region)))
+                .toList();
+    }
+
+    private static CacheRegionMetricsDto toRegionMetrics(String region, CacheRegionStatistics statistics) {
+        long hits = statistics.getHitCount();
+        long misses = statistics.getMissCount();
+        double hitRatio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        return new CacheRegionMetricsDto(region, hits, misses, statistics.getPutCount(), getEvictions(region), hitRatio);
+    }
+
+    private static long getEvictions(String region) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = mBeanServer.queryNames(new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*"), null);
+            long evictions = 0;
+            for (ObjectName name : names) {
+                evictions += (Long) mBeanServer.getAttribute(name, "CacheEvictions");
+            }
+            return evictions;
+        } catch (Exception e) {
+            logger.error("Could not read evictions for cache region {}", region, e);
+            return -1;
+        }
+    }
+}
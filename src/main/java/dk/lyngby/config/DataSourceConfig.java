@@ -0,0 +1,98 @@
+package dk.lyngby.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dk.lyngby.dto.PoolMetricsDto;
+import lombok.NoArgsConstructor;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class DataSourceConfig {
+
+    private static final Map<String, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+    private static final Map<String, PoolMetricsTracker> metricsTrackers = new ConcurrentHashMap<>();
+
+    public static DataSource createDataSource(String poolName, String url, String username, String password, boolean isDeployed) throws IOException {
+        return createDataSource(poolName, url, username, password, isDeployed, false);
+    }
+
+    public static DataSource createDataSource(String poolName, String url, String username, String password, boolean isDeployed, boolean readOnly) throws IOException {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName("org.postgresql.Driver"); // driver class for postgresql
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setAutoCommit(false); // hibernate handles the transactions
+        config.setReadOnly(readOnly); // replica connections refuse writes
+        config.setMaximumPoolSize(Integer.parseInt(getPoolProperty("db.pool.maximum.size", isDeployed)));
+        config.setMinimumIdle(Integer.parseInt(getPoolProperty("db.pool.minimum.idle", isDeployed)));
+        config.setConnectionTimeout(Long.parseLong(getPoolProperty("db.pool.connection.timeout", isDeployed)));
+        config.setIdleTimeout(Long.parseLong(getPoolProperty("db.pool.idle.timeout", isDeployed)));
+        config.setLeakDetectionThreshold(Long.parseLong(getPoolProperty("db.pool.leak.detection.threshold", isDeployed)));
+        config.setRegisterMbeans(true); // exposes the pool over JMX as well
+        config.addDataSourceProperty("reWriteBatchedInserts", "true"); // postgres turns a jdbc batch of inserts into multi-row inserts
+
+        PoolMetricsTracker tracker = new PoolMetricsTracker();
+        config.setMetricsTrackerFactory((name, poolStats) -> tracker);
+
+        HikariDataSource dataSource = new HikariDataSource(config);
+        dataSources.put(poolName, dataSource);
+        metricsTrackers.put(poolName, tracker);
+        return dataSource;
+    }
+
+    public static List<PoolMetricsDto> getPoolMetrics() {
+        return dataSources.entrySet().stream()
+                .map(entry -> toPoolMetrics(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    // The size of a pool that has been created, else the configured size
+    public static int getMaximumPoolSize(String poolName) {
+        HikariDataSource dataSource = dataSources.get(poolName);
+        if (dataSource != null) return dataSource.getMaximumPoolSize();
+        try {
+            return Integer.parseInt(getPoolProperty("db.pool.maximum.size", System.getenv("DEPLOYED") != null));
+        } catch (IOException e) {
+            return 10;
+        }
+    }
+
+    public static void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+        dataSources.clear();
+        metricsTrackers.clear();
+    }
+
+    private static PoolMetricsDto toPoolMetrics(String poolName, HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        PoolMetricsTracker tracker = metricsTrackers.get(poolName);
+        return new PoolMetricsDto(
+                poolName,
+                dataSource.getMaximumPoolSize(),
+                pool.getActiveConnections(),
+                pool.getIdleConnections(),
+                pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(),
+                tracker.getConnectionsAcquired(),
+                tracker.getAverageWaitMillis(),
+                tracker.getMaxWaitMillis(),
+                tracker.getConnectionTimeouts(),
+                tracker.getAverageUsageMillis()
+        );
+    }
+
+    // Pool settings come from the pom file, deployed containers can override them with env variables (db.pool.maximum.size -> DB_POOL_MAXIMUM_SIZE)
+    private static String getPoolProperty(String propName, boolean isDeployed) throws IOException {
+        String envValue = System.getenv(propName.toUpperCase().replace('.', '_'));
+        if (isDeployed && envValue != null) return envValue;
+        return ApplicationConfig.getProperty(propName);
+    }
+}
@@ -1,6 +1,9 @@
 package dk.lyngby.config;
 
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.model.ChangePosition;
 import dk.lyngby.model.Role;
+import dk.lyngby.model.ShardedSequenceGenerator;
 import dk.lyngby.model.User;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.NoArgsConstructor;
@@ -10,12 +13,18 @@ import org.hibernate.cfg.Configuration;
 import org.hibernate.service.ServiceRegistry;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 @NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
 public class HibernateConfig {
 
+    public static final int JDBC_BATCH_SIZE = 50;
     private static EntityManagerFactory entityManagerFactory;
+    private static EntityManagerFactory readEntityManagerFactory;
+    private static ShardRouter shardRouter;
 
     public static EntityManagerFactory getEntityManagerFactory(boolean isTest) {
         if (isTest) return getEntityManagerFactoryConfigTest();
@@ -24,6 +33,38 @@ public class HibernateConfig {
         return getEntityManagerFactoryConfigDevelopment();
     }
 
+    // The read-only replica factory when a replica is configured, otherwise the primary factory
+    public static EntityManagerFactory getReadEntityManagerFactory(boolean isTest) {
+        EntityManagerFactory primary = getEntityManagerFactory(isTest);
+        if (isTest) return primary;
+        if (readEntityManagerFactory == null) {
+            boolean isDeployed = (System.getenv("DEPLOYED") != null);
+            EntityManagerFactory replica = setupHibernateConfigurationForReplica(isDeployed);
+            readEntityManagerFactory = replica != null ? replica : primary;
+        }
+        return readEntityManagerFactory;
+    }
+
+    // The primary and its replica are shard 0, every further database in db.shards gets its own factory and pool
+    // and is its own replica. Tests run on a single shard
+    public static ShardRouter getShardRouter(boolean isTest) {
+        if (shardRouter == null) {
+            List<EntityManagerFactory> primaries = new ArrayList<>(List.of(getEntityManagerFactory(isTest)));
+            List<EntityManagerFactory> replicas = new ArrayList<>(List.of(getReadEntityManagerFactory(isTest)));
+            if (!isTest) {
+                boolean isDeployed = (System.getenv("DEPLOYED") != null);
+                List<String> shards = getShards(isDeployed);
+                for (int shard = 1; shard <= shards.size(); shard++) {
+                    EntityManagerFactory emf = setupHibernateConfigurationForShard(shard, shards.get(shard - 1), isDeployed);
+                    primaries.add(emf);
+                    replicas.add(emf);
+                }
+            }
+            shardRouter = new ShardRouter(primaries, replicas);
+        }
+        return shardRouter;
+    }
+
     private static EntityManagerFactory getEntityManagerFactoryConfigDevelopment() {
         if (entityManagerFactory == null) entityManagerFactory = setupHibernateConfigurationForDevelopment();
         return entityManagerFactory;
@@ -45,6 +86,7 @@ public class HibernateConfig {
             Properties props = new Properties();
             hibernateDevelopmentConfiguration(props);
             hibernateBasicConfiguration(props);
+            hibernateCacheConfiguration(props);
             return getEntityManagerFactory(configuration, props);
         } catch (Throwable ex) {
             throw new ExceptionInInitializerError(ex);
@@ -57,6 +99,37 @@ public class HibernateConfig {
             Properties props = new Properties();
             hibernateIsDeployedConfiguration(props);
             hibernateBasicConfiguration(props);
+            hibernateCacheConfiguration(props);
+            return getEntityManagerFactory(configuration, props);
+        } catch (Throwable ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static EntityManagerFactory setupHibernateConfigurationForReplica(boolean isDeployed) {
+        try {
+            Configuration configuration = new Configuration();
+            Properties props = new Properties();
+            if (!hibernateReplicaConfiguration(props, isDeployed)) return null;
+            hibernateBasicConfiguration(props);
+            props.put("hibernate.hbm2ddl.auto", "none"); // the schema is owned by the primary
+            hibernateCacheConfiguration(props); // same cache manager as the primary, so its writes evict what the replica factory cached
+            return getEntityManagerFactory(configuration, props);
+        } catch (Throwable ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static EntityManagerFactory setupHibernateConfigurationForShard(int shard, String database, boolean isDeployed) {
+        try {
+            Configuration configuration = new Configuration();
+            Properties props = new Properties();
+            hibernateShardConfiguration(props, shard, database, isDeployed);
+            hibernateBasicConfiguration(props);
+            props.put(ShardedSequenceGenerator.SHARD_INDEX, String.valueOf(shard));
+            hibernateCacheConfiguration(props);
+            // entity ids are unique across shards, cached query results are not, the regions are shared with shard 0
+            props.put("hibernate.cache.use_query_cache", "false");
             return getEntityManagerFactory(configuration, props);
         } catch (Throwable ex) {
             throw new ExceptionInInitializerError(ex);
@@ -75,6 +148,8 @@ public class HibernateConfig {
             props.put("hibernate.archive.autodetection", "class");
             props.put("hibernate.show_sql", "true");
             props.put("hibernate.hbm2ddl.auto", "create-drop");
+            hibernateBatchConfiguration(props);
+            hibernateCacheConfiguration(props);
             return getEntityManagerFactory(configuration, props);
         } catch (Throwable ex) {
             System.err.println("Initial SessionFactory creation failed." + ex);
@@ -83,18 +158,47 @@ public class HibernateConfig {
     }
 
     private static void hibernateDevelopmentConfiguration(Properties props) throws IOException {
-        props.put("hibernate.connection.url", ApplicationConfig.getProperty("db.connection.string") + ApplicationConfig.getProperty("db.name"));
-        props.put("hibernate.connection.username", ApplicationConfig.getProperty("db.username"));
-        props.put("hibernate.connection.password", ApplicationConfig.getProperty("db.password"));
+        String CONNECTION_STR = ApplicationConfig.getProperty("db.connection.string") + ApplicationConfig.getProperty("db.name");
+        String DB_USERNAME = ApplicationConfig.getProperty("db.username");
+        String DB_PASSWORD = ApplicationConfig.getProperty("db.password");
+        props.put("hibernate.connection.datasource", DataSourceConfig.createDataSource("primary", CONNECTION_STR, DB_USERNAME, DB_PASSWORD, false));
     }
 
     private static void hibernateIsDeployedConfiguration(Properties props) throws IOException {
         String DB_USERNAME = System.getenv("DB_USERNAME");
         String DB_PASSWORD = System.getenv("DB_PASSWORD");
         String CONNECTION_STR = System.getenv("CONNECTION_STR") + ApplicationConfig.getProperty("db.name");
-        props.setProperty("hibernate.connection.url", CONNECTION_STR);
-        props.setProperty("hibernate.connection.username", DB_USERNAME);
-        props.setProperty("hibernate.connection.password", DB_PASSWORD);
+        props.put("hibernate.connection.datasource", DataSourceConfig.createDataSource("primary", CONNECTION_STR, DB_USERNAME, DB_PASSWORD, true));
+    }
+
+    private static boolean hibernateReplicaConfiguration(Properties props, boolean isDeployed) throws IOException {
+        String replica = isDeployed ? System.getenv("REPLICA_CONNECTION_STR") : ApplicationConfig.getProperty("db.replica.connection.string");
+        if (replica == null || replica.isBlank()) return false;
+
+        String CONNECTION_STR = replica + ApplicationConfig.getProperty("db.name");
+        String DB_USERNAME = isDeployed ? System.getenv("DB_USERNAME") : ApplicationConfig.getProperty("db.username");
+        String DB_PASSWORD = isDeployed ? System.getenv("DB_PASSWORD") : ApplicationConfig.getProperty("db.password");
+        props.put("hibernate.connection.datasource", DataSourceConfig.createDataSource("replica", CONNECTION_STR, DB_USERNAME, DB_PASSWORD, isDeployed, true));
+        return true;
+    }
+
+    private static void hibernateShardConfiguration(Properties props, int shard, String database, boolean isDeployed) throws IOException {
+        String connectionStr = isDeployed ? System.getenv("CONNECTION_STR") : ApplicationConfig.getProperty("db.connection.string");
+        String CONNECTION_STR = database.startsWith("jdbc:") ? database : connectionStr + database;
+        String DB_USERNAME = isDeployed ? System.getenv("DB_USERNAME") : ApplicationConfig.getProperty("db.username");
+        String DB_PASSWORD = isDeployed ? System.getenv("DB_PASSWORD") : ApplicationConfig.getProperty("db.password");
+        props.put("hibernate.connection.datasource", DataSourceConfig.createDataSource("shard-" + shard, CONNECTION_STR, DB_USERNAME, DB_PASSWORD, isDeployed));
+    }
+
+    // The databases after the primary, deployed containers set them with DB_SHARDS
+    private static List<String> getShards(boolean isDeployed) {
+        try {
+            String shards = isDeployed ? System.getenv("DB_SHARDS") : ApplicationConfig.getProperty("db.shards");
+            if (shards == null || shards.isBlank()) return List.of();
+            return Arrays.stream(shards.split(",")).map(String::trim).filter(shard -> !shard.isEmpty()).toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read db.shards", e);
+        }
     }
 
     private static void hibernateBasicConfiguration(Properties props) {
@@ -102,10 +206,31 @@ public class HibernateConfig {
         props.put("hibernate.format_sql", "false"); // format sql in console
         props.put("hibernate.use_sql_comments", "false"); // show sql comments in console
         props.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect"); // dialect for postgresql
-        props.put("hibernate.connection.driver_class", "org.postgresql.Driver"); // driver class for postgresql
+        props.put("hibernate.connection.provider_disables_autocommit", "true"); // the pool hands out connections with autocommit off
         props.put("hibernate.archive.autodetection", "class"); // hibernate scans for annotated classes
         props.put("hibernate.current_session_context_class", "thread"); // hibernate current session context
         props.put("hibernate.hbm2ddl.auto", "update"); // hibernate creates tables based on entities
+        props.put(ShardedSequenceGenerator.SHARD_INDEX, "0"); // the primary is shard 0
+        props.put(ShardedSequenceGenerator.SHARD_COUNT, String.valueOf(1 + getShards(System.getenv("DEPLOYED") != null).size())); // ids step over the other shards
+        hibernateBatchConfiguration(props);
+    }
+
+    private static void hibernateBatchConfiguration(Properties props) {
+        props.put("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE)); // inserts and updates are sent in jdbc batches
+        props.put("hibernate.order_inserts", "true"); // groups inserts per table so batches are not broken up
+        props.put("hibernate.order_updates", "true"); // groups updates per table so batches are not broken up
+        props.put("hibernate.jdbc.batch_versioned_data", "true"); // versioned entities can be batched too
+    }
+
+    private static void hibernateCacheConfiguration(Properties props) {
+        props.put("hibernate.cache.use_second_level_cache", "true"); // entities marked @Cacheable are kept in the second-level cache
+        props.put("hibernate.cache.use_query_cache", "true"); // queries with the cacheable hint keep their results
+        props.put("hibernate.cache.region.factory_class", "jcache"); // jcache provider configured below
+        props.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider"); // in-process ehcache
+        props.put("hibernate.javax.cache.uri", "ehcache.xml"); // region sizes and time to live
+        props.put("hibernate.cache.auto_evict_collection_cache", "true"); // evicts Hotel.rooms when a room changes hotel or is removed
+        props.put("hibernate.generate_statistics", "true"); // hit, miss and put counts per region
+        props.put("hibernate.session.events.log", "false"); // no session metrics in the log
     }
 
     private static EntityManagerFactory getEntityManagerFactory(Configuration configuration, Properties props) {
@@ -113,9 +238,17 @@ public class HibernateConfig {
         getAnnotationConfiguration(configuration);
         ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
         SessionFactory sf = configuration.buildSessionFactory(serviceRegistry);
+        if (!"none".equals(props.get("hibernate.hbm2ddl.auto"))) seedChangePosition(sf);
         return sf.unwrap(EntityManagerFactory.class);
     }
 
+    // The outbox's one position row comes with the schema, so writers only ever update it. Nodes that start together insert it once
+    private static void seedChangePosition(SessionFactory sf) {
+        sf.inTransaction(session -> session.createNativeMutationQuery("INSERT INTO change_position (change_position_id, position) VALUES (:id, 0) ON CONFLICT DO NOTHING")
+                .setParameter("id", ChangePosition.ID)
+                .executeUpdate());
+    }
+
     private static void getAnnotationConfiguration(Configuration configuration) {
         configuration.addAnnotatedClass(User.class);
         configuration.addAnnotatedClass(Role.class);
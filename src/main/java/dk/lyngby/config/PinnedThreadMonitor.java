@@ -0,0 +1,64 @@
+package dk.lyngby.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Logs every virtual thread that blocks while holding a monitor, it keeps its carrier thread parked with it.
+// A JDBC driver, pool or cache that blocks inside synchronized caps the server at one request per carrier.
+// Reads the JFR event of Java 21, on older JDKs the event does not exist and nothing is ever reported
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class PinnedThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+    private static final Logger logger = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+
+    private static final LongAdder pinnedEvents = new LongAdder();
+    private static final LongAccumulator maxPinnedNanos = new LongAccumulator(Long::max, 0);
+    private static RecordingStream stream;
+
+    public static synchronized void start(Duration threshold) {
+        if (stream != null) return;
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, PinnedThreadMonitor::record);
+        stream.startAsync();
+    }
+
+    public static synchronized void stop() {
+        if (stream == null) return;
+        stream.close();
+        stream = null;
+    }
+
+    public static long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+
+    public static double getMaxPinnedMillis() {
+        return maxPinnedNanos.get() / 1e6;
+    }
+
+    private static void record(RecordedEvent event) {
+        pinnedEvents.increment();
+        maxPinnedNanos.accumulate(event.getDuration().toNanos());
+        String frames = event.getStackTrace() == null ? "no stack trace" : event.getStackTrace().getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(PinnedThreadMonitor::frame)
+                .collect(Collectors.joining("\n\tat "));
+        logger.warn("Virtual thread pinned its carrier for {} ms\n\tat {}", event.getDuration().toMillis(), frames);
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
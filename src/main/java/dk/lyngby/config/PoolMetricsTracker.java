@@ -0,0 +1,58 @@
+package dk.lyngby.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Collects connection wait and usage times reported by HikariCP
+public class PoolMetricsTracker implements IMetricsTracker {
+
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder connectionTimeouts = new LongAdder();
+    private final LongAdder connectionsUsed = new LongAdder();
+    private final LongAdder totalUsageMillis = new LongAdder();
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        connectionsAcquired.increment();
+        totalWaitNanos.add(elapsedAcquiredNanos);
+        maxWaitNanos.accumulate(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        connectionsUsed.increment();
+        totalUsageMillis.add(elapsedBorrowedMillis);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        connectionTimeouts.increment();
+    }
+
+    public long getConnectionsAcquired() {
+        return connectionsAcquired.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long acquired = connectionsAcquired.sum();
+        return acquired == 0 ? 0 : (double) totalWaitNanos.sum() / acquired / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxWaitMillis() {
+        return (double) maxWaitNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public long getConnectionTimeouts() {
+        return connectionTimeouts.sum();
+    }
+
+    public double getAverageUsageMillis() {
+        long used = connectionsUsed.sum();
+        return used == 0 ? 0 : (double) totalUsageMillis.sum() / used;
+    }
+}
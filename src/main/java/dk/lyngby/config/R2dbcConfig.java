@@ -0,0 +1,100 @@
+package dk.lyngby.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Connection pools of the non-blocking R2DBC driver, next to the Hikari pools Hibernate uses.
+// Same database, same credentials, the jdbc url is taken apart so both drivers are configured in one place
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class R2dbcConfig {
+
+    private static final Map<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+    private static ConnectionFactory connectionFactory;
+    private static ConnectionFactory readConnectionFactory;
+
+    // db.r2dbc in the pom file, DB_R2DBC overrides it
+    public static boolean isEnabled() {
+        try {
+            String envValue = System.getenv("DB_R2DBC");
+            return Boolean.parseBoolean(envValue != null ? envValue : ApplicationConfig.getProperty("db.r2dbc"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static synchronized ConnectionFactory getConnectionFactory() {
+        if (connectionFactory == null) {
+            try {
+                boolean isDeployed = System.getenv("DEPLOYED") != null;
+                String connectionStr = isDeployed ? System.getenv("CONNECTION_STR") : ApplicationConfig.getProperty("db.connection.string");
+                connectionFactory = createConnectionFactory("primary-r2dbc", connectionStr + ApplicationConfig.getProperty("db.name"), getUsername(isDeployed), getPassword(isDeployed), getMaximumPoolSize());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not configure the R2DBC pool", e);
+            }
+        }
+        return connectionFactory;
+    }
+
+    // The replica pool when a replica is configured, otherwise the primary pool
+    public static synchronized ConnectionFactory getReadConnectionFactory() {
+        if (readConnectionFactory == null) {
+            try {
+                boolean isDeployed = System.getenv("DEPLOYED") != null;
+                String replica = isDeployed ? System.getenv("REPLICA_CONNECTION_STR") : ApplicationConfig.getProperty("db.replica.connection.string");
+                readConnectionFactory = replica == null || replica.isBlank() ? getConnectionFactory()
+                        : createConnectionFactory("replica-r2dbc", replica + ApplicationConfig.getProperty("db.name"), getUsername(isDeployed), getPassword(isDeployed), getMaximumPoolSize());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not configure the R2DBC replica pool", e);
+            }
+        }
+        return readConnectionFactory;
+    }
+
+    // Takes the same jdbc:postgresql://host:port/db url as the Hikari pools
+    public static ConnectionFactory createConnectionFactory(String poolName, String jdbcUrl, String username, String password, int maximumPoolSize) {
+        URI uri = URI.create(jdbcUrl.substring("jdbc:".length()));
+        PostgresqlConnectionFactory postgres = new PostgresqlConnectionFactory(PostgresqlConnectionConfiguration.builder()
+                .host(uri.getHost())
+                .port(uri.getPort() != -1 ? uri.getPort() : 5432)
+                .database(uri.getPath().substring(1))
+                .username(username)
+                .password(password)
+                .build());
+
+        ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(postgres)
+                .name(poolName)
+                .maxSize(maximumPoolSize)
+                .build());
+        connectionPools.put(poolName, pool);
+        return pool;
+    }
+
+    public static synchronized void close() {
+        connectionPools.values().forEach(ConnectionPool::dispose);
+        connectionPools.clear();
+        connectionFactory = null;
+        readConnectionFactory = null;
+    }
+
+    private static int getMaximumPoolSize() throws IOException {
+        String envValue = System.getenv("DB_R2DBC_POOL_MAXIMUM_SIZE");
+        return Integer.parseInt(envValue != null ? envValue : ApplicationConfig.getProperty("db.r2dbc.pool.maximum.size"));
+    }
+
+    private static String getUsername(boolean isDeployed) throws IOException {
+        return isDeployed ? System.getenv("DB_USERNAME") : ApplicationConfig.getProperty("db.username");
+    }
+
+    private static String getPassword(boolean isDeployed) throws IOException {
+        return isDeployed ? System.getenv("DB_PASSWORD") : ApplicationConfig.getProperty("db.password");
+    }
+}
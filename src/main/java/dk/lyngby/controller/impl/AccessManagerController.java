@@ -1,9 +1,12 @@
 package dk.lyngby.controller.impl;
 
 import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dto.RateLimitMetricsDto;
 import dk.lyngby.dto.UserDTO;
 import dk.lyngby.exception.ApiException;
 import dk.lyngby.exception.AuthorizationException;
+import dk.lyngby.exception.Message;
+import dk.lyngby.security.RateLimiter;
 import dk.lyngby.security.RouteRoles;
 import dk.lyngby.security.TokenFactory;
 import io.javalin.http.Context;
@@ -12,18 +15,39 @@ import io.javalin.security.RouteRole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class AccessManagerController {
 
     private final TokenFactory TOKEN_FACTORY = TokenFactory.getInstance();
     private final static Logger logger = LoggerFactory.getLogger(AccessManagerController.class);
 
+    // Per role, a role without a limit is missing. Anonymous routes are limited per client ip, /auth apart from the rest
+    // because a login costs a bcrypt hash, the other routes per user with the limit of the role that lets them in
+    private static final Map<RouteRole, RateLimiter> limiters = new HashMap<>();
+    private static final RateLimiter authLimiter = RateLimiter.of("auth");
+
+    static {
+        for (RouteRoles role : RouteRoles.values()) {
+            RateLimiter limiter = RateLimiter.of(role.toString());
+            if (limiter != null) limiters.put(role, limiter);
+        }
+    }
+
     public void accessManagerHandler(Handler handler, Context ctx, Set<? extends RouteRole> permittedRoles) throws Exception {
         String path = ctx.path();
         boolean isAuthorized = false;
+        RateLimiter limiter = null;
 
         if (path.equals("/api/v1/routes") || permittedRoles.contains(RouteRoles.ANYONE)) {
+            // the token is not verified here, so the caller is told apart by its address
+            if (isLimited(ctx, path.startsWith("/api/v1/auth/") ? authLimiter : limiters.get(RouteRoles.ANYONE), ctx.ip())) return;
             handler.handle(ctx);
             return;
         } else {
@@ -34,9 +58,12 @@ public class AccessManagerController {
                     break;
                 }
             }
+            limiter = getLimiter(userRole, permittedRoles);
         }
 
         if (isAuthorized) {
+            UserDTO userDTO = ctx.attribute("user");
+            if (isLimited(ctx, limiter, userDTO.getUsername())) return;
             handler.handle(ctx);
         } else {
             logger.error("You are not authorized to perform this action");
@@ -57,7 +84,40 @@ public class AccessManagerController {
             logger.error("Invalid token");
             throw new ApiException(401, "Invalid token");
         }
+        ctx.attribute("user", userDTO); // handlers that act on behalf of the user read it from here
         return userDTO.getRoles().stream().map(r -> RouteRoles.valueOf(r.toUpperCase())).toArray(RouteRole[]::new);
     }
 
+    // The most generous limit of the roles that let the user in, none when one of them has no limit
+    private static RateLimiter getLimiter(RouteRole[] userRole, Set<? extends RouteRole> permittedRoles) {
+        RateLimiter limiter = null;
+        for (RouteRole role : userRole) {
+            if (!permittedRoles.contains(role)) continue;
+            RateLimiter roleLimiter = limiters.get(role);
+            if (roleLimiter == null) return null;
+            if (limiter == null || roleLimiter.getPerSecond() > limiter.getPerSecond()) limiter = roleLimiter;
+        }
+        return limiter;
+    }
+
+    // Answers 429 with the seconds until the caller has a token again, without running the handler
+    private static boolean isLimited(Context ctx, RateLimiter limiter, String key) {
+        if (limiter == null) return false;
+        long waitNanos = limiter.acquire(key);
+        if (waitNanos == 0) return false;
+
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        ctx.res().setStatus(429);
+        ctx.header("Retry-After", String.valueOf(retryAfter));
+        ctx.json(new Message(429, "Too many requests, try again in " + retryAfter + " seconds"));
+        return true;
+    }
+
+    public static List<RateLimitMetricsDto> getRateLimitMetrics() {
+        return Stream.concat(Stream.of(authLimiter), limiters.values().stream())
+                .filter(Objects::nonNull)
+                .map(RateLimiter::getMetrics)
+                .toList();
+    }
+
 }
@@ -0,0 +1,77 @@
+package dk.lyngby.controller.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.impl.BookingDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.dto.BookingListDto;
+import dk.lyngby.dto.UserDTO;
+import dk.lyngby.exception.ApiException;
+import dk.lyngby.index.RoomReservations;
+import dk.lyngby.model.Booking;
+import io.javalin.http.Context;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+public class BookingController {
+
+    private static final int MAX_NIGHTS = 90;
+
+    private final BookingDao dao;
+    private final RoomDao roomDao;
+
+    public BookingController() {
+        ShardRouter shards = HibernateConfig.getShardRouter(false);
+        this.dao = BookingDao.getInstance(shards);
+        this.roomDao = RoomDao.getInstance(shards);
+        RoomReservations.getInstance().rebuild(dao::readAllCurrent);
+    }
+
+    public void create(Context ctx) throws ApiException {
+        // request
+        int roomId = getRoomId(ctx);
+        Booking jsonRequest = validateEntity(ctx);
+        UserDTO user = ctx.attribute("user");
+        // entity
+        Booking booking = dao.create(roomId, user.getUsername(), jsonRequest);
+        // dto
+        BookingDto bookingDto = new BookingDto(booking, roomId, user.getUsername());
+        // response
+        ctx.res().setStatus(201);
+        ctx.json(bookingDto, BookingDto.class);
+    }
+
+    public void readAll(Context ctx) {
+        // request
+        int roomId = getRoomId(ctx);
+        // dto
+        List<BookingDto> bookingDtos = dao.readAll(roomId);
+        BookingListDto bookingListDto = new BookingListDto(bookingDtos.size(), bookingDtos);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(bookingListDto, BookingListDto.class);
+    }
+
+    @NotNull
+    private Integer getRoomId(Context ctx) {
+        return ctx.pathParamAsClass("id", Integer.class).check(roomDao::validatePrimaryKey, "Not a valid id").get();
+    }
+
+    public Booking validateEntity(Context ctx) {
+        return ctx.bodyValidator(Booking.class)
+                .check(b -> b.getCheckIn() != null && b.getCheckOut() != null, "Check in and check out must be set")
+                .check(b -> b.getCheckIn() == null || !b.getCheckIn().isBefore(LocalDate.now()), "Check in can not be in the past")
+                .check(BookingController::isValidStay, "A stay must be between 1 and " + MAX_NIGHTS + " nights")
+                .get();
+    }
+
+    private static boolean isValidStay(Booking booking) {
+        if (booking.getCheckIn() == null || booking.getCheckOut() == null) return true; // reported by the check above
+        long nights = ChronoUnit.DAYS.between(booking.getCheckIn(), booking.getCheckOut());
+        return nights >= 1 && nights <= MAX_NIGHTS;
+    }
+}
@@ -0,0 +1,106 @@
+package dk.lyngby.controller.impl;
+
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.config.ApplicationConfig;
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.impl.ChangeEventDao;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.exception.Message;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+public class ChangeController {
+
+    private final ChangeEventDao dao;
+    private final ChangeFeed feed;
+    private final int replayLimit;
+
+    public ChangeController() {
+        this.dao = ChangeEventDao.getInstance(HibernateConfig.getShardRouter(false));
+        this.feed = ChangeFeed.getInstance();
+        this.replayLimit = getProperty("changes.replay.limit", 10_000);
+        feed.startRetention(Duration.ofHours(getProperty("changes.retention.hours", 24)), dao::deleteBefore);
+    }
+
+    // Every hotel and room change as a "change" event whose id is the outbox position of every shard, "12.7" with two shards.
+    // A client that reconnects with Last-Event-ID first gets the changes it missed, when they are too many or too old it gets
+    // a "reset" event and has to reload
+    public void stream(SseClient client) {
+        client.keepAlive();
+        ChangeFeed.Subscriber subscriber = feed.subscribe(new SseSink(client));
+        client.onClose(subscriber::cancel);
+
+        long[] lastEventId = getLastEventId(client.ctx());
+
+        // the replay is read on the db executor, live events wait in the subscriber's queue meanwhile
+        DbExecutor.getInstance().supply(() -> {
+            if (lastEventId == null) return new Replay(List.of(), dao.readPositions());
+            List<ChangeEventDto> events = dao.readAfter(lastEventId, replayLimit);
+            if (events == null || events.size() > replayLimit) return new Replay(null, dao.readPositions());
+            return new Replay(events, lastEventId);
+        }).whenComplete((replay, e) -> {
+            if (e != null) {
+                subscriber.cancel(); // the client reconnects with the same id
+                return;
+            }
+            subscriber.start(replay.events(), replay.positions());
+        });
+    }
+
+    // Browsers send back the id of the last event they got, anything else starts from now
+    private long[] getLastEventId(Context ctx) {
+        String lastEventId = ctx.header("Last-Event-ID");
+        if (lastEventId == null) return null;
+        try {
+            return Arrays.stream(lastEventId.trim().split("\\.")).mapToLong(Long::parseLong).toArray();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Replay(List<ChangeEventDto> events, long[] positions) {
+    }
+
+    private static int getProperty(String propName, int defaultValue) {
+        try {
+            String value = ApplicationConfig.getProperty(propName);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (IOException e) {
+            return defaultValue;
+        }
+    }
+
+    private record SseSink(SseClient client) implements ChangeFeed.Sink {
+
+        @Override
+        public void send(ChangeEventDto event, String lastEventId) {
+            client.sendEvent("change", event, lastEventId);
+        }
+
+        @Override
+        public void reset() {
+            client.sendEvent("reset", new Message(410, "The missed changes are no longer kept, reload everything"));
+        }
+
+        @Override
+        public void heartbeat() {
+            client.sendComment("heartbeat");
+        }
+
+        @Override
+        public boolean isClosed() {
+            return client.terminated();
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dk.lyngby.controller.impl;
+
+import io.javalin.http.Context;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import lombok.NoArgsConstructor;
+import org.hibernate.StaleStateException;
+
+// Strong etags made from the @Version column of the entity
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class ETags {
+
+    public static String of(Integer version) {
+        return "\"" + version + "\"";
+    }
+
+    // If-None-Match: "*" or a list of etags, weak etags compare equal to the strong one with the same tag
+    public static boolean isNotModified(Context ctx, Integer version) {
+        String header = ctx.header("If-None-Match");
+        if (header == null || version == null) return false;
+
+        String etag = of(version);
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // If-Match with a single strong etag, null when the header is missing or "*" and any version may be overwritten
+    public static Integer ifMatchVersion(Context ctx) {
+        String header = ctx.header("If-Match");
+        if (header == null || header.trim().equals("*")) return null;
+
+        String tag = header.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Integer.parseInt(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // not one of ours, can never match
+            }
+        }
+        return -1;
+    }
+
+    // The write lost against a concurrent one or the If-Match version, either thrown by the dao or at commit
+    public static boolean isStale(PersistenceException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) return true;
+        }
+        return false;
+    }
+
+    // 304 with the etag and no body
+    public static void notModified(Context ctx, Integer version) {
+        ctx.header("ETag", of(version));
+        ctx.res().setStatus(304);
+    }
+}
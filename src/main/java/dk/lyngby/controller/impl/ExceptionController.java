@@ -35,6 +35,10 @@ public class ExceptionController {
         if (errors.containsKey("REQUEST_BODY")) {
             errorList = errors.get("REQUEST_BODY");
             statusCode = 400;
+        } else if (!errors.isEmpty() && !errors.containsKey("id")) {
+            // query parameters like cursor and limit
+            errorList = errors.values().iterator().next();
+            statusCode = 400;
         }
 
         if (errors.containsKey("id")) {
@@ -1,47 +1,123 @@
 package dk.lyngby.controller.impl;
 
 import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.config.R2dbcConfig;
 import dk.lyngby.controller.IController;
+import dk.lyngby.dao.AsyncDao;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.ShardRouter;
 import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.R2dbcHotelDao;
 import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelListDto;
+import dk.lyngby.dto.HotelNearbyDto;
+import dk.lyngby.dto.HotelNearbyListDto;
+import dk.lyngby.dto.HotelSearchDto;
+import dk.lyngby.dto.HotelSearchHitDto;
+import dk.lyngby.dto.HotelStatsDto;
+import dk.lyngby.dto.HotelStatsListDto;
+import dk.lyngby.dto.ImportReportDto;
+import dk.lyngby.exception.ApiException;
+import dk.lyngby.exception.Message;
+import dk.lyngby.index.HotelGeoIndex;
+import dk.lyngby.index.HotelSearchIndex;
 import dk.lyngby.model.Hotel;
+import dk.lyngby.util.CatalogExporter;
+import dk.lyngby.util.CatalogImporter;
 import io.javalin.http.Context;
-import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class HotelController implements IController<Hotel, Integer> {
 
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 50;
+    private static final double DEFAULT_NEARBY_RADIUS_KM = 10;
+    private static final double MAX_NEARBY_RADIUS_KM = 500;
+
     private final HotelDao dao;
+    private final AsyncDao<Hotel, Integer, HotelDao> asyncDao;
+    private final R2dbcHotelDao reactiveDao; // null unless db.r2dbc is on
+    private final CatalogImporter catalogImporter;
+    private final CatalogExporter catalogExporter;
+    private final HotelSearchIndex searchIndex;
+    private final HotelGeoIndex geoIndex;
 
     public HotelController() {
-        EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory(false);
-        this.dao = HotelDao.getInstance(emf);
+        ShardRouter shards = HibernateConfig.getShardRouter(false);
+        this.dao = HotelDao.getInstance(shards);
+        this.asyncDao = new AsyncDao<>(dao, DbExecutor.getInstance());
+        // the R2DBC reads only know the primary database, with several shards every read goes through Hibernate
+        this.reactiveDao = R2dbcConfig.isEnabled() && shards.count() == 1 ? R2dbcHotelDao.getInstance(R2dbcConfig.getConnectionFactory(), R2dbcConfig.getReadConnectionFactory(), asyncDao) : null;
+        this.catalogImporter = new CatalogImporter(shards);
+        this.catalogExporter = new CatalogExporter(shards);
+        this.searchIndex = HotelSearchIndex.getInstance();
+        this.searchIndex.rebuild(dao::readAllDtos);
+        this.geoIndex = HotelGeoIndex.getInstance();
+        this.geoIndex.rebuild(dao::readAllDtos);
     }
 
+    // The handlers that query the database run on the db executor, the Jetty thread is handed back once the work is queued
     @Override
     public void read(Context ctx)  {
+        if (reactiveDao != null) {
+            readReactive(ctx);
+            return;
+        }
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            if (ctx.header("If-None-Match") != null) {
+                Integer version = dao.readVersion(ctx.pathParamAsClass("id", Integer.class).get());
+                if (ETags.isNotModified(ctx, version)) {
+                    ETags.notModified(ctx, version);
+                    return;
+                }
+            }
+            int id = getId(ctx);
+            // dto
+            HotelDto hotelDto = dao.readDto(id);
+            // response
+            ctx.res().setStatus(200);
+            ctx.header("ETag", ETags.of(hotelDto.getVersion()));
+            ctx.json(hotelDto, HotelDto.class);
+        }));
+    }
+
+    // Over R2DBC the hotel and its room numbers are read without holding a thread, the response is written on the driver's thread
+    private void readReactive(Context ctx) {
         // request
-        int id = getId(ctx);
-        // entity
-        Hotel hotel = dao.read(id);
+        int id = ctx.pathParamAsClass("id", Integer.class).get();
         // dto
-        HotelDto hotelDto = new HotelDto(hotel);
-        // response
-        ctx.res().setStatus(200);
-        ctx.json(hotelDto, HotelDto.class);
+        ctx.future(() -> reactiveDao.readDto(id).thenAccept(hotelDto -> {
+            // an unknown id fails the same check the blocking path runs before its query
+            ctx.pathParamAsClass("id", Integer.class).check(i -> hotelDto != null, "Not a valid id").get();
+            // response
+            if (ETags.isNotModified(ctx, hotelDto.getVersion())) {
+                ETags.notModified(ctx, hotelDto.getVersion());
+                return;
+            }
+            ctx.res().setStatus(200);
+            ctx.header("ETag", ETags.of(hotelDto.getVersion()));
+            ctx.json(hotelDto, HotelDto.class);
+        }));
     }
 
     @Override
     public void readAll(Context ctx) {
-        // entity
-        List<Hotel> hotels = dao.readAll();
+        // request
+        PageRequest pageRequest = PageRequest.of(ctx);
         // dto
-        List<HotelDto> hotelDtos = HotelDto.toHotelDTOList(hotels);
-        // response
-        ctx.res().setStatus(200);
-        ctx.json(hotelDtos, HotelDto.class);
+        ctx.future(() -> readDtoPage(pageRequest).thenAccept(hotels -> {
+            List<HotelDto> hotelDtos = pageRequest.page(hotels);
+            HotelListDto hotelListDto = new HotelListDto(hotelDtos.size(), hotelDtos, pageRequest.nextCursor(hotels, HotelDto::getId));
+            // response
+            ctx.res().setStatus(200);
+            ctx.json(hotelListDto, HotelListDto.class);
+        }));
     }
 
     @Override
@@ -49,35 +125,144 @@ public class HotelController implements IController<Hotel, Integer> {
         // request
         Hotel jsonRequest = validateEntity(ctx);
         // entity
-        Hotel hotel = dao.create(jsonRequest);
-        // dto
-        HotelDto hotelDto = new HotelDto(hotel);
-        // response
-        ctx.res().setStatus(201);
-        ctx.json(hotelDto, HotelDto.class);
+        ctx.future(() -> asyncDao.create(jsonRequest).thenAccept(hotel -> {
+            // dto
+            HotelDto hotelDto = new HotelDto(hotel);
+            // response
+            ctx.res().setStatus(201);
+            ctx.json(hotelDto, HotelDto.class);
+        }));
     }
 
     @Override
     public void update(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int id = getId(ctx);
+            Integer expectedVersion = ETags.ifMatchVersion(ctx);
+            // entity
+            Hotel update;
+            try {
+                update = dao.update(id, validateEntity(ctx), expectedVersion);
+            } catch (PersistenceException e) {
+                if (!ETags.isStale(e)) throw e;
+                int status = expectedVersion != null ? 412 : 409;
+                ctx.res().setStatus(status);
+                ctx.json(new Message(status, "Hotel was changed by another request, read it again before updating"));
+                return;
+            }
+            // dto
+            HotelDto hotelDto = new HotelDto(update);
+            // response
+            ctx.res().setStatus(200);
+            ctx.header("ETag", ETags.of(hotelDto.getVersion()));
+            ctx.json(hotelDto, Hotel.class);
+        }));
+    }
+
+    @Override
+    public void delete(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int id = getId(ctx);
+            // entity
+            dao.delete(id);
+            // response
+            ctx.res().setStatus(204);
+        }));
+    }
+
+    private CompletableFuture<List<HotelDto>> readDtoPage(PageRequest pageRequest) {
+        if (reactiveDao != null) return reactiveDao.readDtoPage(pageRequest.afterId(), pageRequest.fetchSize());
+        return asyncDao.supply(dao -> dao.readDtoPage(pageRequest.afterId(), pageRequest.fetchSize()));
+    }
+
+    public void search(Context ctx) {
         // request
-        int id = getId(ctx);
-        // entity
-        Hotel update = dao.update(id, validateEntity(ctx));
+        String query = ctx.queryParamAsClass("q", String.class).check(q -> !q.isBlank(), "Search query must be set").get();
+        int limit = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l > 0 && l <= MAX_SEARCH_LIMIT, "Limit must be between 1 and " + MAX_SEARCH_LIMIT)
+                .getOrDefault(DEFAULT_SEARCH_LIMIT);
         // dto
-        HotelDto hotelDto = new HotelDto(update);
+        List<HotelSearchHitDto> hits = searchIndex.search(query, limit);
+        HotelSearchDto hotelSearchDto = new HotelSearchDto(query, hits.size(), hits);
         // response
         ctx.res().setStatus(200);
-        ctx.json(hotelDto, Hotel.class);
+        ctx.json(hotelSearchDto, HotelSearchDto.class);
     }
 
-    @Override
-    public void delete(Context ctx) {
+    public void readNearby(Context ctx) {
+        // request
+        double latitude = ctx.queryParamAsClass("lat", Double.class).check(l -> l >= -90 && l <= 90, "Latitude must be between -90 and 90").get();
+        double longitude = ctx.queryParamAsClass("lon", Double.class).check(l -> l >= -180 && l <= 180, "Longitude must be between -180 and 180").get();
+        double radius = ctx.queryParamAsClass("radius", Double.class)
+                .check(r -> r > 0 && r <= MAX_NEARBY_RADIUS_KM, "Radius must be above 0 and at most " + MAX_NEARBY_RADIUS_KM + " km")
+                .getOrDefault(DEFAULT_NEARBY_RADIUS_KM);
+        int limit = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l > 0 && l <= MAX_SEARCH_LIMIT, "Limit must be between 1 and " + MAX_SEARCH_LIMIT)
+                .getOrDefault(DEFAULT_SEARCH_LIMIT);
+        // dto
+        List<HotelNearbyDto> hotels = geoIndex.nearest(latitude, longitude, radius, limit);
+        HotelNearbyListDto hotelNearbyListDto = new HotelNearbyListDto(latitude, longitude, radius, hotels.size(), hotels);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(hotelNearbyListDto, HotelNearbyListDto.class);
+    }
+
+    public void readStats(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int id = getId(ctx);
+            // dto
+            HotelStatsDto hotelStatsDto = dao.readStats(id);
+            // response
+            ctx.res().setStatus(200);
+            ctx.json(hotelStatsDto, HotelStatsDto.class);
+        }));
+    }
+
+    public void readAllStats(Context ctx) {
+        // request
+        PageRequest pageRequest = PageRequest.of(ctx);
+        // dto
+        ctx.future(() -> asyncDao.supply(dao -> dao.readStatsPage(pageRequest.afterId(), pageRequest.fetchSize())).thenAccept(stats -> {
+            List<HotelStatsDto> hotelStats = pageRequest.page(stats);
+            HotelStatsListDto hotelStatsListDto = new HotelStatsListDto(hotelStats.size(), hotelStats, pageRequest.nextCursor(stats, HotelStatsDto::hotelId));
+            // response
+            ctx.res().setStatus(200);
+            ctx.json(hotelStatsListDto, HotelStatsListDto.class);
+        }));
+    }
+
+    public void importCatalog(Context ctx) throws ApiException {
         // request
-        int id = getId(ctx);
+        CatalogImporter.Format format = getImportFormat(ctx);
         // entity
-        dao.delete(id);
+        ImportReportDto report = catalogImporter.importCatalog(ctx.bodyInputStream(), format);
+        // response
+        ctx.res().setStatus(201);
+        ctx.json(report, ImportReportDto.class);
+    }
+
+    public void exportCatalog(Context ctx) throws IOException {
         // response
-        ctx.res().setStatus(204);
+        ctx.res().setStatus(200);
+        ctx.contentType("application/x-ndjson");
+        catalogExporter.exportCatalog(ctx.outputStream());
+    }
+
+    // ?format=csv|ndjson wins over the content type, anything not csv is read as ndjson
+    private CatalogImporter.Format getImportFormat(Context ctx) {
+        String format = ctx.queryParamAsClass("format", String.class)
+                .allowNullable()
+                .check(f -> f == null || f.equalsIgnoreCase("csv") || f.equalsIgnoreCase("ndjson"), "Format must be csv or ndjson")
+                .get();
+
+        if (format == null) {
+            String contentType = ctx.contentType();
+            return contentType != null && contentType.startsWith("text/csv") ? CatalogImporter.Format.CSV : CatalogImporter.Format.NDJSON;
+        }
+        return CatalogImporter.Format.valueOf(format.toUpperCase());
     }
 
     @NotNull
@@ -95,6 +280,9 @@ public class HotelController implements IController<Hotel, Integer> {
         return ctx.bodyValidator(Hotel.class)
                 .check( h -> h.getHotelAddress() != null && !h.getHotelAddress().isEmpty(), "Hotel address must be set")
                 .check( h -> h.getHotelName() != null && !h.getHotelName().isEmpty(), "Hotel name must be set")
+                .check( h -> (h.getLatitude() == null) == (h.getLongitude() == null), "Latitude and longitude must be set together")
+                .check( h -> h.getLatitude() == null || (h.getLatitude() >= -90 && h.getLatitude() <= 90), "Latitude must be between -90 and 90")
+                .check( h -> h.getLongitude() == null || (h.getLongitude() >= -180 && h.getLongitude() <= 180), "Longitude must be between -180 and 180")
                 .get();
     }
 
@@ -0,0 +1,76 @@
+package dk.lyngby.controller.impl;
+
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.config.CacheMetrics;
+import dk.lyngby.config.DataSourceConfig;
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.PriceWriteBehind;
+import dk.lyngby.dto.CacheRegionMetricsDto;
+import dk.lyngby.dto.ChangeFeedMetricsDto;
+import dk.lyngby.dto.DbExecutorMetricsDto;
+import dk.lyngby.dto.PoolMetricsDto;
+import dk.lyngby.dto.PriceWriteBehindMetricsDto;
+import dk.lyngby.dto.RateLimitMetricsDto;
+import io.javalin.http.Context;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.List;
+
+public class MetricsController {
+
+    private final EntityManagerFactory emf;
+
+    public MetricsController() {
+        this.emf = HibernateConfig.getEntityManagerFactory(false);
+    }
+
+    public void poolMetrics(Context ctx) {
+        // metrics
+        List<PoolMetricsDto> poolMetrics = DataSourceConfig.getPoolMetrics();
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(poolMetrics, PoolMetricsDto.class);
+    }
+
+    public void dbExecutorMetrics(Context ctx) {
+        // metrics
+        DbExecutorMetricsDto dbExecutorMetrics = DbExecutor.getInstance().getMetrics();
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(dbExecutorMetrics, DbExecutorMetricsDto.class);
+    }
+
+    public void cacheMetrics(Context ctx) {
+        // metrics
+        List<CacheRegionMetricsDto> cacheMetrics = CacheMetrics.getRegionMetrics(emf);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(cacheMetrics, CacheRegionMetricsDto.class);
+    }
+
+    public void changeFeedMetrics(Context ctx) {
+        // metrics
+        ChangeFeedMetricsDto changeFeedMetrics = ChangeFeed.getInstance().getMetrics();
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(changeFeedMetrics, ChangeFeedMetricsDto.class);
+    }
+
+    public void priceWriteBehindMetrics(Context ctx) {
+        // metrics
+        PriceWriteBehind priceWriteBehind = PriceWriteBehind.getInstance();
+        PriceWriteBehindMetricsDto priceWriteBehindMetrics = priceWriteBehind != null ? priceWriteBehind.getMetrics() : new PriceWriteBehindMetricsDto(false, 0, 0, 0, 0);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(priceWriteBehindMetrics, PriceWriteBehindMetricsDto.class);
+    }
+
+    public void rateLimitMetrics(Context ctx) {
+        // metrics
+        List<RateLimitMetricsDto> rateLimitMetrics = AccessManagerController.getRateLimitMetrics();
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(rateLimitMetrics, RateLimitMetricsDto.class);
+    }
+}
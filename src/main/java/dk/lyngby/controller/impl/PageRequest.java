@@ -0,0 +1,60 @@
+package dk.lyngby.controller.impl;
+
+import io.javalin.http.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// Keyset pagination: the cursor is an opaque token holding the last id of the previous page
+public record PageRequest(Integer afterId, int limit) {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    public static PageRequest of(Context ctx) {
+        Integer afterId = null;
+
+        if (ctx.queryParam("cursor") != null) {
+            String cursor = ctx.queryParamAsClass("cursor", String.class).check(PageRequest::isValidCursor, "Not a valid cursor").get();
+            afterId = decodeCursor(cursor);
+        }
+
+        int limit = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l > 0 && l <= MAX_LIMIT, "Limit must be between 1 and " + MAX_LIMIT)
+                .getOrDefault(DEFAULT_LIMIT);
+
+        return new PageRequest(afterId, limit);
+    }
+
+    // The dao is asked for one row more than the page size, the extra row tells us if there is a next page
+    public int fetchSize() {
+        return limit + 1;
+    }
+
+    public <T> List<T> page(List<T> rows) {
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    public <T> String nextCursor(List<T> rows, Function<T, Integer> idOf) {
+        if (rows.size() <= limit) return null;
+        return encodeCursor(idOf.apply(rows.get(limit - 1)));
+    }
+
+    public static String encodeCursor(int id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Integer decodeCursor(String cursor) {
+        return Integer.parseInt(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+    }
+
+    private static boolean isValidCursor(String cursor) {
+        try {
+            return decodeCursor(cursor) >= 0;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
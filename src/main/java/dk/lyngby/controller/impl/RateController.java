@@ -0,0 +1,128 @@
+package dk.lyngby.controller.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.RateRuleDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.dto.QuoteDto;
+import dk.lyngby.dto.QuoteListDto;
+import dk.lyngby.dto.QuoteRequestDto;
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.dto.RateRuleListDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.exception.Message;
+import dk.lyngby.model.RateRule;
+import dk.lyngby.pricing.QuoteEngine;
+import dk.lyngby.pricing.RateTable;
+import io.javalin.http.Context;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class RateController {
+
+    private static final int MAX_QUOTE_ROOMS = 5000;
+
+    private final RateRuleDao dao;
+    private final HotelDao hotelDao;
+    private final RoomDao roomDao;
+    private final QuoteEngine quoteEngine;
+
+    public RateController() {
+        ShardRouter shards = HibernateConfig.getShardRouter(false);
+        this.dao = RateRuleDao.getInstance(shards);
+        this.hotelDao = HotelDao.getInstance(shards);
+        this.roomDao = RoomDao.getInstance(shards);
+        this.quoteEngine = QuoteEngine.getInstance();
+    }
+
+    public void create(Context ctx) {
+        // request
+        int hotelId = getHotelId(ctx);
+        RateRule jsonRequest = validateEntity(ctx);
+        // entity
+        RateRule rule = dao.create(hotelId, jsonRequest);
+        // dto
+        RateRuleDto rateRuleDto = new RateRuleDto(rule, hotelId);
+        // response
+        ctx.res().setStatus(201);
+        ctx.json(rateRuleDto, RateRuleDto.class);
+    }
+
+    public void readAll(Context ctx) {
+        // request
+        int hotelId = getHotelId(ctx);
+        // dto
+        List<RateRuleDto> rateRuleDtos = dao.readAll(hotelId);
+        RateRuleListDto rateRuleListDto = new RateRuleListDto(rateRuleDtos.size(), rateRuleDtos);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(rateRuleListDto, RateRuleListDto.class);
+    }
+
+    public void delete(Context ctx) {
+        // request
+        int id = ctx.pathParamAsClass("id", Integer.class).get();
+        // entity
+        Integer hotelId = dao.delete(id);
+        // response
+        if (hotelId == null) {
+            ctx.res().setStatus(404);
+            ctx.json(new Message(404, "Rate rule " + id + " not found"));
+            return;
+        }
+        ctx.res().setStatus(204);
+    }
+
+    // Prices the same stay for every room in the request, rooms that do not exist are left out
+    public void quote(Context ctx) {
+        // request
+        QuoteRequestDto jsonRequest = validateQuoteRequest(ctx);
+        List<Integer> roomIds = List.copyOf(new LinkedHashSet<>(jsonRequest.roomIds()));
+        // dto
+        List<RoomAvailabilityDto> rooms = roomDao.readAvailabilityDtos(roomIds);
+        Map<Integer, Integer> requestOrder = IntStream.range(0, roomIds.size()).boxed().collect(Collectors.toMap(roomIds::get, Function.identity()));
+        rooms = rooms.stream().sorted(Comparator.comparing(room -> requestOrder.get(room.roomId()))).toList();
+        List<QuoteDto> quotes = quoteEngine.quote(rooms, jsonRequest.checkIn(), jsonRequest.checkOut(), dao::readAll);
+        QuoteListDto quoteListDto = new QuoteListDto(jsonRequest.checkIn(), jsonRequest.checkOut(), quotes.size(), quotes);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(quoteListDto, QuoteListDto.class);
+    }
+
+    @NotNull
+    private Integer getHotelId(Context ctx) {
+        return ctx.pathParamAsClass("id", Integer.class).check(hotelDao::validatePrimaryKey, "Not a valid id").get();
+    }
+
+    public RateRule validateEntity(Context ctx) {
+        return ctx.bodyValidator(RateRule.class)
+                .check(r -> r.getMultiplier() != null && r.getMultiplier().compareTo(BigDecimal.ZERO) > 0, "Multiplier must be above 0")
+                .check(r -> r.getValidFrom() == null || r.getValidTo() == null || r.getValidFrom().isBefore(r.getValidTo()), "Valid from must be before valid to")
+                .check(r -> r.getMinNights() == null || r.getMinNights() > 1, "Min nights must be at least 2")
+                .check(r -> r.getMinNights() == null || r.getWeekdays() == null, "A length of stay rule can not be limited to weekdays")
+                .get();
+    }
+
+    private QuoteRequestDto validateQuoteRequest(Context ctx) {
+        LocalDate lastCheckOut = LocalDate.now().plusDays(RateTable.DAYS);
+        return ctx.bodyValidator(QuoteRequestDto.class)
+                .check(q -> q.checkIn() != null && q.checkOut() != null, "Check in and check out must be set")
+                .check(q -> q.checkIn() == null || q.checkOut() == null || q.checkIn().isBefore(q.checkOut()), "Check out must be after check in")
+                .check(q -> q.checkIn() == null || !q.checkIn().isBefore(LocalDate.now()), "Check in can not be in the past")
+                .check(q -> q.checkOut() == null || !q.checkOut().isAfter(lastCheckOut), "Check out can not be after " + lastCheckOut)
+                .check(q -> q.roomIds() != null && !q.roomIds().isEmpty() && q.roomIds().size() <= MAX_QUOTE_ROOMS, "A quote must contain between 1 and " + MAX_QUOTE_ROOMS + " rooms")
+                .check(q -> q.roomIds() == null || q.roomIds().stream().allMatch(Objects::nonNull), "Not a valid room id")
+                .get();
+    }
+}
@@ -1,122 +1,317 @@
 package dk.lyngby.controller.impl;
 
 import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.config.R2dbcConfig;
 import dk.lyngby.controller.IController;
+import dk.lyngby.dao.AsyncDao;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.impl.BookingDao;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.R2dbcRoomDao;
 import dk.lyngby.dao.impl.RoomDao;
 import dk.lyngby.dao.impl.RoomListDto;
 import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.dto.RoomAvailabilityListDto;
 import dk.lyngby.dto.RoomDto;
 import dk.lyngby.exception.Message;
-import dk.lyngby.model.Hotel;
+import dk.lyngby.index.OccupancyCalendar;
 import dk.lyngby.model.Room;
 import io.javalin.http.Context;
-import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.BiFunction;
 
 public class RoomController implements IController<Room, Integer> {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private RoomDao dao;
+    private final AsyncDao<Room, Integer, RoomDao> asyncDao;
+    private final R2dbcRoomDao reactiveDao; // null unless db.r2dbc is on
+    private final HotelDao hotelDao;
 
     public RoomController() {
-        EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory(false);
-        this.dao = RoomDao.getInstance(emf);
+        ShardRouter shards = HibernateConfig.getShardRouter(false);
+        this.dao = RoomDao.getInstance(shards);
+        this.asyncDao = new AsyncDao<>(dao, DbExecutor.getInstance());
+        // the R2DBC reads only know the primary database, with several shards every read goes through Hibernate
+        this.reactiveDao = R2dbcConfig.isEnabled() && shards.count() == 1 ? R2dbcRoomDao.getInstance(R2dbcConfig.getConnectionFactory(), R2dbcConfig.getReadConnectionFactory(), asyncDao) : null;
+        this.hotelDao = HotelDao.getInstance(shards);
+        OccupancyCalendar.getInstance().rebuild(dao::readAllAvailabilityDtos, BookingDao.getInstance(shards)::readAllCurrent);
     }
 
+    // The handlers that query the database run on the db executor, the Jetty thread is handed back once the work is queued
     @Override
     public void read(Context ctx) {
-        // request
-        int id = getId(ctx);
+        if (reactiveDao != null) {
+            readReactive(ctx);
+            return;
+        }
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            if (ctx.header("If-None-Match") != null) {
+                Integer version = dao.readVersion(ctx.pathParamAsClass("id", Integer.class).get());
+                if (ETags.isNotModified(ctx, version)) {
+                    ETags.notModified(ctx, version);
+                    return;
+                }
+            }
+            int id = getId(ctx);
 
-        // entity
-        Room room = dao.read(id);
-        // dto
-        RoomDto roomDto = new RoomDto(room);
-        // response
-        ctx.res().setStatus(200);
-        ctx.json(roomDto, RoomDto.class);
+            // dto
+            RoomDto roomDto = dao.readDto(id);
+            // response
+            ctx.res().setStatus(200);
+            if (roomDto.getVersion() != null) ctx.header("ETag", ETags.of(roomDto.getVersion())); // none while its price is journaled
+            ctx.json(roomDto, RoomDto.class);
+        }));
+    }
 
+    // Over R2DBC the room is read without holding a thread, the response is written on the driver's thread
+    private void readReactive(Context ctx) {
+        // request
+        int id = ctx.pathParamAsClass("id", Integer.class).get();
+        // dto
+        ctx.future(() -> reactiveDao.readDto(id).thenAccept(roomDto -> {
+            // an unknown id fails the same check the blocking path runs before its query
+            ctx.pathParamAsClass("id", Integer.class).check(i -> roomDto != null, "Not a valid id").get();
+            // response
+            if (ETags.isNotModified(ctx, roomDto.getVersion())) {
+                ETags.notModified(ctx, roomDto.getVersion());
+                return;
+            }
+            ctx.res().setStatus(200);
+            if (roomDto.getVersion() != null) ctx.header("ETag", ETags.of(roomDto.getVersion()));
+            ctx.json(roomDto, RoomDto.class);
+        }));
     }
 
     @Override
     public void readAll(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int hotelId = getHotelId(ctx);
+            // response
+            searchRooms(ctx, hotelId);
+        }));
+    }
 
-        int hotelId = getId(ctx);
-
-        Map<String, List<String>> queryParamMap = ctx.queryParamMap();
+    public void search(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            Integer hotelId = ctx.queryParamAsClass("hotel", Integer.class).allowNullable().get();
+            // response
+            searchRooms(ctx, hotelId);
+        }));
+    }
 
-        // entity
-        List<Room> rooms = dao.readAll(hotelId);
+    private void searchRooms(Context ctx, Integer hotelId) {
+        // request
+        PageRequest pageRequest = PageRequest.of(ctx);
+        RoomFilter filter = getRoomFilter(ctx, hotelId, pageRequest);
+        // dto
+        List<RoomDto> page = dao.search(filter);
+        List<RoomDto> roomDtos = pageRequest.page(page);
+        String nextCursor = filter.sort() == RoomFilter.Sort.ID ? pageRequest.nextCursor(page, RoomDto::getRoomId) : null;
+        RoomListDto roomListDto = new RoomListDto(roomDtos.size(), roomDtos, nextCursor);
+        // response
+        ctx.res().setStatus(200);
+        ctx.json(roomListDto, RoomListDto.class);
+    }
 
-        if(!queryParamMap.isEmpty()) {
-            Set<String> keySet = new HashSet<>(queryParamMap.keySet());
+    // Rooms free every night of the stay, answered from the occupancy calendar without a query
+    public void readAvailable(Context ctx) {
+        // request
+        LocalDate from = getDate(ctx, "from");
+        LocalDate to = getDate(ctx, "to");
+        Integer hotelId = ctx.queryParamAsClass("hotel", Integer.class).allowNullable().get();
+        PageRequest pageRequest = PageRequest.of(ctx);
+        RoomFilter filter = getRoomFilter(ctx, hotelId, pageRequest);
 
-            if(keySet.contains("min-price") && keySet.contains("max-price")) {
-                double minPrice = Double.parseDouble(queryParamMap.get("min-price").get(0));
-                double maxPrice = Double.parseDouble(queryParamMap.get("max-price").get(0));
-                rooms = rooms.stream().filter(r -> r.getRoomPrice().doubleValue() >= minPrice && r.getRoomPrice().doubleValue() <= maxPrice).toList();
-            }
+        OccupancyCalendar calendar = OccupancyCalendar.getInstance();
+        if (!from.isBefore(to) || from.isBefore(calendar.firstDay()) || to.isAfter(calendar.lastDay())) {
+            ctx.res().setStatus(400);
+            ctx.json(new Message(400, "The stay must end after it starts and lie between " + calendar.firstDay() + " and " + calendar.lastDay()));
+            return;
+        }
+        if (filter.sort() != RoomFilter.Sort.ID) {
+            ctx.res().setStatus(400);
+            ctx.json(new Message(400, "Available rooms can only be sorted by id"));
+            return;
         }
-
         // dto
-        List<RoomDto> roomDtos = RoomDto.toRoomDTOList(rooms);
-        RoomListDto roomListDto = new RoomListDto(roomDtos.size(), roomDtos);
-
+        List<RoomAvailabilityDto> page = calendar.findAvailable(from, to, filter);
+        List<RoomAvailabilityDto> rooms = pageRequest.page(page);
+        RoomAvailabilityListDto roomAvailabilityListDto = new RoomAvailabilityListDto(from, to, rooms.size(), rooms, pageRequest.nextCursor(page, RoomAvailabilityDto::roomId));
         // response
         ctx.res().setStatus(200);
-        ctx.json(roomListDto, RoomListDto.class);
+        ctx.json(roomAvailabilityListDto, RoomAvailabilityListDto.class);
+    }
+
+    private static LocalDate getDate(Context ctx, String name) {
+        String date = ctx.queryParamAsClass(name, String.class).check(RoomController::isValidDate, "Not a valid date, use yyyy-mm-dd").get();
+        return LocalDate.parse(date);
+    }
+
+    private static boolean isValidDate(String date) {
+        try {
+            LocalDate.parse(date);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
 
+    private RoomFilter getRoomFilter(Context ctx, Integer hotelId, PageRequest pageRequest) {
+        String type = ctx.queryParamAsClass("type", String.class).allowNullable()
+                .check(t -> t == null || Arrays.stream(Room.RoomType.values()).anyMatch(rt -> rt.name().equalsIgnoreCase(t)), "Not a valid room type")
+                .get();
+        Double minPrice = ctx.queryParamAsClass("min-price", Double.class).allowNullable().check(p -> p == null || p >= 0, "Not a valid price").get();
+        Double maxPrice = ctx.queryParamAsClass("max-price", Double.class).allowNullable().check(p -> p == null || p >= 0, "Not a valid price").get();
+        String sort = ctx.queryParamAsClass("sort", String.class)
+                .check(s -> List.of("id", "price-asc", "price-desc").contains(s), "Sort must be one of id, price-asc, price-desc")
+                .getOrDefault("id");
+
+        return new RoomFilter(
+                hotelId,
+                type != null ? Room.RoomType.valueOf(type.toUpperCase()) : null,
+                minPrice != null ? BigDecimal.valueOf(minPrice) : null,
+                maxPrice != null ? BigDecimal.valueOf(maxPrice) : null,
+                RoomFilter.Sort.valueOf(sort.toUpperCase().replace('-', '_')),
+                pageRequest.afterId(),
+                pageRequest.fetchSize()
+        );
     }
 
     @Override
     public void create(Context ctx) {
-        // request
-        Room jsonRequest = validateEntity(ctx);
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            Room jsonRequest = validateEntity(ctx);
 
-        int hotelId = getId(ctx);
-        Boolean hasRoom = validateHotelRoomNumber.apply(jsonRequest.getRoomNumber(), hotelId);
+            int hotelId = getHotelId(ctx);
+            Boolean hasRoom = validateHotelRoomNumber.apply(jsonRequest.getRoomNumber(), hotelId);
 
-        if (hasRoom) {
-            ctx.res().setStatus(400);
-            ctx.json(new Message(400, "Room number already in use by hotel"));
-            return;
-        }
+            if (hasRoom) {
+                ctx.res().setStatus(400);
+                ctx.json(new Message(400, "Room number already in use by hotel"));
+                return;
+            }
 
-        // entity
-        Hotel hotel = dao.addRoomToHotel(hotelId, jsonRequest);
-        // dto
-        HotelDto hotelDto = new HotelDto(hotel);
-        // response
-        ctx.res().setStatus(201);
-        ctx.json(hotelDto, HotelDto.class);
+            // entity
+            try {
+                dao.addRoomToHotel(hotelId, jsonRequest);
+            } catch (PersistenceException e) {
+                // another request took the room number after the check above
+                if (!RoomDao.isRoomNumberConflict(e)) throw e;
+                ctx.res().setStatus(400);
+                ctx.json(new Message(400, "Room number already in use by hotel"));
+                return;
+            }
+            // dto
+            HotelDto hotelDto = hotelDao.readDto(hotelId);
+            // response
+            ctx.res().setStatus(201);
+            ctx.json(hotelDto, HotelDto.class);
+        }));
+    }
+
+    public void createBatch(Context ctx) {
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            List<Room> jsonRequest = validateEntities(ctx);
+
+            int hotelId = getHotelId(ctx);
+            Set<Integer> roomNumbers = new HashSet<>();
+            Set<Integer> usedRoomNumbers = new TreeSet<>(dao.readTakenRoomNumbers(hotelId, jsonRequest.stream().map(Room::getRoomNumber).toList()));
+            jsonRequest.stream().map(Room::getRoomNumber).filter(n -> !roomNumbers.add(n)).forEach(usedRoomNumbers::add);
+
+            if (!usedRoomNumbers.isEmpty()) {
+                ctx.res().setStatus(400);
+                ctx.json(new Message(400, "Room numbers already in use by hotel: " + usedRoomNumbers));
+                return;
+            }
+
+            // entity
+            List<Room> rooms;
+            try {
+                rooms = dao.addRoomsToHotel(hotelId, jsonRequest);
+            } catch (PersistenceException e) {
+                if (!RoomDao.isRoomNumberConflict(e)) throw e;
+                ctx.res().setStatus(400);
+                ctx.json(new Message(400, "Room numbers already in use by hotel"));
+                return;
+            }
+            // dto
+            List<RoomDto> roomDtos = RoomDto.toRoomDTOList(rooms);
+            RoomListDto roomListDto = new RoomListDto(roomDtos.size(), roomDtos, null);
+            // response
+            ctx.res().setStatus(201);
+            ctx.json(roomListDto, RoomListDto.class);
+        }));
     }
 
     @Override
     public void update(Context ctx) {
-        // request
-        int id = getId(ctx);
-        // entity
-        Room update = dao.update(id, validateEntity(ctx));
-        // dto
-        RoomDto roomDto = new RoomDto(update);
-        // response
-        ctx.res().setStatus(200);
-        ctx.json(roomDto, RoomDto.class);
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int id = getId(ctx);
+            Integer expectedVersion = ETags.ifMatchVersion(ctx);
+            Room jsonRequest = validateEntity(ctx);
+            // entity
+            if (expectedVersion == null && dao.isPriceWriteBehind()) {
+                // only the price changes, it is journaled and written with the next batch
+                Room later = dao.updatePriceLater(id, jsonRequest);
+                if (later != null) {
+                    // dto
+                    RoomDto roomDto = new RoomDto(later);
+                    // response
+                    ctx.res().setStatus(202);
+                    ctx.json(roomDto, RoomDto.class);
+                    return;
+                }
+            }
+            Room update;
+            try {
+                update = dao.update(id, jsonRequest, expectedVersion);
+            } catch (PersistenceException e) {
+                if (!ETags.isStale(e)) throw e;
+                int status = expectedVersion != null ? 412 : 409;
+                ctx.res().setStatus(status);
+                ctx.json(new Message(status, "Room was changed by another request, read it again before updating"));
+                return;
+            }
+            // dto
+            RoomDto roomDto = new RoomDto(update);
+            // response
+            ctx.res().setStatus(200);
+            ctx.header("ETag", ETags.of(roomDto.getVersion()));
+            ctx.json(roomDto, RoomDto.class);
+        }));
     }
 
     @Override
     public void delete(Context ctx) {
-        // request
-        int id = getId(ctx);
-        // entity
-        dao.delete(id);
-        // response
-        ctx.res().setStatus(204);
+        ctx.future(() -> asyncDao.run(dao -> {
+            // request
+            int id = getId(ctx);
+            // entity
+            dao.delete(id);
+            // response
+            ctx.res().setStatus(204);
+        }));
     }
 
     @NotNull
@@ -124,6 +319,12 @@ public class RoomController implements IController<Room, Integer> {
         return ctx.pathParamAsClass("id", Integer.class).check(this::validatePrimaryKey, "Not a valid id").get();
     }
 
+    // the id of the /rooms/hotel/{id} routes is a hotel id
+    @NotNull
+    private Integer getHotelId(Context ctx) {
+        return ctx.pathParamAsClass("id", Integer.class).check(hotelDao::validatePrimaryKey, "Not a valid id").get();
+    }
+
     @Override
     public boolean validatePrimaryKey(Integer integer) {return dao.validatePrimaryKey(integer);}
 
@@ -133,9 +334,31 @@ public class RoomController implements IController<Room, Integer> {
     @Override
     public Room validateEntity(Context ctx) {
         return ctx.bodyValidator(Room.class)
-                .check(r -> r.getRoomNumber() != null && r.getRoomNumber() > 0, "Not a valid room number")
-                .check(r -> r.getRoomType() != null, "Not a valid room type")
-                .check(r -> r.getRoomPrice() != null , "Not a valid price")
+                .check(RoomController::isValidRoomNumber, "Not a valid room number")
+                .check(RoomController::isValidRoomType, "Not a valid room type")
+                .check(RoomController::isValidPrice, "Not a valid price")
                 .get();
     }
+
+    public List<Room> validateEntities(Context ctx) {
+        Room[] rooms = ctx.bodyValidator(Room[].class)
+                .check(rs -> rs.length > 0 && rs.length <= MAX_BATCH_SIZE, "A batch must contain between 1 and " + MAX_BATCH_SIZE + " rooms")
+                .check(rs -> Arrays.stream(rs).allMatch(RoomController::isValidRoomNumber), "Not a valid room number")
+                .check(rs -> Arrays.stream(rs).allMatch(RoomController::isValidRoomType), "Not a valid room type")
+                .check(rs -> Arrays.stream(rs).allMatch(RoomController::isValidPrice), "Not a valid price")
+                .get();
+        return Arrays.asList(rooms);
+    }
+
+    private static boolean isValidRoomNumber(Room room) {
+        return room != null && room.getRoomNumber() != null && room.getRoomNumber() > 0;
+    }
+
+    private static boolean isValidRoomType(Room room) {
+        return room != null && room.getRoomType() != null;
+    }
+
+    private static boolean isValidPrice(Room room) {
+        return room != null && room.getRoomPrice() != null;
+    }
 }
@@ -0,0 +1,61 @@
+package dk.lyngby.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Runs the calls of a blocking dao on the db executor, supply and run cover the queries that are not part of IDao
+public class AsyncDao<T, D, X extends IDao<T, D>> implements IAsyncDao<T, D> {
+
+    private final X dao;
+    private final DbExecutor executor;
+
+    public AsyncDao(X dao, DbExecutor executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<T> read(D d) {
+        return executor.supply(() -> dao.read(d));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> readAll() {
+        return executor.supply(dao::readAll);
+    }
+
+    @Override
+    public CompletableFuture<List<T>> readPage(D after, int limit) {
+        return executor.supply(() -> dao.readPage(after, limit));
+    }
+
+    @Override
+    public CompletableFuture<T> create(T t) {
+        return executor.supply(() -> dao.create(t));
+    }
+
+    @Override
+    public CompletableFuture<T> update(D d, T t) {
+        return executor.supply(() -> dao.update(d, t));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(D d) {
+        return executor.run(() -> dao.delete(d));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> validatePrimaryKey(D d) {
+        return executor.supply(() -> dao.validatePrimaryKey(d));
+    }
+
+    public <R> CompletableFuture<R> supply(Function<X, R> query) {
+        return executor.supply(() -> query.apply(dao));
+    }
+
+    public CompletableFuture<Void> run(Consumer<X> work) {
+        return executor.run(() -> work.accept(dao));
+    }
+}
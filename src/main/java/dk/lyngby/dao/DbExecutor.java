@@ -0,0 +1,178 @@
+package dk.lyngby.dao;
+
+import dk.lyngby.config.ApplicationConfig;
+import dk.lyngby.config.DataSourceConfig;
+import dk.lyngby.dto.DbExecutorMetricsDto;
+import dk.lyngby.exception.ApiException;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Runs the blocking JDBC work of async handlers, a slow query parks one of these threads instead of a Jetty request thread.
+// One thread per pooled connection, more would only wait on the pool. Work that has waited in the queue for longer
+// than the timeout is answered with 503 instead of being run for a client that has most likely given up
+public class DbExecutor {
+
+    private static DbExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor timer;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final LongAccumulator maxQueueNanos = new LongAccumulator(Long::max, 0);
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Long::max, 0);
+
+    public DbExecutor(int threads, int queueCapacity, long timeoutMillis) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "db-executor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            workers.add(thread);
+            return thread;
+        });
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "db-executor-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Sized to the primary pool once the factories have created it
+    public static synchronized DbExecutor getInstance() {
+        if (instance == null) {
+            instance = new DbExecutor(DataSourceConfig.getMaximumPoolSize("primary"), getProperty("db.executor.queue.capacity", 200), getProperty("db.executor.timeout.millis", 5000));
+        }
+        return instance;
+    }
+
+    // The caller's unit of work and read-your-writes client go along, so the queries see the request the same way they would on its own thread.
+    // The calling thread is left without them, a Jetty thread handed back by ctx.future would otherwise carry the request into its next one.
+    // A stage chained on a task keeps them, it still runs on the executor for the same request
+    public <T> CompletableFuture<T> supply(Supplier<T> work) {
+        Task<T> task = new Task<>(work, UnitOfWork.current(), ReadYourWrites.currentClient());
+        if (!workers.contains(Thread.currentThread())) {
+            UnitOfWork.bind(null);
+            ReadYourWrites.unbind();
+        }
+        task.timeout = timer.schedule(task::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.timeout.cancel(false);
+            rejected.increment();
+            return CompletableFuture.failedFuture(new ApiException(503, "The database is busy, try again later"));
+        }
+        submitted.increment();
+        maxQueueDepth.accumulate(executor.getQueue().size());
+        return task.future;
+    }
+
+    public CompletableFuture<Void> run(Runnable work) {
+        return supply(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public DbExecutorMetricsDto getMetrics() {
+        long startedTasks = started.sum();
+        return new DbExecutorMetricsDto(
+                executor.getMaximumPoolSize(),
+                executor.getActiveCount(),
+                executor.getQueue().size(),
+                queueCapacity,
+                maxQueueDepth.get(),
+                timeoutMillis,
+                submitted.sum(),
+                startedTasks,
+                rejected.sum(),
+                timedOut.sum(),
+                startedTasks == 0 ? 0 : (double) totalQueueNanos.sum() / startedTasks / TimeUnit.MILLISECONDS.toNanos(1),
+                (double) maxQueueNanos.get() / TimeUnit.MILLISECONDS.toNanos(1)
+        );
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+
+    private static int getProperty(String propName, int defaultValue) {
+        try {
+            String value = ApplicationConfig.getProperty(propName);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (IOException e) {
+            return defaultValue;
+        }
+    }
+
+    // Either the worker or the timeout claims the task, whichever comes first, so work that has started always runs to the end
+    private final class Task<T> implements Runnable {
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final long queuedAt = System.nanoTime();
+        private final Supplier<T> work;
+        private final UnitOfWork.Scope scope;
+        private final String client;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Task(Supplier<T> work, UnitOfWork.Scope scope, String client) {
+            this.work = work;
+            this.scope = scope;
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) return;
+            timeout.cancel(false);
+            long queueNanos = System.nanoTime() - queuedAt;
+            totalQueueNanos.add(queueNanos);
+            maxQueueNanos.accumulate(queueNanos);
+            started.increment();
+
+            UnitOfWork.bind(scope);
+            ReadYourWrites.bind(client);
+            try {
+                // stages chained on the future run here as well, while the scope is still bound
+                future.complete(work.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                UnitOfWork.bind(null);
+                ReadYourWrites.unbind();
+            }
+        }
+
+        private void expire() {
+            if (!claimed.compareAndSet(false, true)) return;
+            executor.remove(this);
+            timedOut.increment();
+            future.completeExceptionally(new ApiException(503, "The database did not get to the request within " + timeoutMillis + " ms, try again later"));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package dk.lyngby.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface IAsyncDao<T, D> {
+
+    CompletableFuture<T> read(D d);
+    CompletableFuture<List<T>> readAll();
+    CompletableFuture<List<T>> readPage(D after, int limit);
+    CompletableFuture<T> create(T t);
+    CompletableFuture<T> update(D d, T t);
+    CompletableFuture<Void> delete(D d);
+    CompletableFuture<Boolean> validatePrimaryKey(D d);
+
+}
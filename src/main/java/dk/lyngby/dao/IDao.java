@@ -6,6 +6,7 @@ public interface IDao<T, D> {
 
     T read(D d);
     List<T> readAll();
+    List<T> readPage(D after, int limit);
     T create(T t);
     T update(D d, T t);
     void delete(D d);
@@ -0,0 +1,264 @@
+package dk.lyngby.dao;
+
+import dk.lyngby.config.ApplicationConfig;
+import dk.lyngby.dto.PriceWriteBehindMetricsDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Room prices that are acknowledged once they are in a local journal and reach the database later, in batches.
+// A room updated many times between two flushes is written once with its last price. The journal holds every
+// acknowledged price that is not in the database yet, it is read back on start so a crash loses nothing
+public class PriceWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceWriteBehind.class);
+    private static final String DISCARDED = "-";
+
+    private static PriceWriteBehind instance;
+
+    private final Path journal;
+    // the journal of the batch being written, deleted once the batch is in the database or copied back into the journal
+    private final Path flushing;
+    private final int batchSize;
+    private final Consumer<Map<Integer, BigDecimal>> writer;
+    // changed under this object's lock together with the journal, read without it
+    private final Map<Integer, BigDecimal> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel channel;
+
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    // The writer gets at most batchSize rooms at a time and throws when they could not be written
+    public PriceWriteBehind(Path journal, Duration interval, int batchSize, Consumer<Map<Integer, BigDecimal>> writer) throws IOException {
+        this.journal = journal;
+        this.flushing = journal.resolveSibling(journal.getFileName() + ".flushing");
+        this.batchSize = batchSize;
+        this.writer = writer;
+        recover();
+        timer.scheduleWithFixedDelay(this::flush, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // rooms.price.write.behind in the pom file, ROOMS_PRICE_WRITE_BEHIND overrides it
+    public static boolean isEnabled() {
+        try {
+            String envValue = System.getenv("ROOMS_PRICE_WRITE_BEHIND");
+            return Boolean.parseBoolean(envValue != null ? envValue : ApplicationConfig.getProperty("rooms.price.write.behind"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Null until the room dao has started it
+    public static synchronized PriceWriteBehind getInstance() {
+        return instance;
+    }
+
+    // Also started when the switch is off but a journal is left over, so the prices it holds still reach the database
+    public static synchronized PriceWriteBehind start(Consumer<Map<Integer, BigDecimal>> writer) {
+        if (instance == null) {
+            Path journal = Path.of(getProperty("rooms.price.journal", "price-journal.log"));
+            boolean leftOver = Files.exists(journal) || Files.exists(journal.resolveSibling(journal.getFileName() + ".flushing"));
+            if (!isEnabled() && !leftOver) return null;
+            try {
+                instance = new PriceWriteBehind(journal, Duration.ofMillis(getProperty("rooms.price.flush.millis", 1000)), getProperty("rooms.price.batch.size", 500), writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open the price journal " + journal, e);
+            }
+        }
+        return instance;
+    }
+
+    // Returns once the price is on disk, from then on it is the room's price
+    public synchronized void put(Integer roomId, BigDecimal price) {
+        append(List.of(roomId + " " + price.toPlainString()));
+        pending.put(roomId, price);
+        journaled.increment();
+    }
+
+    // The room was deleted or written directly, its journaled price must not be written over it
+    public synchronized void discard(Integer roomId) {
+        if (!pending.containsKey(roomId)) return;
+        append(List.of(roomId + " " + DISCARDED));
+        pending.remove(roomId);
+    }
+
+    // Writes the room's journaled price before a direct write of the room, false when it could not be written.
+    // A price put after this is newer than the direct write and is written over it later
+    public boolean flush(Integer roomId) {
+        if (!pending.containsKey(roomId)) return true;
+        flush();
+        return !pending.containsKey(roomId);
+    }
+
+    public BigDecimal pendingPrice(Integer roomId) {
+        return pending.get(roomId);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    // Writes everything pending in batches, on the timer or on the caller's thread when a direct write has to come after it.
+    // The journal is swapped for a fresh one first, so puts carry on while the batches are written
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Integer, BigDecimal> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = new HashMap<>(pending);
+                try {
+                    Files.move(journal, flushing, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    logger.error("Could not rotate the price journal, the prices are written with the next flush", e);
+                    return;
+                }
+                try {
+                    FileChannel next = open();
+                    channel.close();
+                    channel = next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open a new price journal", e);
+                }
+            }
+
+            Map<Integer, BigDecimal> done = new HashMap<>();
+            List<Map.Entry<Integer, BigDecimal>> entries = new ArrayList<>(batch.entrySet());
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                Map<Integer, BigDecimal> chunk = new HashMap<>();
+                entries.subList(from, Math.min(from + batchSize, entries.size())).forEach(entry -> chunk.put(entry.getKey(), entry.getValue()));
+                try {
+                    writer.accept(chunk);
+                    done.putAll(chunk);
+                    written.add(chunk.size());
+                } catch (RuntimeException e) {
+                    failedBatches.increment();
+                    logger.warn("Could not write {} room prices, they are tried again with the next flush", chunk.size(), e);
+                }
+            }
+
+            synchronized (this) {
+                done.forEach(pending::remove); // only when no newer price came in meanwhile
+                // the batch's rooms that are still pending with the same price are only in the old journal
+                List<String> records = new ArrayList<>();
+                batch.forEach((roomId, price) -> {
+                    if (!done.containsKey(roomId) && price.equals(pending.get(roomId))) records.add(roomId + " " + price.toPlainString());
+                });
+                try {
+                    if (!records.isEmpty()) append(records);
+                    Files.delete(flushing);
+                } catch (RuntimeException | IOException e) {
+                    logger.error("Could not copy the unwritten prices into the new price journal, the old journal is kept", e);
+                }
+            }
+        }
+    }
+
+    public PriceWriteBehindMetricsDto getMetrics() {
+        return new PriceWriteBehindMetricsDto(isEnabled(), pending.size(), journaled.sum(), written.sum(), failedBatches.sum());
+    }
+
+    // Writes what is pending and closes the journal, which is then empty and removed
+    public void shutdown() {
+        timer.shutdown();
+        flush();
+        synchronized (this) {
+            try {
+                channel.close();
+                if (pending.isEmpty()) Files.deleteIfExists(journal);
+            } catch (IOException e) {
+                logger.warn("Could not close the price journal", e);
+            }
+        }
+    }
+
+    // The batch journal left by a flush that did not finish comes before the journal, the last price of a room wins.
+    // A last line cut short by the crash was never acknowledged and is skipped. Both are compacted into a fresh journal
+    private void recover() throws IOException {
+        for (Path path : List.of(flushing, journal)) {
+            if (!Files.exists(path)) continue;
+            String content = Files.readString(path, StandardCharsets.UTF_8);
+            for (String line : content.substring(0, content.lastIndexOf('\n') + 1).split("\n")) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split(" ");
+                try {
+                    Integer roomId = Integer.valueOf(fields[0]);
+                    if (fields[1].equals(DISCARDED)) pending.remove(roomId);
+                    else pending.put(roomId, new BigDecimal(fields[1]));
+                } catch (RuntimeException e) {
+                    logger.warn("Skipped the price journal line '{}' in {}", line, path);
+                }
+            }
+        }
+
+        Path compacted = journal.resolveSibling(journal.getFileName() + ".compacted");
+        List<String> records = new ArrayList<>();
+        pending.forEach((roomId, price) -> records.add(roomId + " " + price.toPlainString()));
+        Files.write(compacted, records, StandardCharsets.UTF_8);
+        try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            compactedChannel.force(true);
+        }
+        Files.move(compacted, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(flushing);
+        channel = open();
+
+        if (!pending.isEmpty()) logger.info("Recovered {} room prices from the price journal", pending.size());
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void append(List<String> records) {
+        StringBuilder lines = new StringBuilder();
+        records.forEach(record -> lines.append(record).append('\n'));
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the price journal", e);
+        }
+    }
+
+    private static int getProperty(String propName, int defaultValue) {
+        String value = getProperty(propName, (String) null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static String getProperty(String propName, String defaultValue) {
+        try {
+            String value = ApplicationConfig.getProperty(propName);
+            return value != null && !value.isBlank() ? value : defaultValue;
+        } catch (IOException e) {
+            return defaultValue;
+        }
+    }
+}
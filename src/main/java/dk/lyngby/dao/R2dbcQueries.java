@@ -0,0 +1,32 @@
+package dk.lyngby.dao;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import lombok.NoArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// Plain SQL over R2DBC for the reactive daos. A connection is borrowed for the queries of one call and handed back
+// when the last row has been read, no thread waits on the database in between
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class R2dbcQueries {
+
+    // The future completes on a driver thread, whatever is chained on it must not block
+    public static <T> CompletableFuture<T> withConnection(ConnectionFactory connectionFactory, Function<Connection, Mono<T>> work) {
+        return Mono.usingWhen(connectionFactory.create(), work, Connection::close).toFuture();
+    }
+
+    // Parameters are bound in order to $1, $2, ..., ids for = ANY($n) are passed as an Integer[]
+    public static <T> Flux<T> select(Connection connection, String sql, Function<Row, T> mapper, Object... parameters) {
+        Statement statement = connection.createStatement(sql);
+        for (int i = 0; i < parameters.length; i++) {
+            statement.bind(i, parameters[i]);
+        }
+        return Flux.from(statement.execute()).flatMap(result -> result.map((row, metadata) -> mapper.apply(row)));
+    }
+}
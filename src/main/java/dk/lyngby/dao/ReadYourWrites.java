@@ -0,0 +1,65 @@
+package dk.lyngby.dao;
+
+import dk.lyngby.config.ApplicationConfig;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sends the reads of a client to the primary for a while after it has written, so it never reads its own write from a lagging replica
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class ReadYourWrites {
+
+    private static final long WINDOW_MILLIS = getWindowMillis();
+    private static final ThreadLocal<String> currentClient = new ThreadLocal<>();
+    private static final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private static final AtomicLong lastSweep = new AtomicLong();
+
+    // Bound in the before handler of every request, the client is the bearer token or else the ip address
+    public static void bind(String client) {
+        currentClient.set(client);
+    }
+
+    public static void unbind() {
+        currentClient.remove();
+    }
+
+    public static String currentClient() {
+        return currentClient.get();
+    }
+
+    public static void recordWrite() {
+        String client = currentClient.get();
+        if (client == null) return;
+
+        long now = System.currentTimeMillis();
+        lastWrites.put(client, now);
+
+        // clients that stopped writing are swept out once per window, by whichever write gets there first
+        long sweptAt = lastSweep.get();
+        if (now - sweptAt > WINDOW_MILLIS && lastSweep.compareAndSet(sweptAt, now)) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt > WINDOW_MILLIS);
+        }
+    }
+
+    // Works for any pair of primary and replica, the Hibernate factories as well as the R2DBC pools
+    public static <T> T forRead(T primary, T replica) {
+        if (primary == replica) return primary;
+
+        String client = currentClient.get();
+        Long writtenAt = client != null ? lastWrites.get(client) : null;
+        boolean recentWrite = writtenAt != null && System.currentTimeMillis() - writtenAt <= WINDOW_MILLIS;
+        return recentWrite ? primary : replica;
+    }
+
+    private static long getWindowMillis() {
+        try {
+            String window = ApplicationConfig.getProperty("db.replica.read.your.writes.millis");
+            return window != null ? Long.parseLong(window) : 5000;
+        } catch (IOException e) {
+            return 5000;
+        }
+    }
+}
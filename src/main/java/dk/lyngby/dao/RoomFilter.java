@@ -0,0 +1,13 @@
+package dk.lyngby.dao;
+
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+
+// Search criteria for rooms, null fields are not filtered on
+public record RoomFilter(Integer hotelId, Room.RoomType roomType, BigDecimal minPrice, BigDecimal maxPrice, Sort sort, Integer afterId, int limit) {
+
+    public enum Sort {
+        ID, PRICE_ASC, PRICE_DESC
+    }
+}
@@ -0,0 +1,111 @@
+package dk.lyngby.dao;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// The databases the hotels are spread over. A hotel and everything under it, rooms, rate rules and bookings, lives in one shard.
+// New hotels are placed by the hash of their unique name and every generated id leaves the shard's number modulo
+// the shard count, so any id routes without a lookup. The shard count can not change without moving the data.
+// With a single shard everything runs on the calling thread against the factories it was given
+public class ShardRouter {
+
+    // at most one task per shard for each db executor thread, the threads are only created when there is more than one shard
+    private static final ExecutorService gatherExecutor = Executors.newCachedThreadPool(gatherThreads());
+
+    private final List<EntityManagerFactory> primaries;
+    private final List<EntityManagerFactory> replicas;
+
+    public ShardRouter(List<EntityManagerFactory> primaries, List<EntityManagerFactory> replicas) {
+        if (primaries.isEmpty() || primaries.size() != replicas.size()) throw new IllegalArgumentException("Every shard needs a primary and a replica factory");
+        this.primaries = List.copyOf(primaries);
+        this.replicas = List.copyOf(replicas);
+    }
+
+    public static ShardRouter of(EntityManagerFactory emf, EntityManagerFactory replicaEmf) {
+        return new ShardRouter(List.of(emf), List.of(replicaEmf));
+    }
+
+    public int count() {
+        return primaries.size();
+    }
+
+    // The shard of a hotel, room, rate rule or booking id
+    public int shardOf(int id) {
+        return Math.floorMod(id, primaries.size());
+    }
+
+    // Where a new hotel goes, the unique constraint on the name holds across shards because a name always lands in the same one.
+    // A renamed hotel stays where it was created
+    public int shardOfHotelName(String hotelName) {
+        return Math.floorMod(hotelName.hashCode(), primaries.size());
+    }
+
+    public EntityManagerFactory primary(int shard) {
+        return primaries.get(shard);
+    }
+
+    // Reads go to the shard's replica unless the request writes or the client has just written
+    public EntityManagerFactory forRead(int shard) {
+        if (UnitOfWork.isWrite()) return primaries.get(shard);
+        return ReadYourWrites.forRead(primaries.get(shard), replicas.get(shard));
+    }
+
+    public List<EntityManagerFactory> primaries() {
+        return primaries;
+    }
+
+    public List<EntityManagerFactory> replicas() {
+        return replicas;
+    }
+
+    // Decided on the calling thread, the gather threads do not have the request's unit of work or client
+    public List<EntityManagerFactory> forReadAll() {
+        return IntStream.range(0, primaries.size()).mapToObj(this::forRead).toList();
+    }
+
+    // Runs the query against every shard at once, the results are concatenated in shard order
+    public <T> List<T> gather(List<EntityManagerFactory> factories, Function<EntityManagerFactory, List<T>> query) {
+        if (factories.size() == 1) return query.apply(factories.get(0));
+
+        List<CompletableFuture<List<T>>> futures = factories.stream()
+                .map(factory -> CompletableFuture.supplyAsync(() -> query.apply(factory), gatherExecutor))
+                .toList();
+        List<T> rows = new ArrayList<>();
+        try {
+            futures.forEach(future -> rows.addAll(future.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return rows;
+    }
+
+    // Every shard returns its first rows in the given order, the merge keeps the first limit of all of them.
+    // Keyset pages stay correct, a row in the global first page is always in its own shard's first page
+    public <T> List<T> gather(List<EntityManagerFactory> factories, Function<EntityManagerFactory, List<T>> query, Comparator<? super T> order, int limit) {
+        List<T> rows = gather(factories, query);
+        if (factories.size() == 1) return rows;
+
+        return rows.stream().sorted(order).limit(limit).toList();
+    }
+
+    private static ThreadFactory gatherThreads() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "shard-gather-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
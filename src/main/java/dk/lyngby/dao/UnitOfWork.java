@@ -0,0 +1,100 @@
+package dk.lyngby.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.NoArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// One EntityManager per factory for the whole request, so a request checks out one connection and loads each entity once
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork.Scope> currentScope = new ThreadLocal<>();
+
+    // Bound in the before handler, write requests read from the primary so validation and write see the same rows
+    public static Scope begin(boolean isWrite) {
+        Scope scope = new Scope(isWrite);
+        currentScope.set(scope);
+        return scope;
+    }
+
+    public static void end() {
+        Scope scope = currentScope.get();
+        currentScope.remove();
+        end(scope);
+    }
+
+    // Called in the after handler, an unfinished transaction means the handler failed half way and is rolled back.
+    // An async handler ends on a db executor thread, so the after handler ends the scope it was given rather than the thread's
+    public static void end(Scope scope) {
+        if (currentScope.get() == scope) currentScope.remove();
+        if (scope == null || scope.ended) return;
+
+        scope.ended = true;
+        for (EntityManager em : scope.entityManagers.values()) {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    public static Scope current() {
+        return currentScope.get();
+    }
+
+    // Hands the request's scope to the thread that runs its queries, bind(null) leaves the thread without one
+    public static void bind(Scope scope) {
+        if (scope == null) currentScope.remove();
+        else currentScope.set(scope);
+    }
+
+    public static boolean isWrite() {
+        Scope scope = currentScope.get();
+        return scope != null && scope.isWrite;
+    }
+
+    // The request's EntityManager for the factory, outside a request the caller gets a fresh one it owns
+    public static EntityManager entityManager(EntityManagerFactory emf) {
+        Scope scope = currentScope.get();
+        if (scope == null || scope.ended) return emf.createEntityManager();
+
+        EntityManager em = scope.entityManagers.computeIfAbsent(emf, UnitOfWork::openSession);
+        return requestScoped(em);
+    }
+
+    // Holds the connection from the first statement until the request ends instead of one checkout per transaction
+    private static EntityManager openSession(EntityManagerFactory emf) {
+        return emf.unwrap(SessionFactory.class)
+                .withOptions()
+                .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_HOLD)
+                .openSession();
+    }
+
+    // The daos close their EntityManager with try-with-resources, for the request's one that close is left to end()
+    private static EntityManager requestScoped(EntityManager em) {
+        return (EntityManager) Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(), new Class<?>[]{Session.class}, (proxy, method, args) -> {
+            if (method.getName().equals("close") && method.getParameterCount() == 0) return null;
+            try {
+                return method.invoke(em, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    public static final class Scope {
+        private final boolean isWrite;
+        private volatile boolean ended;
+        private final Map<EntityManagerFactory, EntityManager> entityManagers = new IdentityHashMap<>(2);
+
+        private Scope(boolean isWrite) {
+            this.isWrite = isWrite;
+        }
+    }
+}
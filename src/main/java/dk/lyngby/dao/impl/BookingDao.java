@@ -0,0 +1,112 @@
+package dk.lyngby.dao.impl;
+
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.exception.ApiException;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.index.RoomReservations;
+import dk.lyngby.model.Booking;
+import dk.lyngby.model.Room;
+import dk.lyngby.model.User;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import lombok.NoArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class BookingDao {
+
+    private static BookingDao instance;
+    private static ShardRouter shards;
+
+    public static BookingDao getInstance(EntityManagerFactory _emf) {
+        return getInstance(_emf, _emf);
+    }
+
+    // Reads go to the replica factory unless the client has just written, writes always go to the primary
+    public static BookingDao getInstance(EntityManagerFactory _emf, EntityManagerFactory _replicaEmf) {
+        return getInstance(ShardRouter.of(_emf, _replicaEmf));
+    }
+
+    // A booking lives in its room's shard, the user it references stays in the primary database
+    public static BookingDao getInstance(ShardRouter _shards) {
+        if (instance == null) {
+            shards = _shards;
+            instance = new BookingDao();
+        }
+        return instance;
+    }
+
+    private static EntityManagerFactory emf(Integer id) {
+        return shards.primary(shards.shardOf(id));
+    }
+
+    private static EntityManagerFactory readEmf(Integer id) {
+        return shards.forRead(shards.shardOf(id));
+    }
+
+    // The nights are claimed in memory before the insert, so two racing requests of this process never both get to the database.
+    // The reservations only know this process, so the insert also locks the room row and checks the stored stays,
+    // which holds across every node
+    public Booking create(Integer roomId, String username, Booking booking) throws ApiException {
+        RoomReservations reservations = RoomReservations.getInstance();
+        if (!reservations.reserve(roomId, booking.getCheckIn(), booking.getCheckOut())) {
+            throw new ApiException(409, "Room " + roomId + " is already booked between " + booking.getCheckIn() + " and " + booking.getCheckOut());
+        }
+
+        try (var em = UnitOfWork.entityManager(emf(roomId))) {
+            em.getTransaction().begin();
+            Room room = em.find(Room.class, roomId, LockModeType.PESSIMISTIC_WRITE);
+            Long overlapping = em.createQuery("SELECT count(b) FROM Booking b WHERE b.room.roomId = :roomId AND b.checkIn < :checkOut AND b.checkOut > :checkIn", Long.class)
+                    .setParameter("roomId", roomId)
+                    .setParameter("checkIn", booking.getCheckIn())
+                    .setParameter("checkOut", booking.getCheckOut())
+                    .getSingleResult();
+            if (overlapping > 0) {
+                em.getTransaction().rollback();
+                throw new ApiException(409, "Room " + roomId + " is already booked between " + booking.getCheckIn() + " and " + booking.getCheckOut());
+            }
+            booking.setRoom(room);
+            booking.setUser(em.getReference(User.class, username));
+            em.persist(booking);
+            em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            OccupancyCalendar.getInstance().book(roomId, booking.getCheckIn(), booking.getCheckOut());
+            return booking;
+        } catch (RuntimeException | ApiException e) {
+            // the stay was never stored, the nights are free again
+            reservations.release(roomId, booking.getCheckIn(), booking.getCheckOut());
+            throw e;
+        }
+    }
+
+    // Stays of the room that have not ended yet, in the order they start
+    public List<BookingDto> readAll(Integer roomId) {
+        try (var em = UnitOfWork.entityManager(readEmf(roomId))) {
+            return em.createQuery("SELECT new dk.lyngby.dto.BookingDto(b.bookingId, b.room.roomId, b.user.username, b.checkIn, b.checkOut) FROM Booking b WHERE b.room.roomId = :roomId AND b.checkOut > :today ORDER BY b.checkIn", BookingDto.class)
+                    .setParameter("roomId", roomId)
+                    .setParameter("today", LocalDate.now())
+                    .getResultList();
+        }
+    }
+
+    // Streams every stay that has not ended yet, used to build the room reservations at startup.
+    // Always the primaries, a stay missing on a lagging replica could be booked twice
+    public void readAllCurrent(Consumer<BookingDto> consumer) {
+        for (EntityManagerFactory emf : shards.primaries()) {
+            try (var em = UnitOfWork.entityManager(emf)) {
+                em.createQuery("SELECT new dk.lyngby.dto.BookingDto(b.bookingId, b.room.roomId, b.user.username, b.checkIn, b.checkOut) FROM Booking b WHERE b.checkOut > :today", BookingDto.class)
+                        .setParameter("today", LocalDate.now())
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, 1000)
+                        .getResultStream()
+                        .forEach(consumer);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package dk.lyngby.dao.impl;
+
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.model.ChangeEvent;
+import dk.lyngby.model.ChangePosition;
+import dk.lyngby.model.ShardedSequenceGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.NoArgsConstructor;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Reads the outbox back for streams that reconnect. The rows themselves are written by the hotel and room daos in their own transactions.
+// A stream stays open for hours, so these queries use their own entity manager instead of the request's unit of work
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class ChangeEventDao {
+
+    // Ids and creation times are handed out before commit, a transaction that started earlier can commit later. The position
+    // is the commit order within a shard, the shards are interleaved by it, which keeps each shard's events in order
+    private static final Comparator<ChangeEventDto> ORDER = Comparator.comparing(ChangeEventDto::position).thenComparing(ChangeEventDto::shard);
+
+    private static ChangeEventDao instance;
+    private static ShardRouter shards;
+    // the events of each open transaction that still need their position
+    private static final Map<SessionImplementor, List<ChangeEvent>> uncommitted = new ConcurrentHashMap<>();
+
+    public static ChangeEventDao getInstance(EntityManagerFactory _emf) {
+        return getInstance(ShardRouter.of(_emf, _emf));
+    }
+
+    // Always the primaries, a replica that lags would skip events
+    public static ChangeEventDao getInstance(ShardRouter _shards) {
+        if (instance == null) {
+            shards = _shards;
+            instance = new ChangeEventDao();
+        }
+        return instance;
+    }
+
+    // Written next to the change in the caller's transaction, published by the caller once that has committed.
+    // The event is inserted with its place in the transaction as a negative position, the real one is set at commit, so its
+    // ChangeEventDto is made after the commit
+    public static ChangeEvent append(EntityManager em, ChangeEvent.EntityType entityType, Integer entityId, Integer hotelId, ChangeEvent.Operation operation, Integer version) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        List<ChangeEvent> events = uncommitted.computeIfAbsent(session, ChangeEventDao::onCommit);
+        ChangeEvent event = new ChangeEvent(entityType, entityId, hotelId, operation, version, shardOf(em.getEntityManagerFactory()), -(events.size() + 1L));
+        em.persist(event);
+        events.add(event);
+        return event;
+    }
+
+    private static List<ChangeEvent> onCommit(SessionImplementor session) {
+        List<ChangeEvent> events = new ArrayList<>();
+        session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) s -> assignPositions(s, events));
+        session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> uncommitted.remove(session));
+        return events;
+    }
+
+    // Runs after the last flush, right before the commit. The shard's position row stays locked from here until the commit,
+    // so the positions are handed out in commit order and without gaps, while the rest of the transaction runs alongside others
+    private static void assignPositions(SessionImplementor session, List<ChangeEvent> events) {
+        uncommitted.remove(session);
+        if (events.isEmpty()) return;
+        session.createMutationQuery("UPDATE ChangePosition p SET p.position = p.position + :count WHERE p.id = :id")
+                .setParameter("count", (long) events.size())
+                .setParameter("id", ChangePosition.ID)
+                .executeUpdate();
+        long before = session.createQuery("SELECT p.position FROM ChangePosition p WHERE p.id = :id", Long.class)
+                .setParameter("id", ChangePosition.ID)
+                .getSingleResult() - events.size();
+        // the other transactions' events are not committed and not seen here
+        session.createMutationQuery("UPDATE ChangeEvent e SET e.position = :before - e.position WHERE e.position < 0")
+                .setParameter("before", before)
+                .executeUpdate();
+        for (ChangeEvent event : events) {
+            event.setPosition(before - event.getPosition());
+            ChangeFeed.getInstance().allocated(event.getShard(), event.getPosition());
+        }
+    }
+
+    // The position of every shard's last committed event, where a new stream starts
+    public long[] readPositions() {
+        return shards.primaries().stream().mapToLong(emf -> {
+            try (var em = emf.createEntityManager()) {
+                return readPosition(em);
+            }
+        }).toArray();
+    }
+
+    // The events after the given position of every shard, in commit order within each shard. Null when some of them are no longer
+    // in the outbox or the positions are not this outbox's, and limit + 1 events when there are more than limit, either way the
+    // client has to start over
+    public List<ChangeEventDto> readAfter(long[] positions, int limit) {
+        List<EntityManagerFactory> primaries = shards.primaries();
+        if (positions.length != primaries.size()) return null;
+
+        AtomicBoolean gone = new AtomicBoolean();
+        List<ChangeEventDto> events = shards.gather(primaries, emf -> {
+            long after = positions[primaries.indexOf(emf)];
+            try (var em = emf.createEntityManager()) {
+                // every position up to the last one has committed, the ones after it come live
+                long last = readPosition(em);
+                List<ChangeEventDto> shardEvents = em.createQuery("SELECT e FROM ChangeEvent e WHERE e.position > :position AND e.position <= :last ORDER BY e.position", ChangeEvent.class)
+                        .setParameter("position", after)
+                        .setParameter("last", last)
+                        .setMaxResults(limit + 1)
+                        .getResultStream()
+                        .map(ChangeEventDto::new)
+                        .toList();
+                // the positions have no gaps, so the next one is missing when it was deleted by the retention
+                boolean missing = after < last && (shardEvents.isEmpty() || shardEvents.get(0).position() != after + 1);
+                if (after > last || missing) gone.set(true);
+                return shardEvents;
+            }
+        }, ORDER, limit + 1);
+        return gone.get() ? null : events;
+    }
+
+    private static long readPosition(EntityManager em) {
+        ChangePosition last = em.find(ChangePosition.class, ChangePosition.ID);
+        return last != null ? last.getPosition() : 0;
+    }
+
+    private static int shardOf(EntityManagerFactory emf) {
+        Object shard = emf.getProperties().get(ShardedSequenceGenerator.SHARD_INDEX);
+        return shard != null ? Integer.parseInt(String.valueOf(shard)) : 0;
+    }
+
+    public int deleteBefore(Instant before) {
+        int deleted = 0;
+        for (EntityManagerFactory emf : shards.primaries()) {
+            try (var em = emf.createEntityManager()) {
+                em.getTransaction().begin();
+                deleted += em.createQuery("DELETE FROM ChangeEvent e WHERE e.createdAt < :before")
+                        .setParameter("before", before)
+                        .executeUpdate();
+                em.getTransaction().commit();
+            }
+        }
+        return deleted;
+    }
+}
@@ -1,28 +1,73 @@
 package dk.lyngby.dao.impl;
 
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelStatsDto;
+import dk.lyngby.dto.RoomTypeStatsDto;
+import dk.lyngby.index.HotelGeoIndex;
+import dk.lyngby.index.HotelSearchIndex;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.index.RoomReservations;
+import dk.lyngby.model.ChangeEvent;
 import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import dk.lyngby.pricing.QuoteEngine;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.UnitOfWork;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Tuple;
 import lombok.NoArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
 public class HotelDao implements dk.lyngby.dao.IDao<Hotel, Integer> {
 
     private static HotelDao instance;
-    private static EntityManagerFactory emf;
+    private static ShardRouter shards;
 
     public static HotelDao getInstance(EntityManagerFactory _emf) {
+        return getInstance(_emf, _emf);
+    }
+
+    // Reads go to the replica factory unless the client has just written, writes always go to the primary
+    public static HotelDao getInstance(EntityManagerFactory _emf, EntityManagerFactory _replicaEmf) {
+        return getInstance(ShardRouter.of(_emf, _replicaEmf));
+    }
+
+    // A hotel is read and written in the shard its id points to, lists are gathered from every shard
+    public static HotelDao getInstance(ShardRouter _shards) {
         if (instance == null) {
-            emf = _emf;
+            shards = _shards;
             instance = new HotelDao();
         }
         return instance;
     }
 
+    private static EntityManagerFactory emf(Integer hotelId) {
+        return shards.primary(shards.shardOf(hotelId));
+    }
+
+    private static EntityManagerFactory readEmf(Integer hotelId) {
+        return shards.forRead(shards.shardOf(hotelId));
+    }
+
     @Override
     public Hotel read(Integer integer) {
-       try (var em = emf.createEntityManager())
+       try (var em = UnitOfWork.entityManager(readEmf(integer)))
        {
            return em.find(Hotel.class, integer);
        }
@@ -30,51 +75,240 @@ public class HotelDao implements dk.lyngby.dao.IDao<Hotel, Integer> {
 
     @Override
     public List<Hotel> readAll() {
-        try (var em = emf.createEntityManager())
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf))
+            {
+                var query = em.createQuery("SELECT h FROM Hotel h", Hotel.class)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true);
+                return query.getResultList();
+            }
+        }, Comparator.comparing(Hotel::getId), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Hotel> readPage(Integer afterId, int limit) {
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf))
+            {
+                var query = em.createQuery("SELECT h FROM Hotel h WHERE h.id > :afterId ORDER BY h.id", Hotel.class)
+                        .setParameter("afterId", afterId != null ? afterId : 0)
+                        .setMaxResults(limit)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true);
+                return query.getResultList();
+            }
+        }, Comparator.comparing(Hotel::getId), limit);
+    }
+
+    // Read side: selects straight into dtos, nothing ends up in the persistence context
+    public HotelDto readDto(Integer integer) {
+        try (var em = UnitOfWork.entityManager(readEmf(integer)))
+        {
+            var hotels = em.createQuery("SELECT new dk.lyngby.dto.HotelDto(h.id, h.hotelName, h.hotelAddress, h.latitude, h.longitude, h.version) FROM Hotel h WHERE h.id = :id", HotelDto.class)
+                    .setParameter("id", integer)
+                    .getResultList();
+            addRoomNumbers(em, hotels);
+            return hotels.isEmpty() ? null : hotels.get(0);
+        }
+    }
+
+    public List<HotelDto> readDtoPage(Integer afterId, int limit) {
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf))
+            {
+                var hotels = em.createQuery("SELECT new dk.lyngby.dto.HotelDto(h.id, h.hotelName, h.hotelAddress, h.latitude, h.longitude) FROM Hotel h WHERE h.id > :afterId ORDER BY h.id", HotelDto.class)
+                        .setParameter("afterId", afterId != null ? afterId : 0)
+                        .setMaxResults(limit)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .getResultList();
+                addRoomNumbers(em, hotels);
+                return hotels;
+            }
+        }, Comparator.comparing(HotelDto::getId), limit);
+    }
+
+    // Streams every hotel without its rooms, used to build the search and geo indexes. One shard after the other,
+    // the consumer is not thread safe
+    public void readAllDtos(Consumer<HotelDto> consumer) {
+        for (EntityManagerFactory emf : shards.forReadAll()) {
+            try (var em = UnitOfWork.entityManager(emf))
+            {
+                em.createQuery("SELECT new dk.lyngby.dto.HotelDto(h.id, h.hotelName, h.hotelAddress, h.latitude, h.longitude) FROM Hotel h", HotelDto.class)
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, 1000)
+                        .getResultStream()
+                        .forEach(consumer);
+            }
+        }
+    }
+
+    // Only the version column, enough to answer If-None-Match without loading the hotel.
+    // Not query cached, forced version increments from room changes do not invalidate the query cache
+    public Integer readVersion(Integer integer) {
+        try (var em = UnitOfWork.entityManager(readEmf(integer)))
         {
-            var query = em.createQuery("SELECT h FROM Hotel h", Hotel.class);
-            return query.getResultList();
+            var versions = em.createQuery("SELECT h.version FROM Hotel h WHERE h.id = :id", Integer.class)
+                    .setParameter("id", integer)
+                    .getResultList();
+            return versions.isEmpty() ? null : versions.get(0);
         }
     }
 
+    // One query fetches the room numbers of every hotel in the list
+    private void addRoomNumbers(EntityManager em, List<HotelDto> hotels) {
+        if (hotels.isEmpty()) return;
+
+        Map<Integer, HotelDto> hotelsById = hotels.stream().collect(Collectors.toMap(HotelDto::getId, Function.identity()));
+        em.createQuery("SELECT r.hotel.id AS hotelId, r.roomNumber AS roomNumber FROM Room r WHERE r.hotel.id IN :ids", Tuple.class)
+                .setParameter("ids", hotelsById.keySet())
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .getResultList()
+                .forEach(row -> hotelsById.get(row.get("hotelId", Integer.class)).getRooms().add(row.get("roomNumber", Integer.class)));
+    }
+
+    // Room counts and prices per room type come out of one grouped query, no room rows leave the database
+    public HotelStatsDto readStats(Integer integer) {
+        try (var em = UnitOfWork.entityManager(readEmf(integer)))
+        {
+            return readStats(em, List.of(integer)).get(0);
+        }
+    }
+
+    public List<HotelStatsDto> readStatsPage(Integer afterId, int limit) {
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf))
+            {
+                var hotelIds = em.createQuery("SELECT h.id FROM Hotel h WHERE h.id > :afterId ORDER BY h.id", Integer.class)
+                        .setParameter("afterId", afterId != null ? afterId : 0)
+                        .setMaxResults(limit)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .getResultList();
+                return hotelIds.isEmpty() ? List.<HotelStatsDto>of() : readStats(em, hotelIds);
+            }
+        }, Comparator.comparing(HotelStatsDto::hotelId), limit);
+    }
+
+    private List<HotelStatsDto> readStats(EntityManager em, List<Integer> hotelIds) {
+        Map<Integer, List<Tuple>> rowsByHotel = em.createQuery("""
+                        SELECT r.hotel.id AS hotelId, r.roomType AS roomType, COUNT(r) AS roomCount,
+                               MIN(r.roomPrice) AS minPrice, MAX(r.roomPrice) AS maxPrice, SUM(r.roomPrice) AS totalPrice
+                        FROM Room r WHERE r.hotel.id IN :ids
+                        GROUP BY r.hotel.id, r.roomType
+                        ORDER BY r.roomType""", Tuple.class)
+                .setParameter("ids", hotelIds)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .getResultList()
+                .stream()
+                .collect(Collectors.groupingBy(row -> row.get("hotelId", Integer.class)));
+
+        return hotelIds.stream()
+                .map(id -> toHotelStats(id, rowsByHotel.getOrDefault(id, List.of())))
+                .toList();
+    }
+
+    // The hotel totals are added up from the per type rows, the average is the exact total divided by the count
+    private static HotelStatsDto toHotelStats(Integer hotelId, List<Tuple> rows) {
+        long roomCount = 0;
+        BigDecimal minPrice = null;
+        BigDecimal maxPrice = null;
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        List<RoomTypeStatsDto> roomTypes = new ArrayList<>();
+
+        for (Tuple row : rows) {
+            long count = row.get("roomCount", Long.class);
+            BigDecimal min = row.get("minPrice", BigDecimal.class);
+            BigDecimal max = row.get("maxPrice", BigDecimal.class);
+            BigDecimal total = row.get("totalPrice", BigDecimal.class);
+            roomTypes.add(new RoomTypeStatsDto(row.get("roomType", Room.RoomType.class), count, min, max, average(total, count)));
+
+            roomCount += count;
+            minPrice = minPrice == null || min.compareTo(minPrice) < 0 ? min : minPrice;
+            maxPrice = maxPrice == null || max.compareTo(maxPrice) > 0 ? max : maxPrice;
+            totalPrice = totalPrice.add(total);
+        }
+
+        return new HotelStatsDto(hotelId, roomCount, minPrice, maxPrice, roomCount > 0 ? average(totalPrice, roomCount) : null, roomTypes);
+    }
+
+    private static BigDecimal average(BigDecimal total, long count) {
+        return total.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
     @Override
     public Hotel create(Hotel hotel) {
-        try (var em = emf.createEntityManager())
+        try (var em = UnitOfWork.entityManager(shards.primary(shards.shardOfHotelName(hotel.getHotelName()))))
         {
             em.getTransaction().begin();
             em.persist(hotel);
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.HOTEL, hotel.getId(), hotel.getId(), ChangeEvent.Operation.CREATED, hotel.getVersion());
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            HotelSearchIndex.getInstance().put(hotel.getId(), hotel.getHotelName(), hotel.getHotelAddress());
+            HotelGeoIndex.getInstance().put(hotel.getId(), hotel.getHotelName(), hotel.getHotelAddress(), hotel.getLatitude(), hotel.getLongitude());
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
             return hotel;
         }
     }
 
     @Override
     public Hotel update(Integer integer, Hotel hotel) {
-        try(var em = emf.createEntityManager()) {
+        return update(integer, hotel, null);
+    }
+
+    // With an expected version the update only goes through if nobody has changed the hotel since the client read it
+    public Hotel update(Integer integer, Hotel hotel, Integer expectedVersion) {
+        try(var em = UnitOfWork.entityManager(emf(integer))) {
             em.getTransaction().begin();
 
             var h = em.find(Hotel.class, integer);
+            if (expectedVersion != null && !expectedVersion.equals(h.getVersion())) {
+                em.getTransaction().rollback();
+                throw new OptimisticLockException("Hotel " + integer + " is at version " + h.getVersion());
+            }
             h.setHotelAddress(hotel.getHotelAddress());
+            h.setLatitude(hotel.getLatitude());
+            h.setLongitude(hotel.getLongitude());
 
             Hotel merge = em.merge(h);
+            em.flush(); // the event carries the new version
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.HOTEL, integer, integer, ChangeEvent.Operation.UPDATED, merge.getVersion());
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            HotelSearchIndex.getInstance().put(merge.getId(), merge.getHotelName(), merge.getHotelAddress());
+            HotelGeoIndex.getInstance().put(merge.getId(), merge.getHotelName(), merge.getHotelAddress(), merge.getLatitude(), merge.getLongitude());
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
             return merge;
         }
     }
 
     @Override
     public void delete(Integer integer) {
-        try(var em = emf.createEntityManager()) {
+        try(var em = UnitOfWork.entityManager(emf(integer))) {
             em.getTransaction().begin();
             var hotel = em.find(Hotel.class, integer);
+            List<Integer> roomIds = hotel.getRooms().stream().map(Room::getRoomId).toList();
+            // the bookings of its rooms and its rate rules reference the hotel, they go with it
+            em.createQuery("DELETE FROM Booking b WHERE b.room.roomId IN (SELECT r.roomId FROM Room r WHERE r.hotel.id = :hotelId)")
+                    .setParameter("hotelId", integer)
+                    .executeUpdate();
+            em.createQuery("DELETE FROM RateRule r WHERE r.hotel.id = :hotelId")
+                    .setParameter("hotelId", integer)
+                    .executeUpdate();
             em.remove(hotel);
+            // one event for the hotel and its rooms, they go with it
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.HOTEL, integer, integer, ChangeEvent.Operation.DELETED, null);
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            HotelSearchIndex.getInstance().remove(integer);
+            HotelGeoIndex.getInstance().remove(integer);
+            OccupancyCalendar.getInstance().removeHotel(integer);
+            roomIds.forEach(RoomReservations.getInstance()::removeRoom);
+            QuoteEngine.getInstance().invalidate(integer);
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
         }
     }
 
     @Override
     public boolean validatePrimaryKey(Integer integer) {
-        try(var em = emf.createEntityManager()) {
+        try(var em = UnitOfWork.entityManager(readEmf(integer))) {
             var person = em.find(Hotel.class, integer);
             return person != null;
         }
@@ -0,0 +1,174 @@
+package dk.lyngby.dao.impl;
+
+import dk.lyngby.dao.IAsyncDao;
+import dk.lyngby.dao.R2dbcQueries;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import lombok.NoArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Reads hotels over the non-blocking R2DBC driver, a query holds no thread while it waits on the database.
+// Writes go to the Hibernate dao on the db executor, so the second-level cache is evicted and the indexes are kept in step
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class R2dbcHotelDao implements IAsyncDao<Hotel, Integer> {
+
+    private static final String SELECT_HOTEL = "SELECT hotel_id, version, hotel_name, hotel_address, hotel_type, latitude, longitude FROM hotel";
+    private static final String SELECT_ROOM = "SELECT room_id, version, room_number, price, room_type, hotel_id FROM room";
+
+    private static R2dbcHotelDao instance;
+    private static ConnectionFactory connectionFactory;
+    private static ConnectionFactory replicaConnectionFactory;
+    private static IAsyncDao<Hotel, Integer> writeDao;
+
+    // Reads go to the replica pool unless the client has just written, writes always go to the Hibernate dao
+    public static R2dbcHotelDao getInstance(ConnectionFactory _connectionFactory, ConnectionFactory _replicaConnectionFactory, IAsyncDao<Hotel, Integer> _writeDao) {
+        if (instance == null) {
+            connectionFactory = _connectionFactory;
+            replicaConnectionFactory = _replicaConnectionFactory;
+            writeDao = _writeDao;
+            instance = new R2dbcHotelDao();
+        }
+        return instance;
+    }
+
+    // Decided on the calling thread, where the request's unit of work and client are bound
+    private static ConnectionFactory readConnectionFactory() {
+        if (UnitOfWork.isWrite()) return connectionFactory;
+        return ReadYourWrites.forRead(connectionFactory, replicaConnectionFactory);
+    }
+
+    @Override
+    public CompletableFuture<Hotel> read(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_HOTEL + " WHERE hotel_id = $1", R2dbcHotelDao::toHotel, id)
+                        .collectList()
+                        .flatMap(hotels -> addRooms(connection, hotels, SELECT_ROOM + " WHERE hotel_id = $1", id))
+                        .flatMap(hotels -> Mono.justOrEmpty(hotels.isEmpty() ? null : hotels.get(0))));
+    }
+
+    @Override
+    public CompletableFuture<List<Hotel>> readAll() {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_HOTEL, R2dbcHotelDao::toHotel)
+                        .collectList()
+                        .flatMap(hotels -> addRooms(connection, hotels, SELECT_ROOM)));
+    }
+
+    @Override
+    public CompletableFuture<List<Hotel>> readPage(Integer afterId, int limit) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_HOTEL + " WHERE hotel_id > $1 ORDER BY hotel_id LIMIT $2", R2dbcHotelDao::toHotel, afterId != null ? afterId : 0, limit)
+                        .collectList()
+                        .flatMap(hotels -> addRooms(connection, hotels, SELECT_ROOM + " WHERE hotel_id = ANY($1)", (Object) idsOf(hotels, Hotel::getId))));
+    }
+
+    // The version comes with the hotel, a conditional read is answered from the same query
+    public CompletableFuture<HotelDto> readDto(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_HOTEL + " WHERE hotel_id = $1", R2dbcHotelDao::toHotelDto, id)
+                        .collectList()
+                        .flatMap(hotels -> addRoomNumbers(connection, hotels))
+                        .flatMap(hotels -> Mono.justOrEmpty(hotels.isEmpty() ? null : hotels.get(0))));
+    }
+
+    public CompletableFuture<List<HotelDto>> readDtoPage(Integer afterId, int limit) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_HOTEL + " WHERE hotel_id > $1 ORDER BY hotel_id LIMIT $2", R2dbcHotelDao::toHotelDto, afterId != null ? afterId : 0, limit)
+                        .collectList()
+                        .flatMap(hotels -> addRoomNumbers(connection, hotels)));
+    }
+
+    @Override
+    public CompletableFuture<Hotel> create(Hotel hotel) {
+        return writeDao.create(hotel);
+    }
+
+    @Override
+    public CompletableFuture<Hotel> update(Integer id, Hotel hotel) {
+        return writeDao.update(id, hotel);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(Integer id) {
+        return writeDao.delete(id);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> validatePrimaryKey(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, "SELECT 1 FROM hotel WHERE hotel_id = $1", row -> true, id).hasElements());
+    }
+
+    // One query fetches the rooms of every hotel in the list
+    private static Mono<List<Hotel>> addRooms(Connection connection, List<Hotel> hotels, String sql, Object... parameters) {
+        if (hotels.isEmpty()) return Mono.just(hotels);
+
+        Map<Integer, Hotel> hotelsById = hotels.stream().collect(Collectors.toMap(Hotel::getId, Function.identity()));
+        return R2dbcQueries.select(connection, sql, row -> {
+                    // the room gets its hotel before it goes in the set, its hash code depends on it
+                    Hotel hotel = hotelsById.get(row.get("hotel_id", Integer.class));
+                    if (hotel != null) hotel.getRooms().add(toRoom(row, hotel));
+                    return true;
+                }, parameters)
+                .then(Mono.just(hotels));
+    }
+
+    private static Mono<List<HotelDto>> addRoomNumbers(Connection connection, List<HotelDto> hotels) {
+        if (hotels.isEmpty()) return Mono.just(hotels);
+
+        Map<Integer, HotelDto> hotelsById = hotels.stream().collect(Collectors.toMap(HotelDto::getId, Function.identity()));
+        return R2dbcQueries.select(connection, "SELECT hotel_id, room_number FROM room WHERE hotel_id = ANY($1)", row -> {
+                    hotelsById.get(row.get("hotel_id", Integer.class)).getRooms().add(row.get("room_number", Integer.class));
+                    return true;
+                }, (Object) idsOf(hotels, HotelDto::getId))
+                .then(Mono.just(hotels));
+    }
+
+    private static <T> Integer[] idsOf(List<T> rows, Function<T, Integer> idOf) {
+        return rows.stream().map(idOf).toArray(Integer[]::new);
+    }
+
+    private static Hotel toHotel(Row row) {
+        return new Hotel(
+                row.get("hotel_id", Integer.class),
+                row.get("version", Integer.class),
+                row.get("hotel_name", String.class),
+                row.get("hotel_address", String.class),
+                Hotel.HotelType.valueOf(row.get("hotel_type", String.class)),
+                row.get("latitude", Double.class),
+                row.get("longitude", Double.class));
+    }
+
+    private static HotelDto toHotelDto(Row row) {
+        return new HotelDto(
+                row.get("hotel_id", Integer.class),
+                row.get("hotel_name", String.class),
+                row.get("hotel_address", String.class),
+                row.get("latitude", Double.class),
+                row.get("longitude", Double.class),
+                row.get("version", Integer.class));
+    }
+
+    private static Room toRoom(Row row, Hotel hotel) {
+        return new Room(
+                row.get("room_id", Integer.class),
+                row.get("version", Integer.class),
+                row.get("room_number", Integer.class),
+                row.get("price", BigDecimal.class),
+                Room.RoomType.valueOf(row.get("room_type", String.class)),
+                hotel);
+    }
+}
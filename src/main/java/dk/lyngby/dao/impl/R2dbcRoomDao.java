@@ -0,0 +1,131 @@
+package dk.lyngby.dao.impl;
+
+import dk.lyngby.dao.IAsyncDao;
+import dk.lyngby.dao.R2dbcQueries;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dto.RoomDto;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Reads rooms over the non-blocking R2DBC driver, a query holds no thread while it waits on the database.
+// Journaled room prices are laid over the rows like in RoomDao. Writes go to the Hibernate dao on the db executor, so the second-level cache is evicted and the occupancy calendar is kept in step
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class R2dbcRoomDao implements IAsyncDao<Room, Integer> {
+
+    // the hotel comes along in the same row, without its rooms
+    private static final String SELECT_ROOM = """
+            SELECT r.room_id, r.version, r.room_number, r.price, r.room_type,
+                   h.hotel_id, h.version AS hotel_version, h.hotel_name, h.hotel_address, h.hotel_type, h.latitude, h.longitude
+            FROM room r JOIN hotel h ON h.hotel_id = r.hotel_id""";
+
+    private static R2dbcRoomDao instance;
+    private static ConnectionFactory connectionFactory;
+    private static ConnectionFactory replicaConnectionFactory;
+    private static IAsyncDao<Room, Integer> writeDao;
+
+    // Reads go to the replica pool unless the client has just written, writes always go to the Hibernate dao
+    public static R2dbcRoomDao getInstance(ConnectionFactory _connectionFactory, ConnectionFactory _replicaConnectionFactory, IAsyncDao<Room, Integer> _writeDao) {
+        if (instance == null) {
+            connectionFactory = _connectionFactory;
+            replicaConnectionFactory = _replicaConnectionFactory;
+            writeDao = _writeDao;
+            instance = new R2dbcRoomDao();
+        }
+        return instance;
+    }
+
+    // Decided on the calling thread, where the request's unit of work and client are bound
+    private static ConnectionFactory readConnectionFactory() {
+        if (UnitOfWork.isWrite()) return connectionFactory;
+        return ReadYourWrites.forRead(connectionFactory, replicaConnectionFactory);
+    }
+
+    @Override
+    public CompletableFuture<Room> read(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_ROOM + " WHERE r.room_id = $1", row -> toRoom(row, new HashMap<>()), id).next())
+                .thenApply(RoomDao::withPendingPrice);
+    }
+
+    @Override
+    public CompletableFuture<List<Room>> readAll() {
+        Map<Integer, Hotel> hotels = new HashMap<>();
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_ROOM, row -> RoomDao.withPendingPrice(toRoom(row, hotels))).collectList());
+    }
+
+    @Override
+    public CompletableFuture<List<Room>> readPage(Integer afterId, int limit) {
+        Map<Integer, Hotel> hotels = new HashMap<>();
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, SELECT_ROOM + " WHERE r.room_id > $1 ORDER BY r.room_id LIMIT $2", row -> RoomDao.withPendingPrice(toRoom(row, hotels)), afterId != null ? afterId : 0, limit)
+                        .collectList());
+    }
+
+    // The version comes with the room, a conditional read is answered from the same query
+    public CompletableFuture<RoomDto> readDto(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, "SELECT room_id, room_number, hotel_id, price, version FROM room WHERE room_id = $1", R2dbcRoomDao::toRoomDto, id).next())
+                .thenApply(RoomDao::withPendingPrice);
+    }
+
+    @Override
+    public CompletableFuture<Room> create(Room room) {
+        return writeDao.create(room);
+    }
+
+    @Override
+    public CompletableFuture<Room> update(Integer id, Room room) {
+        return writeDao.update(id, room);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(Integer id) {
+        return writeDao.delete(id);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> validatePrimaryKey(Integer id) {
+        return R2dbcQueries.withConnection(readConnectionFactory(), connection ->
+                R2dbcQueries.select(connection, "SELECT 1 FROM room WHERE room_id = $1", row -> true, id).hasElements());
+    }
+
+    // Rooms of the same hotel share one hotel instance, rows are mapped one at a time so the map needs no lock
+    private static Room toRoom(Row row, Map<Integer, Hotel> hotels) {
+        Hotel hotel = hotels.computeIfAbsent(row.get("hotel_id", Integer.class), hotelId -> new Hotel(
+                hotelId,
+                row.get("hotel_version", Integer.class),
+                row.get("hotel_name", String.class),
+                row.get("hotel_address", String.class),
+                Hotel.HotelType.valueOf(row.get("hotel_type", String.class)),
+                row.get("latitude", Double.class),
+                row.get("longitude", Double.class)));
+
+        return new Room(
+                row.get("room_id", Integer.class),
+                row.get("version", Integer.class),
+                row.get("room_number", Integer.class),
+                row.get("price", BigDecimal.class),
+                Room.RoomType.valueOf(row.get("room_type", String.class)),
+                hotel);
+    }
+
+    private static RoomDto toRoomDto(Row row) {
+        return new RoomDto(
+                row.get("room_id", Integer.class),
+                row.get("room_number", Integer.class),
+                row.get("hotel_id", Integer.class),
+                row.get("price", BigDecimal.class),
+                row.get("version", Integer.class));
+    }
+}
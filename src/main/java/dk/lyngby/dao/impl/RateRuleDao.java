@@ -0,0 +1,105 @@
+package dk.lyngby.dao.impl;
+
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.RateRule;
+import dk.lyngby.pricing.QuoteEngine;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class RateRuleDao {
+
+    private static final String SELECT_DTO = "SELECT new dk.lyngby.dto.RateRuleDto(r.rateRuleId, r.hotel.id, r.roomType, r.validFrom, r.validTo, r.weekdays, r.minNights, r.multiplier) FROM RateRule r";
+
+    private static RateRuleDao instance;
+    private static ShardRouter shards;
+
+    public static RateRuleDao getInstance(EntityManagerFactory _emf) {
+        return getInstance(_emf, _emf);
+    }
+
+    // Reads go to the replica factory unless the client has just written, writes always go to the primary
+    public static RateRuleDao getInstance(EntityManagerFactory _emf, EntityManagerFactory _replicaEmf) {
+        return getInstance(ShardRouter.of(_emf, _replicaEmf));
+    }
+
+    // A rate rule lives in its hotel's shard
+    public static RateRuleDao getInstance(ShardRouter _shards) {
+        if (instance == null) {
+            shards = _shards;
+            instance = new RateRuleDao();
+        }
+        return instance;
+    }
+
+    private static EntityManagerFactory emf(Integer id) {
+        return shards.primary(shards.shardOf(id));
+    }
+
+    private static EntityManagerFactory readEmf(Integer id) {
+        return shards.forRead(shards.shardOf(id));
+    }
+
+    public RateRule create(Integer hotelId, RateRule rule) {
+        try (var em = UnitOfWork.entityManager(emf(hotelId))) {
+            em.getTransaction().begin();
+            rule.setHotel(em.getReference(Hotel.class, hotelId));
+            em.persist(rule);
+            em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            QuoteEngine.getInstance().invalidate(hotelId);
+            return rule;
+        }
+    }
+
+    public List<RateRuleDto> readAll(Integer hotelId) {
+        try (var em = UnitOfWork.entityManager(readEmf(hotelId))) {
+            return em.createQuery(SELECT_DTO + " WHERE r.hotel.id = :hotelId ORDER BY r.rateRuleId", RateRuleDto.class)
+                    .setParameter("hotelId", hotelId)
+                    .getResultList();
+        }
+    }
+
+    // The rules the quote engine compiles, always from the primaries so a lagging replica can not end up in a cached table.
+    // One query per shard the hotels live in
+    public List<RateRuleDto> readAll(Collection<Integer> hotelIds) {
+        Map<Integer, List<Integer>> hotelIdsByShard = hotelIds.stream().collect(Collectors.groupingBy(shards::shardOf));
+        List<RateRuleDto> rules = new ArrayList<>();
+        hotelIdsByShard.forEach((shard, shardHotelIds) -> {
+            try (var em = UnitOfWork.entityManager(shards.primary(shard))) {
+                rules.addAll(em.createQuery(SELECT_DTO + " WHERE r.hotel.id IN :hotelIds", RateRuleDto.class)
+                        .setParameter("hotelIds", shardHotelIds)
+                        .getResultList());
+            }
+        });
+        return rules;
+    }
+
+    // Returns the hotel of the deleted rule, null when there was no such rule
+    public Integer delete(Integer id) {
+        try (var em = UnitOfWork.entityManager(emf(id))) {
+            em.getTransaction().begin();
+            RateRule rule = em.find(RateRule.class, id);
+            if (rule == null) {
+                em.getTransaction().rollback();
+                return null;
+            }
+            Integer hotelId = rule.getHotel().getId();
+            em.remove(rule);
+            em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            QuoteEngine.getInstance().invalidate(hotelId);
+            return hotelId;
+        }
+    }
+}
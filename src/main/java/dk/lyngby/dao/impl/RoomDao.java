@@ -1,117 +1,458 @@
 package dk.lyngby.dao.impl;
 
 
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.dto.RoomDto;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.index.RoomReservations;
+import dk.lyngby.model.ChangeEvent;
 import dk.lyngby.model.Hotel;
 import dk.lyngby.model.Room;
+import dk.lyngby.dao.PriceWriteBehind;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.UnitOfWork;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.NoArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.jpa.HibernateHints;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
 public class RoomDao implements dk.lyngby.dao.IDao<Room, Integer> {
 
     private static RoomDao instance;
-    private static EntityManagerFactory emf;
+    private static ShardRouter shards;
+    private static PriceWriteBehind priceWriteBehind; // null unless rooms.price.write.behind is on or a price journal was left over
+    private static boolean priceWriteBehindEnabled;
 
     public static RoomDao getInstance(EntityManagerFactory _emf) {
+        return getInstance(_emf, _emf);
+    }
+
+    // Reads go to the replica factory unless the client has just written, writes always go to the primary
+    public static RoomDao getInstance(EntityManagerFactory _emf, EntityManagerFactory _replicaEmf) {
+        return getInstance(ShardRouter.of(_emf, _replicaEmf));
+    }
+
+    // A room lives in its hotel's shard, so a room id and a hotel id route the same way
+    public static RoomDao getInstance(ShardRouter _shards) {
         if (instance == null) {
-            emf = _emf;
+            shards = _shards;
             instance = new RoomDao();
+            priceWriteBehind = PriceWriteBehind.start(instance::updatePrices);
+            priceWriteBehindEnabled = priceWriteBehind != null && PriceWriteBehind.isEnabled();
         }
         return instance;
     }
 
-    public Hotel addRoomToHotel(Integer hotelId, Room room ) {
-        try (var em = emf.createEntityManager()) {
+    private static EntityManagerFactory emf(Integer id) {
+        return shards.primary(shards.shardOf(id));
+    }
+
+    private static EntityManagerFactory readEmf(Integer id) {
+        return shards.forRead(shards.shardOf(id));
+    }
+
+    // Inserts the room and bumps the hotel version, a taken room number fails on uk_room_hotel_id_room_number
+    public Room addRoomToHotel(Integer hotelId, Room room ) {
+        try (var em = UnitOfWork.entityManager(emf(hotelId))) {
             em.getTransaction().begin();
-            var hotel = em.find(Hotel.class, hotelId);
-            hotel.addRoom(room);
+            room.setHotel(lockHotel(em, hotelId));
             em.persist(room);
-            Hotel merge = em.merge(hotel);
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, room.getRoomId(), hotelId, ChangeEvent.Operation.CREATED, room.getVersion());
             em.getTransaction().commit();
-            return merge;
+            ReadYourWrites.recordWrite();
+            OccupancyCalendar.getInstance().putRoom(new RoomAvailabilityDto(room));
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
+            return room;
+        }
+    }
+
+    // The hotel's room list changes, so its version is bumped. The row stays locked until the commit, so requests that add
+    // or remove rooms of one hotel run in turn instead of failing each other. Read again under the lock, the request may
+    // have read the hotel before another one changed it
+    private static Hotel lockHotel(EntityManager em, Integer hotelId) {
+        // locking the entity would compare the version it was read with first
+        em.createQuery("SELECT h.id FROM Hotel h WHERE h.id = :hotelId", Integer.class)
+                .setParameter("hotelId", hotelId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getSingleResult();
+        Hotel hotel = em.find(Hotel.class, hotelId);
+        em.refresh(hotel);
+        em.lock(hotel, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+        return hotel;
+    }
+
+    // True when the insert failed because the hotel already has a room with that number
+    public static boolean isRoomNumberConflict(PersistenceException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                String constraintName = violation.getConstraintName();
+                return constraintName != null && constraintName.toLowerCase().contains(Room.ROOM_NUMBER_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    // Inserts all rooms in one transaction, hibernate sends them in jdbc batches of JDBC_BATCH_SIZE
+    public List<Room> addRoomsToHotel(Integer hotelId, List<Room> rooms) {
+        try (var em = UnitOfWork.entityManager(emf(hotelId))) {
+            em.getTransaction().begin();
+            var hotel = em.getReference(Hotel.class, hotelId);
+            List<ChangeEvent> events = new ArrayList<>(rooms.size());
+
+            for (int i = 0; i < rooms.size(); i++) {
+                Room room = rooms.get(i);
+                room.setHotel(hotel);
+                em.persist(room);
+                events.add(ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, room.getRoomId(), hotelId, ChangeEvent.Operation.CREATED, room.getVersion()));
+
+                if ((i + 1) % HibernateConfig.JDBC_BATCH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                    hotel = em.getReference(Hotel.class, hotelId);
+                }
+            }
+
+            em.flush();
+            lockHotel(em, hotelId);
+            em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            rooms.forEach(room -> OccupancyCalendar.getInstance().putRoom(new RoomAvailabilityDto(room)));
+            ChangeFeed.getInstance().publish(events.stream().map(ChangeEventDto::new).toList());
+            return rooms;
+        }
+    }
+
+    // Returns the room numbers of the hotel that are already taken, in one query
+    public Set<Integer> readTakenRoomNumbers(Integer hotelId, Collection<Integer> roomNumbers) {
+        try (var em = UnitOfWork.entityManager(emf(hotelId))) {
+            var query = em.createQuery("SELECT r.roomNumber FROM Room r WHERE r.hotel.id = :hotelId AND r.roomNumber IN :roomNumbers", Integer.class)
+                    .setParameter("hotelId", hotelId)
+                    .setParameter("roomNumbers", roomNumbers);
+            return new HashSet<>(query.getResultList());
         }
     }
 
     @Override
     public Room read(Integer integer) {
-        try (var em = emf.createEntityManager()) {
-            return em.find(Room.class, integer);
+        try (var em = UnitOfWork.entityManager(readEmf(integer))) {
+            return withPendingPrice(em.find(Room.class, integer));
         }
     }
 
     @Override
     public List<Room> readAll() {
-        try (var em = emf.createEntityManager()) {
-            var query = em.createQuery("SELECT r FROM Room r", Room.class);
-            return query.getResultList();
-        }
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf)) {
+                var query = em.createQuery("SELECT r FROM Room r", Room.class)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true);
+                return withPendingPrices(query.getResultList());
+            }
+        }, Comparator.comparing(Room::getRoomId), Integer.MAX_VALUE);
     }
 
     public List<Room> readAll(int hotelId) {
-        try (var em = emf.createEntityManager()) {
+        try (var em = UnitOfWork.entityManager(readEmf(hotelId))) {
             var query = em.createQuery("SELECT r FROM Room r WHERE r.hotel.id = :hotelId", Room.class)
-                    .setParameter("hotelId", hotelId);
-            return query.getResultList();
+                    .setParameter("hotelId", hotelId)
+                    .setHint(HibernateHints.HINT_CACHEABLE, true);
+            return withPendingPrices(query.getResultList());
+        }
+    }
+
+    @Override
+    public List<Room> readPage(Integer afterId, int limit) {
+        return shards.gather(shards.forReadAll(), emf -> {
+            try (var em = UnitOfWork.entityManager(emf)) {
+                var query = em.createQuery("SELECT r FROM Room r WHERE r.roomId > :afterId ORDER BY r.roomId", Room.class)
+                        .setParameter("afterId", afterId != null ? afterId : 0)
+                        .setMaxResults(limit)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true);
+                return withPendingPrices(query.getResultList());
+            }
+        }, Comparator.comparing(Room::getRoomId), limit);
+    }
+
+    // Only the version column, enough to answer If-None-Match without loading the room. Null while a journaled price is pending
+    public Integer readVersion(Integer integer) {
+        if (priceWriteBehind != null && priceWriteBehind.pendingPrice(integer) != null) return null;
+        try (var em = UnitOfWork.entityManager(readEmf(integer))) {
+            var versions = em.createQuery("SELECT r.version FROM Room r WHERE r.roomId = :id", Integer.class)
+                    .setParameter("id", integer)
+                    .getResultList();
+            return versions.isEmpty() ? null : versions.get(0);
+        }
+    }
+
+    public RoomDto readDto(Integer integer) {
+        try (var em = UnitOfWork.entityManager(readEmf(integer))) {
+            var rooms = em.createQuery("SELECT new dk.lyngby.dto.RoomDto(r.roomId, r.roomNumber, r.hotel.id, r.roomPrice, r.version) FROM Room r WHERE r.roomId = :id", RoomDto.class)
+                    .setParameter("id", integer)
+                    .getResultList();
+            return rooms.isEmpty() ? null : withPendingPrice(rooms.get(0));
+        }
+    }
+
+    // Streams every room with the fields availability searches filter on, used to build the occupancy calendar.
+    // One shard after the other, in room id order within each shard
+    public void readAllAvailabilityDtos(Consumer<RoomAvailabilityDto> consumer) {
+        for (EntityManagerFactory emf : shards.primaries()) {
+            try (var em = UnitOfWork.entityManager(emf)) {
+                em.createQuery("SELECT new dk.lyngby.dto.RoomAvailabilityDto(r.roomId, r.roomNumber, r.hotel.id, r.roomType, r.roomPrice) FROM Room r ORDER BY r.roomId", RoomAvailabilityDto.class)
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, 1000)
+                        .getResultStream()
+                        .map(RoomDao::withPendingPrice)
+                        .forEach(consumer);
+            }
+        }
+    }
+
+    // Price, type and hotel of the rooms in one query per shard, in no particular order
+    public List<RoomAvailabilityDto> readAvailabilityDtos(Collection<Integer> roomIds) {
+        Map<Integer, List<Integer>> roomIdsByShard = roomIds.stream().collect(Collectors.groupingBy(shards::shardOf));
+        List<RoomAvailabilityDto> rooms = new ArrayList<>();
+        roomIdsByShard.forEach((shard, shardRoomIds) -> {
+            try (var em = UnitOfWork.entityManager(shards.forRead(shard))) {
+                rooms.addAll(em.createQuery("SELECT new dk.lyngby.dto.RoomAvailabilityDto(r.roomId, r.roomNumber, r.hotel.id, r.roomType, r.roomPrice) FROM Room r WHERE r.roomId IN :roomIds", RoomAvailabilityDto.class)
+                        .setParameter("roomIds", shardRoomIds)
+                        .getResultStream()
+                        .map(RoomDao::withPendingPrice)
+                        .toList());
+            }
+        });
+        return rooms;
+    }
+
+    // Builds one parameterized query from the filter, only matching rows leave the database. With a hotel the query
+    // goes to its shard, without one every shard answers and their first rows are merged in the same order.
+    // Journaled prices are shown but filtered and sorted on by the database only once they are written
+    public List<RoomDto> search(RoomFilter filter) {
+        if (filter.hotelId() != null) return search(readEmf(filter.hotelId()), filter);
+
+        Comparator<RoomDto> order = switch (filter.sort()) {
+            case PRICE_ASC -> Comparator.comparing(RoomDto::getRoomPrice).thenComparing(RoomDto::getRoomId);
+            case PRICE_DESC -> Comparator.comparing(RoomDto::getRoomPrice).reversed().thenComparing(RoomDto::getRoomId);
+            default -> Comparator.comparing(RoomDto::getRoomId);
+        };
+        return shards.gather(shards.forReadAll(), emf -> search(emf, filter), order, filter.limit());
+    }
+
+    private List<RoomDto> search(EntityManagerFactory emf, RoomFilter filter) {
+        try (var em = UnitOfWork.entityManager(emf)) {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<RoomDto> cq = cb.createQuery(RoomDto.class);
+            Root<Room> room = cq.from(Room.class);
+            cq.select(cb.construct(RoomDto.class, room.get("roomId"), room.get("roomNumber"), room.get("hotel").get("id"), room.get("roomPrice")));
+
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.hotelId() != null) predicates.add(cb.equal(room.get("hotel").get("id"), filter.hotelId()));
+            if (filter.roomType() != null) predicates.add(cb.equal(room.get("roomType"), filter.roomType()));
+            if (filter.minPrice() != null) predicates.add(cb.greaterThanOrEqualTo(room.get("roomPrice"), filter.minPrice()));
+            if (filter.maxPrice() != null) predicates.add(cb.lessThanOrEqualTo(room.get("roomPrice"), filter.maxPrice()));
+            if (filter.afterId() != null && filter.sort() == RoomFilter.Sort.ID) predicates.add(cb.greaterThan(room.get("roomId"), filter.afterId()));
+            cq.where(predicates.toArray(Predicate[]::new));
+
+            switch (filter.sort()) {
+                case PRICE_ASC -> cq.orderBy(cb.asc(room.get("roomPrice")), cb.asc(room.get("roomId")));
+                case PRICE_DESC -> cq.orderBy(cb.desc(room.get("roomPrice")), cb.asc(room.get("roomId")));
+                default -> cq.orderBy(cb.asc(room.get("roomId")));
+            }
+
+            return em.createQuery(cq)
+                    .setMaxResults(filter.limit())
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .getResultStream()
+                    .map(RoomDao::withPendingPrice)
+                    .toList();
         }
     }
 
     @Override
     public Room create(Room room) {
-        try (var em = emf.createEntityManager()) {
+        try (var em = UnitOfWork.entityManager(emf(room.getHotel().getId()))) {
             em.getTransaction().begin();
             em.persist(room);
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, room.getRoomId(), room.getHotel().getId(), ChangeEvent.Operation.CREATED, room.getVersion());
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            OccupancyCalendar.getInstance().putRoom(new RoomAvailabilityDto(room));
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
             return room;
         }
     }
 
     @Override
     public Room update(Integer integer, Room room) {
-        try (var em = emf.createEntityManager()) {
+        return update(integer, room, null);
+    }
+
+    // With an expected version the update only goes through if nobody has changed the room since the client read it
+    public Room update(Integer integer, Room room, Integer expectedVersion) {
+        // a journaled price of the room goes to the database first, this update is the newer one.
+        // One that could not be written would be written over this update later
+        if (priceWriteBehind != null && !priceWriteBehind.flush(integer)) {
+            throw new PersistenceException("The journaled price of room " + integer + " could not be written, the room is not updated");
+        }
+
+        try (var em = UnitOfWork.entityManager(emf(integer))) {
             em.getTransaction().begin();
 
             var r = em.find(Room.class, integer);
+            if (expectedVersion != null && !expectedVersion.equals(r.getVersion())) {
+                em.getTransaction().rollback();
+                throw new OptimisticLockException("Room " + integer + " is at version " + r.getVersion());
+            }
             r.setRoomType(room.getRoomType());
             r.setRoomPrice(room.getRoomPrice());
 
             Room merge = em.merge(r);
+            em.flush(); // the event carries the new version
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, integer, merge.getHotel().getId(), ChangeEvent.Operation.UPDATED, merge.getVersion());
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            OccupancyCalendar.getInstance().putRoom(new RoomAvailabilityDto(merge));
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
             return merge;
         }
     }
 
+    // True when price updates are journaled and written in batches, see PriceWriteBehind
+    public boolean isPriceWriteBehind() {
+        return priceWriteBehindEnabled;
+    }
+
+    // Acknowledged once the price is in the journal, the room reads with it right away and the database gets it with the next batch.
+    // Null when the update changes more than the price, that one has to go through update
+    public Room updatePriceLater(Integer integer, Room room) {
+        Room current = read(integer);
+        if (current.getRoomType() != room.getRoomType()) return null;
+
+        priceWriteBehind.put(integer, room.getRoomPrice());
+        Room updated = new Room(current.getRoomId(), null, current.getRoomNumber(), room.getRoomPrice(), current.getRoomType(), current.getHotel());
+        OccupancyCalendar.getInstance().putRoom(new RoomAvailabilityDto(updated));
+        return updated;
+    }
+
+    // Writes a batch of journaled prices, one transaction per shard. The rooms are changed like in update, so their versions
+    // are bumped and the second-level cache is kept right, Hibernate sends the UPDATEs in jdbc batches of JDBC_BATCH_SIZE.
+    // Runs on the write-behind thread, outside any request. Rooms deleted meanwhile are skipped
+    public void updatePrices(Map<Integer, BigDecimal> prices) {
+        Map<Integer, List<Integer>> roomIdsByShard = prices.keySet().stream().collect(Collectors.groupingBy(shards::shardOf));
+        roomIdsByShard.forEach((shard, roomIds) -> {
+            List<ChangeEvent> events = new ArrayList<>();
+            try (var em = shards.primary(shard).createEntityManager()) {
+                em.getTransaction().begin();
+                List<Room> rooms = em.createQuery("SELECT r FROM Room r JOIN FETCH r.hotel WHERE r.roomId IN :roomIds", Room.class)
+                        .setParameter("roomIds", roomIds)
+                        .getResultStream()
+                        .filter(r -> r.getRoomPrice().compareTo(prices.get(r.getRoomId())) != 0)
+                        .toList();
+                rooms.forEach(r -> r.setRoomPrice(prices.get(r.getRoomId())));
+                em.flush(); // the events carry the new versions
+                for (Room r : rooms) {
+                    events.add(ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, r.getRoomId(), r.getHotel().getId(), ChangeEvent.Operation.UPDATED, r.getVersion()));
+                }
+                em.getTransaction().commit();
+            }
+            ChangeFeed.getInstance().publish(events.stream().map(ChangeEventDto::new).toList());
+        });
+    }
+
+    // The room as the client last set it, a copy when its price is still in the journal so the managed entity is left alone.
+    // A journaled price has no version yet, so the room has no etag until the price is written
+    public static Room withPendingPrice(Room room) {
+        BigDecimal price = room != null && priceWriteBehind != null ? priceWriteBehind.pendingPrice(room.getRoomId()) : null;
+        if (price == null) return room;
+        return new Room(room.getRoomId(), null, room.getRoomNumber(), price, room.getRoomType(), room.getHotel());
+    }
+
+    public static RoomDto withPendingPrice(RoomDto room) {
+        BigDecimal price = room != null && priceWriteBehind != null ? priceWriteBehind.pendingPrice(room.getRoomId()) : null;
+        if (price == null) return room;
+        return new RoomDto(room.getRoomId(), room.getRoomNumber(), room.getHotelId(), price, null);
+    }
+
+    private static RoomAvailabilityDto withPendingPrice(RoomAvailabilityDto room) {
+        BigDecimal price = priceWriteBehind != null ? priceWriteBehind.pendingPrice(room.roomId()) : null;
+        if (price == null) return room;
+        return new RoomAvailabilityDto(room.roomId(), room.roomNumber(), room.hotelId(), room.roomType(), price);
+    }
+
+    private static List<Room> withPendingPrices(List<Room> rooms) {
+        if (priceWriteBehind == null || !priceWriteBehind.hasPending()) return rooms;
+        return rooms.stream().map(RoomDao::withPendingPrice).toList();
+    }
+
     @Override
     public void delete(Integer integer) {
-        try (var em = emf.createEntityManager()) {
+        try (var em = UnitOfWork.entityManager(emf(integer))) {
             em.getTransaction().begin();
             var room = em.find(Room.class, integer);
+            lockHotel(em, room.getHotel().getId());
+            // the room's bookings reference it, they go with it
+            em.createQuery("DELETE FROM Booking b WHERE b.room.roomId = :roomId")
+                    .setParameter("roomId", integer)
+                    .executeUpdate();
+            room.getHotel().getRooms().remove(room); // or the hotel's cached room list still holds it
             em.remove(room);
+            ChangeEvent event = ChangeEventDao.append(em, ChangeEvent.EntityType.ROOM, integer, room.getHotel().getId(), ChangeEvent.Operation.DELETED, null);
             em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            OccupancyCalendar.getInstance().removeRoom(integer);
+            RoomReservations.getInstance().removeRoom(integer);
+            if (priceWriteBehind != null) priceWriteBehind.discard(integer);
+            ChangeFeed.getInstance().publish(new ChangeEventDto(event));
         }
     }
 
     @Override
     public boolean validatePrimaryKey(Integer integer) {
-        try (var em = emf.createEntityManager()) {
+        try (var em = UnitOfWork.entityManager(readEmf(integer))) {
             var room = em.find(Room.class, integer);
             return room != null;
         }
     }
 
     public Function<Integer, Boolean> validateRoomNumber = (roomNumber) -> {
-        try (var em = emf.createEntityManager()) {
+        try (var em = UnitOfWork.entityManager(emf(roomNumber))) {
             var room = em.find(Room.class, roomNumber);
             return room != null;
         }
     };
 
+    // Probes the unique (hotel_id, room_number) index for one row instead of loading the hotel's rooms
     public Boolean validateHotelRoomNumber(Integer roomNumber, Integer hotelId) {
-        try (var em = emf.createEntityManager()) {
-            var hotel = em.find(Hotel.class, hotelId);
-            return hotel.getRooms().stream().anyMatch(r -> r.getRoomNumber().equals(roomNumber));
+        try (var em = UnitOfWork.entityManager(emf(hotelId))) {
+            var query = em.createQuery("SELECT 1 FROM Room r WHERE r.hotel.id = :hotelId AND r.roomNumber = :roomNumber", Integer.class)
+                    .setParameter("hotelId", hotelId)
+                    .setParameter("roomNumber", roomNumber)
+                    .setMaxResults(1);
+            return !query.getResultList().isEmpty();
         }
     }
 
@@ -4,4 +4,4 @@ import dk.lyngby.dto.RoomDto;
 
 import java.util.List;
 
-public record RoomListDto(int listSize, List<RoomDto> roomDtos) {}
+public record RoomListDto(int listSize, List<RoomDto> roomDtos, String nextCursor) {}
@@ -0,0 +1,12 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.Booking;
+
+import java.time.LocalDate;
+
+public record BookingDto(Integer bookingId, Integer roomId, String username, LocalDate checkIn, LocalDate checkOut) {
+
+    public BookingDto(Booking booking, Integer roomId, String username) {
+        this(booking.getBookingId(), roomId, username, booking.getCheckIn(), booking.getCheckOut());
+    }
+}
@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record BookingListDto(int listSize, List<BookingDto> bookings) {}
@@ -0,0 +1,10 @@
+package dk.lyngby.dto;
+
+public record CacheRegionMetricsDto(
+        String region,
+        long hits,
+        long misses,
+        long puts,
+        long evictions,
+        double hitRatio
+) {}
@@ -0,0 +1,12 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.ChangeEvent;
+
+import java.time.Instant;
+
+public record ChangeEventDto(Integer id, ChangeEvent.EntityType entityType, Integer entityId, Integer hotelId, ChangeEvent.Operation operation, Integer version, Instant createdAt, Integer shard, Long position) {
+
+    public ChangeEventDto(ChangeEvent event) {
+        this(event.getChangeEventId(), event.getEntityType(), event.getEntityId(), event.getHotelId(), event.getOperation(), event.getEntityVersion(), event.getCreatedAt(), event.getShard(), event.getPosition());
+    }
+}
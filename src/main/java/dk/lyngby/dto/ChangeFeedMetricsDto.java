@@ -0,0 +1,8 @@
+package dk.lyngby.dto;
+
+public record ChangeFeedMetricsDto(
+        int subscribers,
+        int subscriberBuffer,
+        long published,
+        long slowConsumerDisconnects
+) {}
@@ -0,0 +1,16 @@
+package dk.lyngby.dto;
+
+public record DbExecutorMetricsDto(
+        int threads,
+        int activeThreads,
+        int queueDepth,
+        int queueCapacity,
+        long maxQueueDepth,
+        long timeoutMillis,
+        long submitted,
+        long started,
+        long rejected,
+        long timedOut,
+        double averageQueueWaitMillis,
+        double maxQueueWaitMillis
+) {}
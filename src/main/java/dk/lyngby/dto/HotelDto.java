@@ -1,5 +1,6 @@
 package dk.lyngby.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import dk.lyngby.model.Hotel;
 import dk.lyngby.model.Room;
 import lombok.Getter;
@@ -17,13 +18,38 @@ public class HotelDto {
     private Integer id;
     private String hotelName;
     private String hotelAddress;
+    private Double latitude;
+    private Double longitude;
     private Set<Integer> rooms;
+    @JsonIgnore
+    private Integer version; // sent as the ETag header
+
+    public HotelDto(Integer id, String hotelName, String hotelAddress) {
+        this.id = id;
+        this.hotelName = hotelName;
+        this.hotelAddress = hotelAddress;
+        this.rooms = new HashSet<>();
+    }
+
+    public HotelDto(Integer id, String hotelName, String hotelAddress, Double latitude, Double longitude) {
+        this(id, hotelName, hotelAddress);
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public HotelDto(Integer id, String hotelName, String hotelAddress, Double latitude, Double longitude, Integer version) {
+        this(id, hotelName, hotelAddress, latitude, longitude);
+        this.version = version;
+    }
 
     public HotelDto(Hotel hotel) {
         this.id = hotel.getId();
         this.hotelName = hotel.getHotelName();
         this.hotelAddress = hotel.getHotelAddress();
+        this.latitude = hotel.getLatitude();
+        this.longitude = hotel.getLongitude();
         this.rooms = hotel.getRooms() != null ? getRooms(hotel.getRooms()) : new HashSet<>();
+        this.version = hotel.getVersion();
     }
 
     public static List<HotelDto> toHotelDTOList(List<Hotel> hotels) {
@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record HotelListDto(int listSize, List<HotelDto> hotelDtos, String nextCursor) {}
@@ -0,0 +1,3 @@
+package dk.lyngby.dto;
+
+public record HotelNearbyDto(Integer id, String hotelName, String hotelAddress, double latitude, double longitude, double distanceKm) {}
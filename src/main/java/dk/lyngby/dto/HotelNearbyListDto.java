@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record HotelNearbyListDto(double latitude, double longitude, double radiusKm, int listSize, List<HotelNearbyDto> hotels) {}
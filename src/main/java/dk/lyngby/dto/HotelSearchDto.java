@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record HotelSearchDto(String query, int listSize, List<HotelSearchHitDto> hits) {}
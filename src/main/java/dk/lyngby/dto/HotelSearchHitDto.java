@@ -0,0 +1,3 @@
+package dk.lyngby.dto;
+
+public record HotelSearchHitDto(Integer id, String hotelName, String hotelAddress, int score) {}
@@ -0,0 +1,14 @@
+package dk.lyngby.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Prices over all rooms of the hotel and per room type, the price fields are null for a hotel without rooms
+public record HotelStatsDto(
+        Integer hotelId,
+        long roomCount,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        BigDecimal averagePrice,
+        List<RoomTypeStatsDto> roomTypes
+) {}
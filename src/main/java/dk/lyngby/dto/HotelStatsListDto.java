@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record HotelStatsListDto(int listSize, List<HotelStatsDto> hotelStats, String nextCursor) {}
@@ -0,0 +1,3 @@
+package dk.lyngby.dto;
+
+public record ImportReportDto(long rows, long hotelsCreated, long roomsCreated, long millis, double rowsPerSecond) {}
@@ -0,0 +1,31 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+
+// One room per row, the hotel columns are repeated for every room of the hotel. The position is optional like the hotel's
+public record ImportRowDto(
+        String hotelName,
+        String hotelAddress,
+        Hotel.HotelType hotelType,
+        Double latitude,
+        Double longitude,
+        Integer roomNumber,
+        BigDecimal roomPrice,
+        Room.RoomType roomType
+) {
+
+    public boolean isValid() {
+        return hotelName != null && !hotelName.isEmpty()
+                && hotelAddress != null && !hotelAddress.isEmpty()
+                && hotelType != null
+                && (latitude == null) == (longitude == null)
+                && (latitude == null || (latitude >= -90 && latitude <= 90))
+                && (longitude == null || (longitude >= -180 && longitude <= 180))
+                && roomNumber != null && roomNumber > 0
+                && roomPrice != null
+                && roomType != null;
+    }
+}
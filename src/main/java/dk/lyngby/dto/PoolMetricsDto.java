@@ -0,0 +1,15 @@
+package dk.lyngby.dto;
+
+public record PoolMetricsDto(
+        String poolName,
+        int maximumPoolSize,
+        int activeConnections,
+        int idleConnections,
+        int totalConnections,
+        int threadsAwaitingConnection,
+        long connectionsAcquired,
+        double averageWaitMillis,
+        double maxWaitMillis,
+        long connectionTimeouts,
+        double averageUsageMillis
+) {}
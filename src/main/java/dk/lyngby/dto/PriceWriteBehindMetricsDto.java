@@ -0,0 +1,9 @@
+package dk.lyngby.dto;
+
+public record PriceWriteBehindMetricsDto(
+        boolean enabled,
+        int pendingRooms,
+        long journaled,
+        long written,
+        long failedBatches
+) {}
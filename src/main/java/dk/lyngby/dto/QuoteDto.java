@@ -0,0 +1,7 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+
+public record QuoteDto(Integer roomId, Integer hotelId, Room.RoomType roomType, int nights, BigDecimal roomPrice, BigDecimal totalPrice) {}
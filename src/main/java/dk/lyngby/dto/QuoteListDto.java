@@ -0,0 +1,6 @@
+package dk.lyngby.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record QuoteListDto(LocalDate checkIn, LocalDate checkOut, int listSize, List<QuoteDto> quotes) {}
@@ -0,0 +1,6 @@
+package dk.lyngby.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record QuoteRequestDto(LocalDate checkIn, LocalDate checkOut, List<Integer> roomIds) {}
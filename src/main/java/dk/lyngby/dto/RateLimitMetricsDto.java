@@ -0,0 +1,10 @@
+package dk.lyngby.dto;
+
+public record RateLimitMetricsDto(
+        String limit,
+        double perSecond,
+        int burst,
+        int buckets,
+        long allowed,
+        long rejected
+) {}
@@ -0,0 +1,24 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.RateRule;
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Set;
+
+public record RateRuleDto(Integer rateRuleId, Integer hotelId, Room.RoomType roomType, LocalDate validFrom, LocalDate validTo,
+                          Set<DayOfWeek> weekdays, Integer minNights, BigDecimal multiplier) {
+
+    public RateRuleDto(RateRule rule, Integer hotelId) {
+        this(rule.getRateRuleId(), hotelId, rule.getRoomType(), rule.getValidFrom(), rule.getValidTo(), rule.getWeekdays(), rule.getMinNights(), rule.getMultiplier());
+    }
+
+    // The night is inside the dates and on one of the weekdays
+    public boolean appliesTo(LocalDate night) {
+        return (validFrom == null || !night.isBefore(validFrom))
+                && (validTo == null || night.isBefore(validTo))
+                && (weekdays == null || weekdays.contains(night.getDayOfWeek()));
+    }
+}
@@ -0,0 +1,5 @@
+package dk.lyngby.dto;
+
+import java.util.List;
+
+public record RateRuleListDto(int listSize, List<RateRuleDto> rateRules) {}
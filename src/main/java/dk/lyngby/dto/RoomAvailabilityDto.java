@@ -0,0 +1,12 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+
+public record RoomAvailabilityDto(Integer roomId, Integer roomNumber, Integer hotelId, Room.RoomType roomType, BigDecimal roomPrice) {
+
+    public RoomAvailabilityDto(Room room) {
+        this(room.getRoomId(), room.getRoomNumber(), room.getHotel().getId(), room.getRoomType(), room.getRoomPrice());
+    }
+}
@@ -0,0 +1,6 @@
+package dk.lyngby.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record RoomAvailabilityListDto(LocalDate from, LocalDate to, int listSize, List<RoomAvailabilityDto> rooms, String nextCursor) {}
@@ -1,5 +1,6 @@
 package dk.lyngby.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import dk.lyngby.model.Room;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -12,14 +13,31 @@ import java.util.List;
 @Getter
 @ToString
 public class RoomDto {
+    private Integer roomId;
     private Integer roomNumber;
     private Integer hotelId;
     private BigDecimal roomPrice;
+    @JsonIgnore
+    private Integer version; // sent as the ETag header
+
+    public RoomDto(Integer roomId, Integer roomNumber, Integer hotelId, BigDecimal roomPrice) {
+        this.roomId = roomId;
+        this.roomNumber = roomNumber;
+        this.roomPrice = BigDecimal.valueOf(roomPrice.intValue());
+        this.hotelId = hotelId;
+    }
+
+    public RoomDto(Integer roomId, Integer roomNumber, Integer hotelId, BigDecimal roomPrice, Integer version) {
+        this(roomId, roomNumber, hotelId, roomPrice);
+        this.version = version;
+    }
 
     public RoomDto(Room room) {
+        this.roomId = room.getRoomId();
         this.roomNumber = room.getRoomNumber();
         this.roomPrice = BigDecimal.valueOf(room.getRoomPrice().intValue());
         this.hotelId = room.getHotel().getId() != null ? room.getHotel().getId() : null;
+        this.version = room.getVersion();
     }
 
     public static List<RoomDto> toRoomDTOList(List<Room> rooms) {
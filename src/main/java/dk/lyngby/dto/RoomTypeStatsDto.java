@@ -0,0 +1,13 @@
+package dk.lyngby.dto;
+
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+
+public record RoomTypeStatsDto(
+        Room.RoomType roomType,
+        long roomCount,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        BigDecimal averagePrice
+) {}
@@ -0,0 +1,242 @@
+package dk.lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelNearbyDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Where the hotels are, for "hotels near me" without a geo service in front of the database.
+// The world is cut into the same cells a geohash uses, two bits per level, and a cell is only split in four once
+// it fills up. A nearest search opens the cells closest to the point first, so it reads a few cells however big the catalog gets
+public class HotelGeoIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final int CELL_CAPACITY = 32;
+    // a little under a metre across, more hotels than CELL_CAPACITY on one spot just make the cell longer
+    private static final int MAX_DEPTH = 25;
+    private static final Comparator<HotelNearbyDto> NEAREST = Comparator
+            .comparingDouble(HotelNearbyDto::distanceKm)
+            .thenComparing(HotelNearbyDto::id);
+
+    private static HotelGeoIndex instance;
+
+    // the cells are changed in place, the lock keeps searches from seeing a cell halfway through a split
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Position> positions = new HashMap<>();
+    private Cell root = new Cell(-90, 90, -180, 180, 0);
+
+    private record Position(String hotelName, String hotelAddress, double latitude, double longitude) {}
+
+    private record Candidate(Cell cell, double distanceKm) {}
+
+    public static synchronized HotelGeoIndex getInstance() {
+        if (instance == null) instance = new HotelGeoIndex();
+        return instance;
+    }
+
+    // Bulk load at startup, hotels without a position are skipped
+    public void rebuild(Consumer<Consumer<HotelDto>> source) {
+        Map<Integer, Position> loaded = new HashMap<>();
+        Cell loadedRoot = new Cell(-90, 90, -180, 180, 0);
+        source.accept(hotel -> {
+            if (hotel.getLatitude() == null || hotel.getLongitude() == null) return;
+            Position position = new Position(hotel.getHotelName(), hotel.getHotelAddress(), hotel.getLatitude(), hotel.getLongitude());
+            loaded.put(hotel.getId(), position);
+            loadedRoot.add(hotel.getId(), position.latitude(), position.longitude());
+        });
+
+        lock.writeLock().lock();
+        try {
+            positions.clear();
+            positions.putAll(loaded);
+            root = loadedRoot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called after a hotel is created or updated, a hotel that lost its position is taken out
+    public void put(Integer id, String hotelName, String hotelAddress, Double latitude, Double longitude) {
+        lock.writeLock().lock();
+        try {
+            Position previous = positions.remove(id);
+            if (previous != null) root.remove(id, previous.latitude(), previous.longitude());
+            if (latitude == null || longitude == null) return;
+
+            positions.put(id, new Position(hotelName, hotelAddress, latitude, longitude));
+            root.add(id, latitude, longitude);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called after a hotel is deleted
+    public void remove(Integer id) {
+        put(id, null, null, null, null);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return positions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The hotels within radius of the point, nearest first. Cells are opened in order of how close they could be,
+    // so the search ends as soon as the next cell is further away than the limit-th hotel found
+    public List<HotelNearbyDto> nearest(double latitude, double longitude, double radiusKm, int limit) {
+        PriorityQueue<HotelNearbyDto> best = new PriorityQueue<>(limit + 1, NEAREST.reversed());
+        PriorityQueue<Candidate> cells = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distanceKm));
+
+        lock.readLock().lock();
+        try {
+            cells.add(new Candidate(root, 0));
+            while (!cells.isEmpty()) {
+                Candidate candidate = cells.poll();
+                if (candidate.distanceKm() > radiusKm) break;
+                if (best.size() == limit && candidate.distanceKm() > best.peek().distanceKm()) break;
+
+                Cell cell = candidate.cell();
+                if (cell.children != null) {
+                    for (Cell child : cell.children) {
+                        if (child.count > 0 || child.children != null) cells.add(new Candidate(child, child.minDistanceKm(latitude, longitude)));
+                    }
+                    continue;
+                }
+                for (int i = 0; i < cell.count; i++) {
+                    double distance = distanceKm(latitude, longitude, cell.latitudes[i], cell.longitudes[i]);
+                    if (distance > radiusKm) continue;
+                    if (best.size() == limit && distance > best.peek().distanceKm()) continue;
+
+                    Position position = positions.get(cell.ids[i]);
+                    best.offer(new HotelNearbyDto(cell.ids[i], position.hotelName(), position.hotelAddress(), position.latitude(), position.longitude(), distance));
+                    if (best.size() > limit) best.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<HotelNearbyDto> hotels = new ArrayList<>(best);
+        hotels.sort(NEAREST);
+        return hotels;
+    }
+
+    // Great circle distance
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // A leaf holds up to CELL_CAPACITY hotels in flat arrays, a split cell only holds its four quarters
+    private static final class Cell {
+
+        private final double south, north, west, east;
+        private final int depth;
+        private Cell[] children;
+        private int[] ids = new int[CELL_CAPACITY];
+        private double[] latitudes = new double[CELL_CAPACITY];
+        private double[] longitudes = new double[CELL_CAPACITY];
+        private int count;
+
+        private Cell(double south, double north, double west, double east, int depth) {
+            this.south = south;
+            this.north = north;
+            this.west = west;
+            this.east = east;
+            this.depth = depth;
+        }
+
+        private void add(int id, double latitude, double longitude) {
+            Cell cell = this;
+            while (cell.children != null) cell = cell.child(latitude, longitude);
+
+            if (cell.count == cell.ids.length) {
+                if (cell.depth < MAX_DEPTH) {
+                    cell.split();
+                    cell.child(latitude, longitude).add(id, latitude, longitude);
+                    return;
+                }
+                cell.grow();
+            }
+            cell.ids[cell.count] = id;
+            cell.latitudes[cell.count] = latitude;
+            cell.longitudes[cell.count] = longitude;
+            cell.count++;
+        }
+
+        // Emptied cells are kept, they are cheap and the hotel that moved out is often replaced
+        private void remove(int id, double latitude, double longitude) {
+            Cell cell = this;
+            while (cell.children != null) cell = cell.child(latitude, longitude);
+
+            for (int i = 0; i < cell.count; i++) {
+                if (cell.ids[i] != id) continue;
+                int last = --cell.count;
+                cell.ids[i] = cell.ids[last];
+                cell.latitudes[i] = cell.latitudes[last];
+                cell.longitudes[i] = cell.longitudes[last];
+                return;
+            }
+        }
+
+        private void split() {
+            double midLatitude = (south + north) / 2;
+            double midLongitude = (west + east) / 2;
+            children = new Cell[]{
+                    new Cell(south, midLatitude, west, midLongitude, depth + 1),
+                    new Cell(south, midLatitude, midLongitude, east, depth + 1),
+                    new Cell(midLatitude, north, west, midLongitude, depth + 1),
+                    new Cell(midLatitude, north, midLongitude, east, depth + 1)
+            };
+            for (int i = 0; i < count; i++) child(latitudes[i], longitudes[i]).add(ids[i], latitudes[i], longitudes[i]);
+            ids = null;
+            latitudes = null;
+            longitudes = null;
+            count = 0;
+        }
+
+        private void grow() {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            latitudes = Arrays.copyOf(latitudes, latitudes.length * 2);
+            longitudes = Arrays.copyOf(longitudes, longitudes.length * 2);
+        }
+
+        private Cell child(double latitude, double longitude) {
+            int index = (latitude >= (south + north) / 2 ? 2 : 0) + (longitude >= (west + east) / 2 ? 1 : 0);
+            return children[index];
+        }
+
+        // No hotel in the cell can be closer than this. Any path to the cell has to cover the latitude gap,
+        // and a point further round than the cell's nearest edge is at least as far as the meridian through that edge
+        private double minDistanceKm(double latitude, double longitude) {
+            double latitudeGap = latitude < south ? south - latitude : latitude > north ? latitude - north : 0;
+            double longitudeGap = 0;
+            if (longitude < west || longitude > east) {
+                // either way round, the shorter one may cross the date line
+                double toWest = ((west - longitude) % 360 + 360) % 360;
+                double toEast = ((longitude - east) % 360 + 360) % 360;
+                longitudeGap = Math.min(Math.min(toWest, toEast), 90);
+            }
+
+            double latitudeBound = Math.toRadians(latitudeGap) * EARTH_RADIUS_KM;
+            double longitudeBound = longitudeGap == 0 ? 0
+                    : Math.asin(Math.cos(Math.toRadians(latitude)) * Math.sin(Math.toRadians(longitudeGap))) * EARTH_RADIUS_KM;
+            return Math.max(latitudeBound, longitudeBound);
+        }
+    }
+}
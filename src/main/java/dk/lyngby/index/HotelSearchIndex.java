@@ -0,0 +1,281 @@
+package dk.lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelSearchHitDto;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// Prefix index over the words of hotel names and addresses, answers autocomplete without touching the database
+public class HotelSearchIndex {
+
+    // Upper bound on hotels looked at per query, keeps one letter queries as fast as long ones
+    private static final int MAX_CANDIDATES = 1_000;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{Alnum}]+");
+    private static final Comparator<HotelSearchHitDto> RANKING = Comparator
+            .comparingInt(HotelSearchHitDto::score).reversed()
+            .thenComparingInt(hit -> hit.hotelName().length())
+            .thenComparing(HotelSearchHitDto::id);
+
+    private static HotelSearchIndex instance;
+
+    // word -> sorted ids of the hotels containing it.
+    // Name and address words are kept apart so name matches are looked at before address matches
+    private final ConcurrentSkipListMap<String, Postings> namePostings = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Postings> addressPostings = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+
+    // The words are kept as " word word " strings, a prefix match is one indexOf instead of a walk over word objects
+    private record Document(String hotelName, String hotelAddress, String nameWords, String addressWords) {}
+
+    // The first size ids of the array, replaced on every change. New hotels get the highest id, so a write is nearly always
+    // an append: it goes into the spare capacity and the new postings share the array, readers of the old ones never look
+    // past their size. Only the first append to a postings object may use the slot, the others copy the array
+    private static final class Postings {
+        private static final AtomicIntegerFieldUpdater<Postings> APPENDED = AtomicIntegerFieldUpdater.newUpdater(Postings.class, "appended");
+
+        private final int[] ids;
+        private final int size;
+        private volatile int appended;
+
+        private Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    public static synchronized HotelSearchIndex getInstance() {
+        if (instance == null) instance = new HotelSearchIndex();
+        return instance;
+    }
+
+    // Bulk load at startup, the source hands every hotel to the consumer once
+    public void rebuild(Consumer<Consumer<HotelDto>> source) {
+        Map<String, IntList> nameLists = new HashMap<>();
+        Map<String, IntList> addressLists = new HashMap<>();
+        Map<Integer, Document> loaded = new HashMap<>();
+
+        source.accept(hotel -> {
+            Document document = document(hotel.getHotelName(), hotel.getHotelAddress());
+            loaded.put(hotel.getId(), document);
+            for (String word : words(document.nameWords())) nameLists.computeIfAbsent(word, w -> new IntList()).add(hotel.getId());
+            for (String word : words(document.addressWords())) addressLists.computeIfAbsent(word, w -> new IntList()).add(hotel.getId());
+        });
+
+        namePostings.clear();
+        addressPostings.clear();
+        documents.clear();
+        documents.putAll(loaded);
+        nameLists.forEach((word, ids) -> namePostings.put(word, ids.toPostings()));
+        addressLists.forEach((word, ids) -> addressPostings.put(word, ids.toPostings()));
+    }
+
+    // Called after a hotel is created or updated
+    public void put(Integer id, String hotelName, String hotelAddress) {
+        Document document = document(hotelName, hotelAddress);
+        Document previous = documents.put(id, document);
+
+        update(namePostings, id, previous != null ? previous.nameWords() : null, document.nameWords());
+        update(addressPostings, id, previous != null ? previous.addressWords() : null, document.addressWords());
+    }
+
+    // Called after a hotel is deleted
+    public void remove(Integer id) {
+        Document previous = documents.remove(id);
+        if (previous == null) return;
+
+        update(namePostings, id, previous.nameWords(), null);
+        update(addressPostings, id, previous.addressWords(), null);
+    }
+
+    private static void update(ConcurrentSkipListMap<String, Postings> postings, int id, String previousWords, String words) {
+        Set<String> added = words(words);
+        for (String word : words(previousWords)) {
+            if (!added.contains(word)) postings.computeIfPresent(word, (w, ids) -> without(ids, id));
+        }
+        for (String word : added) {
+            postings.compute(word, (w, ids) -> with(ids, id));
+        }
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    // Every query word has to prefix a word of the hotel, name matches rank above address matches.
+    // The hotels of the word with the fewest hotels are looked at, those whose name has the word first,
+    // the best hits are picked from the first MAX_CANDIDATES
+    public List<HotelSearchHitDto> search(String query, int limit) {
+        String[] terms = tokenize(query);
+        if (terms.length == 0) return List.of();
+
+        // a rare word behind a common one would otherwise be cut off by MAX_CANDIDATES. The longest word usually has
+        // the fewest hotels, counted first it stops the counting of the short ones early
+        String probe = terms[0];
+        if (terms.length > 1) {
+            long fewest = Long.MAX_VALUE;
+            for (String term : Arrays.stream(terms).sorted(Comparator.comparingInt(String::length).reversed()).toList()) {
+                long candidates = candidates(term, fewest);
+                if (candidates < fewest) {
+                    probe = term;
+                    fewest = candidates;
+                }
+            }
+            if (fewest == 0) return List.of(); // no hotel has that word
+        }
+        String[] wordStarts = Arrays.stream(terms).map(term -> " " + term).toArray(String[]::new);
+        PriorityQueue<HotelSearchHitDto> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        int visited = 0;
+
+        scan:
+        for (ConcurrentSkipListMap<String, Postings> postings : List.of(namePostings, addressPostings)) {
+            // the word itself sorts before the longer words it is a prefix of
+            for (Postings ids : postings.subMap(probe, true, probe + Character.MAX_VALUE, true).values()) {
+                for (int i = 0; i < ids.size; i++) {
+                    int id = ids.ids[i];
+                    if (++visited > MAX_CANDIDATES) break scan;
+
+                    Document document = documents.get(id);
+                    int score = document != null ? score(document, wordStarts) : 0;
+                    if (score == 0) continue;
+                    // most candidates of a common word score below the worst of a full list, no hit is made for them
+                    if (best.size() == limit && !best.isEmpty() && score < best.peek().score()) continue;
+                    if (contains(best, id)) continue; // a hotel with two words matching the probe
+
+                    best.offer(new HotelSearchHitDto(id, document.hotelName(), document.hotelAddress(), score));
+                    if (best.size() > limit) best.poll();
+                }
+            }
+        }
+
+        List<HotelSearchHitDto> hits = new ArrayList<>(best);
+        hits.sort(RANKING);
+        return hits;
+    }
+
+    // Hotels with a word the term prefixes, counted up to atMost
+    private long candidates(String term, long atMost) {
+        long candidates = 0;
+        for (ConcurrentSkipListMap<String, Postings> postings : List.of(namePostings, addressPostings)) {
+            for (Postings ids : postings.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                candidates += ids.size;
+                if (candidates >= atMost) return candidates;
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean contains(PriorityQueue<HotelSearchHitDto> best, int id) {
+        for (HotelSearchHitDto hit : best) {
+            if (hit.id() == id) return true;
+        }
+        return false;
+    }
+
+    private static int score(Document document, String[] wordStarts) {
+        int score = 0;
+        for (String wordStart : wordStarts) {
+            int termScore = match(document.nameWords(), wordStart, 4, 3);
+            if (termScore < 4) termScore = Math.max(termScore, match(document.addressWords(), wordStart, 2, 1));
+            if (termScore == 0) return 0;
+            score += termScore;
+        }
+        // the name starts with what the user is typing
+        if (document.nameWords().startsWith(wordStarts[0])) score += 2;
+        return score;
+    }
+
+    // " term" only matches at the start of a word, a space right after it makes it the whole word
+    private static int match(String words, String wordStart, int exact, int prefix) {
+        int best = 0;
+        for (int at = words.indexOf(wordStart); at >= 0; at = words.indexOf(wordStart, at + 1)) {
+            if (words.charAt(at + wordStart.length()) == ' ') return exact;
+            best = prefix;
+        }
+        return best;
+    }
+
+    private static Document document(String hotelName, String hotelAddress) {
+        return new Document(hotelName, hotelAddress, words(tokenize(hotelName)), words(tokenize(hotelAddress)));
+    }
+
+    private static String words(String[] tokens) {
+        return tokens.length == 0 ? " " : " " + String.join(" ", tokens) + " ";
+    }
+
+    private static Set<String> words(String words) {
+        if (words == null || words.isBlank()) return Set.of();
+        return new HashSet<>(Arrays.asList(words.trim().split(" ")));
+    }
+
+    // Lower case words without accents, "Hôtel d'Angleterre" -> [hotel, d, angleterre]
+    private static String[] tokenize(String text) {
+        if (text == null) return new String[0];
+        String normalized = MARKS.matcher(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.splitAsStream(normalized).filter(token -> !token.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    // The map may call this again with the same postings when another write got in first, the claim keeps a retry from
+    // writing over a slot that was handed out already
+    private static Postings with(Postings postings, int id) {
+        if (postings == null) return new Postings(new int[]{id}, 1);
+        int index = Arrays.binarySearch(postings.ids, 0, postings.size, id);
+        if (index >= 0) return postings;
+
+        int insertAt = -index - 1;
+        if (insertAt == postings.size && postings.size < postings.ids.length && Postings.APPENDED.compareAndSet(postings, 0, 1)) {
+            postings.ids[insertAt] = id;
+            return new Postings(postings.ids, postings.size + 1);
+        }
+
+        // half again as much room, the next appends do not copy
+        int[] copy = new int[postings.size + 1 + (postings.size >> 1)];
+        System.arraycopy(postings.ids, 0, copy, 0, insertAt);
+        copy[insertAt] = id;
+        System.arraycopy(postings.ids, insertAt, copy, insertAt + 1, postings.size - insertAt);
+        return new Postings(copy, postings.size + 1);
+    }
+
+    // null removes the word from the index. Deletes are rare, they copy the array
+    private static Postings without(Postings postings, int id) {
+        int index = Arrays.binarySearch(postings.ids, 0, postings.size, id);
+        if (index < 0) return postings;
+        if (postings.size == 1) return null;
+
+        int[] copy = new int[postings.size - 1];
+        System.arraycopy(postings.ids, 0, copy, 0, index);
+        System.arraycopy(postings.ids, index + 1, copy, index, postings.size - index - 1);
+        return new Postings(copy, copy.length);
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        private Postings toPostings() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return new Postings(sorted, size);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package dk.lyngby.index;
+
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.model.Room;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Which nights every room is booked, one bit per night, so a date range search is a few word compares per room.
+// The bits live off heap in a memory mapped scratch file, the booking table stays the source of truth
+// and the calendar is built again from it at startup
+public class OccupancyCalendar {
+
+    // Nights covered from the day the calendar was built, a little over two years
+    public static final int DAYS = 768;
+    private static final int WORDS = DAYS / Long.SIZE;
+    private static final int SEGMENT_ROOMS = 16_384;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_ROOMS * WORDS * Long.BYTES;
+    private static final VarHandle WORD = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final Room.RoomType[] TYPES = Room.RoomType.values();
+
+    private static OccupancyCalendar instance;
+
+    private final Map<Integer, Integer> slots = new ConcurrentHashMap<>();
+    private volatile Segment[] segments = new Segment[0];
+    private volatile int size;
+    private volatile int firstDay = (int) LocalDate.now().toEpochDay();
+    private FileChannel channel;
+
+    // The bits of SEGMENT_ROOMS rooms and the fields searches filter on, a free slot has room id 0
+    private record Segment(MappedByteBuffer bits, int[] roomIds, int[] roomNumbers, int[] hotelIds, byte[] types, long[] prices) {
+
+        private Segment(MappedByteBuffer bits) {
+            this(bits, new int[SEGMENT_ROOMS], new int[SEGMENT_ROOMS], new int[SEGMENT_ROOMS], new byte[SEGMENT_ROOMS], new long[SEGMENT_ROOMS]);
+        }
+    }
+
+    public static synchronized OccupancyCalendar getInstance() {
+        if (instance == null) instance = new OccupancyCalendar();
+        return instance;
+    }
+
+    // Bulk load at startup, every room first and then every stay that has not ended yet
+    public synchronized void rebuild(Consumer<Consumer<RoomAvailabilityDto>> rooms, Consumer<Consumer<BookingDto>> bookings) {
+        closeFile();
+        slots.clear();
+        segments = new Segment[0];
+        size = 0;
+        firstDay = (int) LocalDate.now().toEpochDay();
+
+        rooms.accept(this::putRoom);
+        bookings.accept(booking -> book(booking.roomId(), booking.checkIn(), booking.checkOut()));
+    }
+
+    public LocalDate firstDay() {
+        return LocalDate.ofEpochDay(firstDay);
+    }
+
+    // The first check out the calendar can answer for
+    public LocalDate lastDay() {
+        return LocalDate.ofEpochDay(firstDay + DAYS);
+    }
+
+    // Called after a room is created or updated
+    public synchronized void putRoom(RoomAvailabilityDto room) {
+        Integer slot = slots.get(room.roomId());
+        if (slot == null) slot = allocate(room.roomId());
+
+        Segment segment = segments[slot / SEGMENT_ROOMS];
+        int index = slot % SEGMENT_ROOMS;
+        segment.roomNumbers()[index] = room.roomNumber();
+        segment.hotelIds()[index] = room.hotelId();
+        segment.types()[index] = (byte) room.roomType().ordinal();
+        segment.prices()[index] = cents(room.roomPrice());
+        segment.roomIds()[index] = room.roomId();
+    }
+
+    // Called after a room is deleted, the slot is not used again until the next rebuild
+    public synchronized void removeRoom(int roomId) {
+        Integer slot = slots.remove(roomId);
+        if (slot != null) segments[slot / SEGMENT_ROOMS].roomIds()[slot % SEGMENT_ROOMS] = 0;
+    }
+
+    // Called after a hotel is deleted together with its rooms
+    public synchronized void removeHotel(int hotelId) {
+        Segment[] current = segments;
+        for (int slot = 0; slot < size; slot++) {
+            Segment segment = current[slot / SEGMENT_ROOMS];
+            int index = slot % SEGMENT_ROOMS;
+            if (segment.hotelIds()[index] == hotelId && segment.roomIds()[index] != 0) removeRoom(segment.roomIds()[index]);
+        }
+    }
+
+    // Called after a booking is stored, nights outside the calendar are left out
+    public void book(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        Integer slot = slots.get(roomId);
+        if (slot == null) return;
+        int from = Math.max(day(checkIn), 0);
+        int to = Math.min(day(checkOut), DAYS);
+        if (from >= to) return;
+
+        MappedByteBuffer bits = segments[slot / SEGMENT_ROOMS].bits();
+        long base = (long) (slot % SEGMENT_ROOMS) * WORDS;
+        for (int word = from / Long.SIZE; word <= (to - 1) / Long.SIZE; word++) {
+            WORD.getAndBitwiseOr(bits, (int) ((base + word) * Long.BYTES), mask(word, from, to));
+        }
+    }
+
+    public boolean isFree(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        Integer slot = slots.get(roomId);
+        return slot != null && isFree(segments[slot / SEGMENT_ROOMS].bits(), slot % SEGMENT_ROOMS, day(checkIn), day(checkOut));
+    }
+
+    // Rooms free every night from check in up to check out, matching the filter, in room id order
+    public List<RoomAvailabilityDto> findAvailable(LocalDate checkIn, LocalDate checkOut, RoomFilter filter) {
+        int from = day(checkIn);
+        int to = day(checkOut);
+        if (from < 0 || to > DAYS || from >= to) throw new IllegalArgumentException("Stay must be within the calendar, " + firstDay() + " to " + lastDay());
+
+        byte type = filter.roomType() != null ? (byte) filter.roomType().ordinal() : -1;
+        long minPrice = filter.minPrice() != null ? cents(filter.minPrice()) : Long.MIN_VALUE;
+        long maxPrice = filter.maxPrice() != null ? cents(filter.maxPrice()) : Long.MAX_VALUE;
+        int hotelId = filter.hotelId() != null ? filter.hotelId() : 0;
+        int afterId = filter.afterId() != null ? filter.afterId() : 0;
+
+        // the highest room id on top, so the first page is what is left once the scan is done
+        PriorityQueue<RoomAvailabilityDto> page = new PriorityQueue<>(filter.limit() + 1, Comparator.comparing(RoomAvailabilityDto::roomId).reversed());
+        Segment[] current = segments;
+        int rooms = size;
+
+        for (int slot = 0; slot < rooms; slot++) {
+            Segment segment = current[slot / SEGMENT_ROOMS];
+            int index = slot % SEGMENT_ROOMS;
+            int roomId = segment.roomIds()[index];
+
+            if (roomId <= afterId) continue; // free slots have room id 0
+            if (type >= 0 && segment.types()[index] != type) continue;
+            if (hotelId != 0 && segment.hotelIds()[index] != hotelId) continue;
+            long price = segment.prices()[index];
+            if (price < minPrice || price > maxPrice) continue;
+            if (page.size() == filter.limit() && roomId > page.peek().roomId()) continue;
+            if (!isFree(segment.bits(), index, from, to)) continue;
+
+            page.offer(new RoomAvailabilityDto(roomId, segment.roomNumbers()[index], segment.hotelIds()[index], TYPES[segment.types()[index]], BigDecimal.valueOf(price, 2)));
+            if (page.size() > filter.limit()) page.poll();
+        }
+
+        List<RoomAvailabilityDto> available = new ArrayList<>(page);
+        available.sort(Comparator.comparing(RoomAvailabilityDto::roomId));
+        return available;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    // No bit of the nights in the range is set, one word compare covers 64 nights
+    private static boolean isFree(MappedByteBuffer bits, int index, int from, int to) {
+        long base = (long) index * WORDS;
+        for (int word = from / Long.SIZE; word <= (to - 1) / Long.SIZE; word++) {
+            if (((long) WORD.getAcquire(bits, (int) ((base + word) * Long.BYTES)) & mask(word, from, to)) != 0) return false;
+        }
+        return true;
+    }
+
+    // The bits of the word that fall inside the nights from..to
+    private static long mask(int word, int from, int to) {
+        int low = Math.max(from - word * Long.SIZE, 0);
+        int high = Math.min(to - word * Long.SIZE, Long.SIZE);
+        long mask = high == Long.SIZE ? -1L : (1L << high) - 1;
+        return mask & (-1L << low);
+    }
+
+    private int allocate(int roomId) {
+        int slot = size;
+        if (slot / SEGMENT_ROOMS == segments.length) {
+            Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = new Segment(map(segments.length));
+            segments = grown;
+        }
+        slots.put(roomId, slot);
+        size = slot + 1;
+        return slot;
+    }
+
+    // The file grows one segment at a time, new pages are zero so every night starts out free
+    private MappedByteBuffer map(int segment) {
+        try {
+            if (channel == null) {
+                Path file = Files.createTempFile("occupancy", ".bits");
+                file.toFile().deleteOnExit();
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel.map(FileChannel.MapMode.READ_WRITE, segment * SEGMENT_BYTES, SEGMENT_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map the occupancy calendar", e);
+        }
+    }
+
+    private void closeFile() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the occupancy calendar", e);
+        }
+        channel = null;
+    }
+
+    private int day(LocalDate date) {
+        return (int) (date.toEpochDay() - firstDay);
+    }
+
+    private static long cents(BigDecimal price) {
+        return price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+}
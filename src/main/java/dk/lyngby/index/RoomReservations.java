@@ -0,0 +1,140 @@
+package dk.lyngby.index;
+
+import dk.lyngby.dto.BookingDto;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// The booked nights of every room, a stay is only stored once it has claimed its nights here.
+// Each room holds an immutable array of [check in, check out) day pairs sorted by check in,
+// a claim copies the array and swaps it in with a compare-and-set, racing claims for the same room retry
+public class RoomReservations {
+
+    private static final int[] NONE = new int[0];
+
+    private static RoomReservations instance;
+
+    private final Map<Integer, AtomicReference<int[]>> rooms = new ConcurrentHashMap<>();
+
+    public static synchronized RoomReservations getInstance() {
+        if (instance == null) instance = new RoomReservations();
+        return instance;
+    }
+
+    // Bulk load at startup, the source hands every stored stay to the consumer once
+    public void rebuild(Consumer<Consumer<BookingDto>> source) {
+        Map<Integer, IntList> loaded = new HashMap<>();
+        source.accept(booking -> loaded.computeIfAbsent(booking.roomId(), id -> new IntList())
+                .add(day(booking.checkIn()), day(booking.checkOut())));
+
+        rooms.clear();
+        loaded.forEach((roomId, stays) -> rooms.put(roomId, new AtomicReference<>(stays.toSortedPairs())));
+    }
+
+    // Claims the nights from check in up to check out, false when another stay already has one of them
+    public boolean reserve(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        int from = day(checkIn);
+        int to = day(checkOut);
+        AtomicReference<int[]> stays = rooms.computeIfAbsent(roomId, id -> new AtomicReference<>(NONE));
+
+        while (true) {
+            int[] current = stays.get();
+            int at = insertionPoint(current, from);
+            if (at > 0 && current[at - 1] > from) return false; // the stay before leaves after we arrive
+            if (at < current.length && current[at] < to) return false; // the stay after arrives before we leave
+
+            int[] next = new int[current.length + 2];
+            System.arraycopy(current, 0, next, 0, at);
+            next[at] = from;
+            next[at + 1] = to;
+            System.arraycopy(current, at, next, at + 2, current.length - at);
+            if (stays.compareAndSet(current, next)) return true;
+        }
+    }
+
+    // Gives the nights back, used when the booking could not be stored
+    public void release(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        AtomicReference<int[]> stays = rooms.get(roomId);
+        if (stays == null) return;
+        int from = day(checkIn);
+        int to = day(checkOut);
+
+        while (true) {
+            int[] current = stays.get();
+            int at = insertionPoint(current, from);
+            if (at >= current.length || current[at] != from || current[at + 1] != to) return;
+
+            int[] next = new int[current.length - 2];
+            System.arraycopy(current, 0, next, 0, at);
+            System.arraycopy(current, at + 2, next, at, current.length - at - 2);
+            if (stays.compareAndSet(current, next)) return;
+        }
+    }
+
+    // Called after the room is deleted together with its bookings
+    public void removeRoom(int roomId) {
+        rooms.remove(roomId);
+    }
+
+    public boolean isFree(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        AtomicReference<int[]> stays = rooms.get(roomId);
+        if (stays == null) return true;
+        int from = day(checkIn);
+        int to = day(checkOut);
+
+        int[] current = stays.get();
+        int at = insertionPoint(current, from);
+        return (at == 0 || current[at - 1] <= from) && (at == current.length || current[at] >= to);
+    }
+
+    // Number of stays held for the room
+    public int size(int roomId) {
+        AtomicReference<int[]> stays = rooms.get(roomId);
+        return stays == null ? 0 : stays.get().length / 2;
+    }
+
+    // Index of the first pair whose check in is not before the day, pairs are two ints wide
+    private static int insertionPoint(int[] stays, int day) {
+        int low = 0;
+        int high = stays.length / 2;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (stays[middle * 2] < day) low = middle + 1;
+            else high = middle;
+        }
+        return low * 2;
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int from, int to) {
+            if (size + 2 > values.length) values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = from;
+            values[size++] = to;
+        }
+
+        private int[] toSortedPairs() {
+            long[] pairs = new long[size / 2];
+            for (int i = 0; i < pairs.length; i++) pairs[i] = (long) values[i * 2] << 32 | values[i * 2 + 1] & 0xFFFFFFFFL;
+            Arrays.sort(pairs);
+
+            int[] sorted = new int[size];
+            for (int i = 0; i < pairs.length; i++) {
+                sorted[i * 2] = (int) (pairs[i] >> 32);
+                sorted[i * 2 + 1] = (int) pairs[i];
+            }
+            return sorted;
+        }
+    }
+}
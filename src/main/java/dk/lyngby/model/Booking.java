@@ -0,0 +1,56 @@
+package dk.lyngby.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import java.time.LocalDate;
+
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "booking", indexes = {
+        @Index(name = "idx_booking_room_id_check_out", columnList = "room_id, check_out")
+})
+@NamedQueries({
+        @NamedQuery(name = "Booking.deleteAllRows", query = "DELETE from Booking"),
+})
+public class Booking {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_seq")
+    @GenericGenerator(name = "booking_seq", type = ShardedSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "booking_seq"),
+            @Parameter(name = "increment_size", value = "50")
+    })
+    @Column(name = "booking_id", nullable = false, unique = true)
+    private Integer bookingId;
+
+    @Setter
+    @Column(name = "check_in", nullable = false)
+    private LocalDate checkIn;
+
+    // the day the guest leaves, the room is free again that night
+    @Setter
+    @Column(name = "check_out", nullable = false)
+    private LocalDate checkOut;
+
+    @Setter
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "room_id", nullable = false)
+    private Room room;
+
+    // users live in the primary database while the booking lives in its hotel's shard, so no foreign key
+    @Setter
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_name", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    private User user;
+
+    public Booking(LocalDate checkIn, LocalDate checkOut) {
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+    }
+}
@@ -0,0 +1,84 @@
+package dk.lyngby.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import java.time.Instant;
+
+// The outbox. A row is written in the same transaction as the hotel or room change it describes, so a change is never
+// published without being stored and never stored without being published. It lives in the shard of the change,
+// where its position orders it by commit
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "change_event", indexes = {
+        @Index(name = "idx_change_event_created_at", columnList = "created_at"),
+        @Index(name = "idx_change_event_position", columnList = "position")
+})
+@NamedQueries({
+        @NamedQuery(name = "ChangeEvent.deleteAllRows", query = "DELETE from ChangeEvent"),
+})
+public class ChangeEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_event_seq")
+    @GenericGenerator(name = "change_event_seq", type = ShardedSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "change_event_seq"),
+            @Parameter(name = "increment_size", value = "50")
+    })
+    @Column(name = "change_event_id", nullable = false, unique = true)
+    private Integer changeEventId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false)
+    private EntityType entityType;
+
+    @Column(name = "entity_id", nullable = false)
+    private Integer entityId;
+
+    // the hotel itself for hotel changes, a room's hotel for room changes
+    @Column(name = "hotel_id", nullable = false)
+    private Integer hotelId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", nullable = false)
+    private Operation operation;
+
+    // the entity's version after the change, the ETag a cache can compare against. Null for deletes and catalog imports
+    @Column(name = "entity_version")
+    private Integer entityVersion;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "shard", nullable = false)
+    private Integer shard;
+
+    // see ChangePosition, a transaction that started earlier can still commit later. Negative until the transaction commits
+    @Setter
+    @Column(name = "position", nullable = false)
+    private Long position;
+
+    public ChangeEvent(EntityType entityType, Integer entityId, Integer hotelId, Operation operation, Integer entityVersion, Integer shard, Long position) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.hotelId = hotelId;
+        this.operation = operation;
+        this.entityVersion = entityVersion;
+        this.createdAt = Instant.now();
+        this.shard = shard;
+        this.position = position;
+    }
+
+    public enum EntityType {
+        HOTEL, ROOM
+    }
+
+    public enum Operation {
+        CREATED, UPDATED, DELETED
+    }
+}
@@ -0,0 +1,24 @@
+package dk.lyngby.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+// The position of the last change event of the shard, one row per database that is created with the schema.
+// A transaction that writes change events moves it on right before its commit and holds it locked until then,
+// so the positions are handed out in commit order and without gaps
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "change_position")
+public class ChangePosition {
+
+    public static final int ID = 1;
+
+    @Id
+    @Column(name = "change_position_id", nullable = false)
+    private Integer id = ID;
+
+    @Column(name = "position", nullable = false)
+    private Long position = 0L;
+}
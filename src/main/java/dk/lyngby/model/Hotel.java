@@ -5,6 +5,11 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -14,6 +19,8 @@ import java.util.Set;
 @ToString
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hotel")
 @Table(name = "hotel")
 @NamedQueries({
         @NamedQuery(name = "Hotel.deleteAllRows", query = "DELETE from Hotel"),
@@ -21,10 +28,20 @@ import java.util.Set;
 public class Hotel {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hotel_seq")
+    @GenericGenerator(name = "hotel_seq", type = ShardedSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "hotel_seq"),
+            @Parameter(name = "increment_size", value = "50")
+    })
     @Column(name = "hotel_id", nullable = false, unique = true)
     private Integer id;
 
+    // bumped on every update and whenever a room is added or removed, the etag of the hotel
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Integer version;
+
     @Column(name = "hotel_name", nullable = false, unique = true)
     private String hotelName;
 
@@ -32,12 +49,22 @@ public class Hotel {
     @Column(name = "hotel_address", nullable = false)
     private String hotelAddress;
 
+    // optional, hotels without a position are left out of the nearby search
+    @Setter
+    @Column(name = "latitude")
+    private Double latitude;
+
+    @Setter
+    @Column(name = "longitude")
+    private Double longitude;
+
     @Enumerated(EnumType.STRING)
     @Setter
     @Column(name = "hotel_type", nullable = false)
     private HotelType hotelType;
 
     @ToString.Exclude
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hotel.rooms")
     @OneToMany(mappedBy = "hotel", fetch = FetchType.EAGER, cascade = CascadeType.PERSIST, orphanRemoval = true)
     private Set<Room> rooms = new HashSet<>();
 
@@ -47,6 +74,15 @@ public class Hotel {
         this.hotelType = hotelType;
     }
 
+    // A detached hotel read without Hibernate, by the R2DBC dao
+    public Hotel(Integer id, Integer version, String hotelName, String hotelAddress, HotelType hotelType, Double latitude, Double longitude) {
+        this(hotelName, hotelAddress, hotelType);
+        this.id = id;
+        this.version = version;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
     public void setRooms(Set<Room> rooms) {
         if (rooms != null) {
             this.rooms = rooms;
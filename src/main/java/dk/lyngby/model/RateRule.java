@@ -0,0 +1,63 @@
+package dk.lyngby.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Set;
+
+// Multiplies the room price. A rule without min nights applies per night: on the nights inside the dates and on the weekdays.
+// A rule with min nights is a length of stay discount: it applies to the whole stay when it is long enough and starts inside the dates.
+// Empty fields match everything
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "rate_rule", indexes = {
+        @Index(name = "idx_rate_rule_hotel_id", columnList = "hotel_id")
+})
+@NamedQueries({
+        @NamedQuery(name = "RateRule.deleteAllRows", query = "DELETE from RateRule"),
+})
+public class RateRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "rate_rule_seq")
+    @GenericGenerator(name = "rate_rule_seq", type = ShardedSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "rate_rule_seq"),
+            @Parameter(name = "increment_size", value = "50")
+    })
+    @Column(name = "rate_rule_id", nullable = false, unique = true)
+    private Integer rateRuleId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "hotel_id", nullable = false)
+    private Hotel hotel;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "room_type")
+    private Room.RoomType roomType;
+
+    @Column(name = "valid_from")
+    private LocalDate validFrom;
+
+    // exclusive, like a check out
+    @Column(name = "valid_to")
+    private LocalDate validTo;
+
+    @Convert(converter = WeekdaysConverter.class)
+    @Column(name = "weekdays")
+    private Set<DayOfWeek> weekdays;
+
+    @Column(name = "min_nights")
+    private Integer minNights;
+
+    @Column(name = "multiplier", nullable = false, precision = 6, scale = 4)
+    private BigDecimal multiplier;
+}
@@ -4,6 +4,11 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import java.math.BigDecimal;
 import java.util.Objects;
@@ -11,17 +16,38 @@ import java.util.Objects;
 @Getter
 @NoArgsConstructor
 @Entity
-@Table(name = "room")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "room")
+@Table(name = "room", uniqueConstraints = {
+        @UniqueConstraint(name = Room.ROOM_NUMBER_CONSTRAINT, columnNames = {"hotel_id", "room_number"})
+}, indexes = {
+        @Index(name = "idx_room_hotel_id_room_id", columnList = "hotel_id, room_id"),
+        @Index(name = "idx_room_hotel_id_price", columnList = "hotel_id, price"),
+        @Index(name = "idx_room_type_price", columnList = "room_type, price"),
+        @Index(name = "idx_room_hotel_id_type_price", columnList = "hotel_id, room_type, price")
+})
 @NamedQueries({
         @NamedQuery(name = "Room.deleteAllRows", query = "DELETE from Room"),
 })
 public class Room {
 
+    public static final String ROOM_NUMBER_CONSTRAINT = "uk_room_hotel_id_room_number";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "room_seq")
+    @GenericGenerator(name = "room_seq", type = ShardedSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "room_seq"),
+            @Parameter(name = "increment_size", value = "50")
+    })
     @Column(name = "room_id", nullable = false, unique = true)
     private Integer roomId;
 
+    // bumped on every update, the etag of the room
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Integer version;
+
     @Setter
     @Column(name = "room_number", nullable = false)
     private Integer roomNumber;
@@ -46,6 +72,14 @@ public class Room {
         this.roomType = roomType;
     }
 
+    // A detached room read without Hibernate, by the R2DBC dao
+    public Room(Integer roomId, Integer version, Integer roomNumber, BigDecimal roomPrice, RoomType roomType, Hotel hotel) {
+        this(roomNumber, roomPrice, roomType);
+        this.roomId = roomId;
+        this.version = version;
+        this.hotel = hotel;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,37 @@
+package dk.lyngby.model;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+
+// The database sequence numbers ids within one shard, raw * shard count + shard makes them unique across all shards
+// and lets any id tell which shard it lives in. With a single database the ids are the plain sequence values
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String SHARD_INDEX = "dk.lyngby.shard.index";
+    public static final String SHARD_COUNT = "dk.lyngby.shard.count";
+
+    private int shardIndex;
+    private int shardCount;
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, parameters, serviceRegistry);
+        Map<String, Object> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        shardIndex = Integer.parseInt(String.valueOf(settings.getOrDefault(SHARD_INDEX, "0")));
+        shardCount = Integer.parseInt(String.valueOf(settings.getOrDefault(SHARD_COUNT, "1")));
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        Number raw = (Number) super.generate(session, object);
+        return Math.toIntExact(raw.longValue() * shardCount + shardIndex);
+    }
+}
@@ -0,0 +1,31 @@
+package dk.lyngby.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.time.DayOfWeek;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Stores a set of weekdays as one int, monday is bit 0
+@Converter
+public class WeekdaysConverter implements AttributeConverter<Set<DayOfWeek>, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<DayOfWeek> weekdays) {
+        if (weekdays == null || weekdays.isEmpty()) return null;
+        int mask = 0;
+        for (DayOfWeek weekday : weekdays) mask |= 1 << weekday.ordinal();
+        return mask;
+    }
+
+    @Override
+    public Set<DayOfWeek> convertToEntityAttribute(Integer mask) {
+        if (mask == null) return null;
+        Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            if ((mask & 1 << weekday.ordinal()) != 0) weekdays.add(weekday);
+        }
+        return weekdays;
+    }
+}
@@ -0,0 +1,85 @@
+package dk.lyngby.pricing;
+
+import dk.lyngby.dto.QuoteDto;
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Prices stays from the compiled rate tables of the hotels, a table is compiled on the first quote after its rules change
+public class QuoteEngine {
+
+    // Below this many rooms splitting the work costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    private static QuoteEngine instance;
+
+    private final Map<Integer, RateTable> tables = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ForkJoinPool pool;
+
+    public QuoteEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public static synchronized QuoteEngine getInstance() {
+        if (instance == null) instance = new QuoteEngine(Runtime.getRuntime().availableProcessors());
+        return instance;
+    }
+
+    // Called after a rule of the hotel is created or deleted
+    public void invalidate(int hotelId) {
+        invalidations.incrementAndGet();
+        tables.remove(hotelId);
+    }
+
+    // The rules of the hotels without a usable table are loaded in one go, the pricing itself never waits on the database
+    public List<QuoteDto> quote(List<RoomAvailabilityDto> rooms, LocalDate checkIn, LocalDate checkOut, Function<Collection<Integer>, List<RateRuleDto>> rules) {
+        Map<Integer, RateTable> hotelTables = tables(rooms, checkIn, checkOut, rules);
+        int nights = (int) ChronoUnit.DAYS.between(checkIn, checkOut);
+
+        if (rooms.size() < PARALLEL_THRESHOLD) {
+            return rooms.stream().map(room -> quote(hotelTables, room, checkIn, checkOut, nights)).toList();
+        }
+        return pool.submit(() -> rooms.parallelStream().map(room -> quote(hotelTables, room, checkIn, checkOut, nights)).toList()).join();
+    }
+
+    private static QuoteDto quote(Map<Integer, RateTable> tables, RoomAvailabilityDto room, LocalDate checkIn, LocalDate checkOut, int nights) {
+        RateTable table = tables.get(room.hotelId());
+        return new QuoteDto(room.roomId(), room.hotelId(), room.roomType(), nights, room.roomPrice(), table.price(room.roomType(), room.roomPrice(), checkIn, checkOut));
+    }
+
+    private Map<Integer, RateTable> tables(List<RoomAvailabilityDto> rooms, LocalDate checkIn, LocalDate checkOut, Function<Collection<Integer>, List<RateRuleDto>> rules) {
+        Set<Integer> hotelIds = rooms.stream().map(RoomAvailabilityDto::hotelId).collect(Collectors.toSet());
+        Map<Integer, RateTable> hotelTables = new ConcurrentHashMap<>();
+        hotelIds.forEach(hotelId -> {
+            RateTable table = tables.get(hotelId);
+            if (table != null && table.covers(checkIn, checkOut)) hotelTables.put(hotelId, table);
+        });
+
+        Set<Integer> missing = hotelIds.stream().filter(hotelId -> !hotelTables.containsKey(hotelId)).collect(Collectors.toSet());
+        if (missing.isEmpty()) return hotelTables;
+
+        // a rule written while we compile would be lost from the cached table, so the tables are only kept when nothing changed
+        long seen = invalidations.get();
+        Map<Integer, List<RateRuleDto>> rulesByHotel = rules.apply(missing).stream().collect(Collectors.groupingBy(RateRuleDto::hotelId));
+        LocalDate today = LocalDate.now();
+        for (Integer hotelId : missing) {
+            RateTable table = RateTable.compile(today, rulesByHotel.getOrDefault(hotelId, List.of()));
+            hotelTables.put(hotelId, table);
+            tables.put(hotelId, table);
+            if (invalidations.get() != seen) tables.remove(hotelId, table);
+        }
+        return hotelTables;
+    }
+}
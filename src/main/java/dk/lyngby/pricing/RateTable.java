@@ -0,0 +1,85 @@
+package dk.lyngby.pricing;
+
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The rate rules of one hotel compiled into per night price factors for every room type.
+// The factors are stored as running sums, so the factor of a whole stay is one subtraction
+public class RateTable {
+
+    // Nights covered from the day the table was compiled
+    public static final int DAYS = 730;
+    private static final Room.RoomType[] TYPES = Room.RoomType.values();
+
+    private final long firstDay;
+    // [room type][night] sum of the factors of the nights before it, DAYS + 1 wide
+    private final double[][] factorSums;
+    // [room type] length of stay rules, applied to the whole stay
+    private final List<RateRuleDto>[] stayRules;
+
+    @SuppressWarnings("unchecked")
+    private RateTable(long firstDay) {
+        this.firstDay = firstDay;
+        this.factorSums = new double[TYPES.length][DAYS + 1];
+        this.stayRules = new List[TYPES.length];
+    }
+
+    public static RateTable compile(LocalDate firstDay, List<RateRuleDto> rules) {
+        RateTable table = new RateTable(firstDay.toEpochDay());
+        double[] factors = new double[DAYS];
+
+        for (Room.RoomType type : TYPES) {
+            Arrays.fill(factors, 1.0);
+            List<RateRuleDto> stayRules = new ArrayList<>();
+
+            for (RateRuleDto rule : rules) {
+                if (rule.roomType() != null && rule.roomType() != type) continue;
+                if (rule.minNights() != null) {
+                    stayRules.add(rule);
+                    continue;
+                }
+                // rules on the same night multiply, a weekend rate inside high season stacks on top of it
+                double multiplier = rule.multiplier().doubleValue();
+                int from = rule.validFrom() != null ? (int) Math.max(rule.validFrom().toEpochDay() - table.firstDay, 0) : 0;
+                int to = rule.validTo() != null ? (int) Math.min(rule.validTo().toEpochDay() - table.firstDay, DAYS) : DAYS;
+                for (int night = from; night < to; night++) {
+                    if (rule.weekdays() == null || rule.weekdays().contains(firstDay.plusDays(night).getDayOfWeek())) factors[night] *= multiplier;
+                }
+            }
+
+            double[] sums = table.factorSums[type.ordinal()];
+            for (int night = 0; night < DAYS; night++) sums[night + 1] = sums[night] + factors[night];
+            table.stayRules[type.ordinal()] = List.copyOf(stayRules);
+        }
+        return table;
+    }
+
+    public boolean covers(LocalDate checkIn, LocalDate checkOut) {
+        return checkIn.toEpochDay() >= firstDay && checkOut.toEpochDay() - firstDay <= DAYS;
+    }
+
+    // Room price times the factors of every night, times the best length of stay discount the stay qualifies for
+    public BigDecimal price(Room.RoomType type, BigDecimal roomPrice, LocalDate checkIn, LocalDate checkOut) {
+        int from = (int) (checkIn.toEpochDay() - firstDay);
+        int to = (int) (checkOut.toEpochDay() - firstDay);
+        double[] sums = factorSums[type.ordinal()];
+
+        double factor = (sums[to] - sums[from]) * stayMultiplier(type, checkIn, to - from);
+        return roomPrice.multiply(BigDecimal.valueOf(factor)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private double stayMultiplier(Room.RoomType type, LocalDate checkIn, int nights) {
+        double best = 1.0;
+        for (RateRuleDto rule : stayRules[type.ordinal()]) {
+            if (nights >= rule.minNights() && rule.appliesTo(checkIn)) best = Math.min(best, rule.multiplier().doubleValue());
+        }
+        return best;
+    }
+}
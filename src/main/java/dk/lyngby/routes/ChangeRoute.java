@@ -0,0 +1,21 @@
+package dk.lyngby.routes;
+
+import dk.lyngby.controller.impl.ChangeController;
+import dk.lyngby.security.RouteRoles;
+import io.javalin.apibuilder.EndpointGroup;
+
+import static io.javalin.apibuilder.ApiBuilder.*;
+
+public class ChangeRoute {
+
+    private final ChangeController changeController = new ChangeController();
+
+    protected EndpointGroup getRoutes() {
+
+        return () -> {
+            path("/changes", () -> {
+                sse("/stream", changeController::stream, RouteRoles.ANYONE);
+            });
+        };
+    }
+}
@@ -16,7 +16,13 @@ public class HotelRoute {
             path("/hotels", () -> {
                 post("/", hotelController::create, RouteRoles.ADMIN, RouteRoles.MANAGER);
                 get("/", hotelController::readAll, RouteRoles.ANYONE);
+                get("/search", hotelController::search, RouteRoles.ANYONE);
+                get("/near", hotelController::readNearby, RouteRoles.ANYONE);
+                get("/stats", hotelController::readAllStats, RouteRoles.ANYONE);
+                get("/export", hotelController::exportCatalog, RouteRoles.ADMIN);
+                post("/import", hotelController::importCatalog, RouteRoles.ADMIN);
                 get("/{id}", hotelController::read, RouteRoles.ANYONE);
+                get("/{id}/stats", hotelController::readStats, RouteRoles.ANYONE);
                 put("/{id}", hotelController::update, RouteRoles.ADMIN, RouteRoles.MANAGER);
                 delete("/{id}", hotelController::delete, RouteRoles.ADMIN);
             });
@@ -0,0 +1,26 @@
+package dk.lyngby.routes;
+
+import dk.lyngby.controller.impl.MetricsController;
+import dk.lyngby.security.RouteRoles;
+import io.javalin.apibuilder.EndpointGroup;
+
+import static io.javalin.apibuilder.ApiBuilder.*;
+
+public class MetricsRoute {
+
+    private final MetricsController metricsController = new MetricsController();
+
+    protected EndpointGroup getRoutes() {
+
+        return () -> {
+            path("/metrics", () -> {
+                get("/pool", metricsController::poolMetrics, RouteRoles.ADMIN);
+                get("/db-executor", metricsController::dbExecutorMetrics, RouteRoles.ADMIN);
+                get("/cache", metricsController::cacheMetrics, RouteRoles.ADMIN);
+                get("/changes", metricsController::changeFeedMetrics, RouteRoles.ADMIN);
+                get("/price-write-behind", metricsController::priceWriteBehindMetrics, RouteRoles.ADMIN);
+                get("/rate-limit", metricsController::rateLimitMetrics, RouteRoles.ADMIN);
+            });
+        };
+    }
+}
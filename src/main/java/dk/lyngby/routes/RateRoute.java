@@ -0,0 +1,28 @@
+package dk.lyngby.routes;
+
+import dk.lyngby.controller.impl.RateController;
+import dk.lyngby.security.RouteRoles;
+import io.javalin.apibuilder.EndpointGroup;
+
+import static io.javalin.apibuilder.ApiBuilder.*;
+
+public class RateRoute {
+
+    private final RateController rateController = new RateController();
+
+    protected EndpointGroup getRoutes() {
+
+        return () -> {
+            path("/hotels/{id}/rates", () -> {
+                post("/", rateController::create, RouteRoles.ADMIN, RouteRoles.MANAGER);
+                get("/", rateController::readAll, RouteRoles.ANYONE);
+            });
+            path("/rates", () -> {
+                delete("/{id}", rateController::delete, RouteRoles.ADMIN, RouteRoles.MANAGER);
+            });
+            path("/quotes", () -> {
+                post("/", rateController::quote, RouteRoles.ANYONE);
+            });
+        };
+    }
+}
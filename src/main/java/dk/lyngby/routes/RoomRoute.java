@@ -1,5 +1,6 @@
 package dk.lyngby.routes;
 
+import dk.lyngby.controller.impl.BookingController;
 import dk.lyngby.controller.impl.RoomController;
 import dk.lyngby.security.RouteRoles;
 import io.javalin.apibuilder.EndpointGroup;
@@ -9,14 +10,20 @@ import static io.javalin.apibuilder.ApiBuilder.*;
 public class RoomRoute {
 
     private final RoomController roomController = new RoomController();
+    private final BookingController bookingController = new BookingController();
 
     protected EndpointGroup getRoutes() {
 
         return () -> {
             path("/rooms", () -> {
+                get("/", roomController::search, RouteRoles.ANYONE);
+                get("/available", roomController::readAvailable, RouteRoles.ANYONE);
                 post("/hotel/{id}", roomController::create, RouteRoles.ADMIN, RouteRoles.MANAGER);
+                post("/hotel/{id}/batch", roomController::createBatch, RouteRoles.ADMIN, RouteRoles.MANAGER);
                 get("/hotel/{id}", roomController::readAll, RouteRoles.ANYONE);
                 get("/{id}", roomController::read, RouteRoles.ANYONE);
+                post("/{id}/bookings", bookingController::create, RouteRoles.USER, RouteRoles.ADMIN, RouteRoles.MANAGER);
+                get("/{id}/bookings", bookingController::readAll, RouteRoles.ADMIN, RouteRoles.MANAGER);
                 put("/{id}", roomController::update, RouteRoles.ADMIN, RouteRoles.MANAGER);
                 delete("/{id}", roomController::delete, RouteRoles.ADMIN);
             });
@@ -1,11 +1,14 @@
 package dk.lyngby.routes;
 
 import dk.lyngby.controller.impl.ExceptionController;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.UnitOfWork;
 import dk.lyngby.exception.ApiException;
 import dk.lyngby.exception.AuthorizationException;
 import io.javalin.Javalin;
 import io.javalin.apibuilder.EndpointGroup;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
 import io.javalin.validation.ValidationException;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -20,13 +23,28 @@ public class Routes {
 
     private final HotelRoute hotelRoute = new HotelRoute();
     private final RoomRoute roomRoute = new RoomRoute();
+    private final RateRoute rateRoute = new RateRoute();
     private final AuthRoutes authRoutes = new AuthRoutes();
+    private final MetricsRoute metricsRoute = new MetricsRoute();
+    private final ChangeRoute changeRoute = new ChangeRoute();
 
     private final Logger logger = LoggerFactory.getLogger(Routes.class);
 
     private void requestInfoHandler(Context ctx) {
         String requestInfo = ctx.req().getMethod() + " " + ctx.req().getRequestURI();
         ctx.attribute("requestInfo", requestInfo);
+        String authorization = ctx.header("Authorization");
+        ReadYourWrites.bind(authorization != null ? authorization : ctx.ip());
+        ctx.attribute("unitOfWork", UnitOfWork.begin(ctx.method() != HandlerType.GET && ctx.method() != HandlerType.HEAD));
+    }
+
+    // Registered as the request logger, which Javalin calls for every request once the response is written.
+    // Unlike an after handler it also runs when the future of an async handler fails, and the request's unit of work
+    // is ended from the context because an async handler finishes on a db executor thread
+    public void requestEnded(Context ctx, Float executionTimeMs) {
+        UnitOfWork.end(ctx.attribute("unitOfWork"));
+        ReadYourWrites.unbind();
+        logger.info(" Request {} - {} was handled with status code {}", count++, ctx.attribute("requestInfo"), ctx.status());
     }
 
     public EndpointGroup getRoutes(Javalin app) {
@@ -37,10 +55,11 @@ public class Routes {
                 path("/", authRoutes.getRoutes());
                 path("/", hotelRoute.getRoutes());
                 path("/", roomRoute.getRoutes());
+                path("/", rateRoute.getRoutes());
+                path("/", metricsRoute.getRoutes());
+                path("/", changeRoute.getRoutes());
             });
 
-            app.after(ctx -> logger.info(" Request {} - {} was handled with status code {}", count++, ctx.attribute("requestInfo"), ctx.status()));
-
             app.exception(ConstraintViolationException.class, exceptionController::constraintViolationExceptionHandler);
             app.exception(ValidationException.class, exceptionController::validationExceptionHandler);
             app.exception(ApiException.class, exceptionController::apiExceptionHandler);
@@ -0,0 +1,108 @@
+package dk.lyngby.security;
+
+import dk.lyngby.config.ApplicationConfig;
+import dk.lyngby.dto.RateLimitMetricsDto;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// A token bucket per caller kept as one number, the time its bucket will be full again (GCRA). Taking a token moves that
+// time one interval ahead with a compare and set, so callers never lock each other out and different callers never share
+// anything but the map, whose reads do not lock. A bucket that is full again is the same as no bucket and is dropped,
+// so the map only holds the callers of the last burst interval
+public class RateLimiter {
+
+    private static final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final double perSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter(String name, double perSecond, int burst, LongSupplier clock) {
+        if (perSecond <= 0 || burst < 1) throw new IllegalArgumentException("A rate limit needs a positive rate and a burst of at least one");
+        this.name = name;
+        this.perSecond = perSecond;
+        this.burst = burst;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.clock = clock;
+    }
+
+    // rate.limit.<name>.per.second and rate.limit.<name>.burst in the pom file, null when the rate is 0 or missing and there is no limit.
+    // Idle buckets are dropped every burst interval, at most once a second
+    public static RateLimiter of(String name) {
+        double perSecond = getProperty("rate.limit." + name + ".per.second", 0);
+        if (perSecond <= 0) return null;
+
+        RateLimiter limiter = new RateLimiter(name, perSecond, (int) getProperty("rate.limit." + name + ".burst", 1), System::nanoTime);
+        long expiryMillis = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(limiter.burstNanos));
+        expiry.scheduleWithFixedDelay(limiter::expireIdle, expiryMillis, expiryMillis, TimeUnit.MILLISECONDS);
+        return limiter;
+    }
+
+    // Takes a token from the key's bucket. 0 when the request may go ahead, otherwise the nanos until a token is back
+    public long acquire(String key) {
+        long now = clock.getAsLong();
+        AtomicLong fullAt = buckets.get(key);
+        if (fullAt == null) fullAt = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    // A bucket taken from while it is dropped lets that one request go for free, the next one starts a full bucket
+    public int expireIdle() {
+        long now = clock.getAsLong();
+        int before = buckets.size();
+        buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+        return before - buckets.size();
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public RateLimitMetricsDto getMetrics() {
+        return new RateLimitMetricsDto(name, perSecond, burst, buckets.size(), allowed.sum(), rejected.sum());
+    }
+
+    private static double getProperty(String propName, double defaultValue) {
+        try {
+            String value = ApplicationConfig.getProperty(propName);
+            return value != null && !value.isBlank() ? Double.parseDouble(value) : defaultValue;
+        } catch (IOException e) {
+            return defaultValue;
+        }
+    }
+}
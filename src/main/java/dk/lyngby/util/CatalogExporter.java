@@ -0,0 +1,131 @@
+package dk.lyngby.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+// Streams every hotel with its rooms as NDJSON, one hotel per line, without building the catalog in memory.
+// The shards are exported one after the other, hotels are in id order within a shard
+public class CatalogExporter {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(CatalogExporter.class);
+
+    // Rooms come out grouped by hotel, so a hotel line is finished as soon as the next hotel id shows up
+    private static final String EXPORT_QUERY = """
+            SELECT h.id, h.hotelName, h.hotelAddress, h.hotelType, h.latitude, h.longitude, r.roomId, r.roomNumber, r.roomPrice, r.roomType
+            FROM Hotel h LEFT JOIN h.rooms r
+            ORDER BY h.id, r.roomNumber""";
+
+    private final List<EntityManagerFactory> factories;
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .setRootValueSeparator(null); // lines are ended by hand below
+
+    public CatalogExporter(EntityManagerFactory emf) {
+        this.factories = List.of(emf);
+    }
+
+    // Reads from each shard's replica
+    public CatalogExporter(ShardRouter shards) {
+        this.factories = shards.replicas();
+    }
+
+    public long exportCatalog(OutputStream outputStream) throws IOException {
+        long hotels = 0;
+
+        try (JsonGenerator json = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            for (EntityManagerFactory emf : factories) hotels += exportShard(emf, json);
+        }
+
+        logger.info("Exported {} hotels", hotels);
+        return hotels;
+    }
+
+    private long exportShard(EntityManagerFactory emf, JsonGenerator json) throws IOException {
+        long hotels = 0;
+
+        try (var em = emf.createEntityManager()) {
+
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setCacheMode(CacheMode.IGNORE);
+
+            // postgres only uses a server side cursor for the fetch size inside a transaction
+            em.getTransaction().begin();
+
+            try (ScrollableResults<Object[]> rows = session.createQuery(EXPORT_QUERY, Object[].class)
+                    .setFetchSize(FETCH_SIZE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+
+                Integer currentHotelId = null;
+                long rowCount = 0;
+                while (rows.next()) {
+                    Object[] row = rows.get();
+                    Integer hotelId = (Integer) row[0];
+
+                    if (!Objects.equals(hotelId, currentHotelId)) {
+                        if (currentHotelId != null) endHotel(json);
+                        startHotel(json, row);
+                        currentHotelId = hotelId;
+                        hotels++;
+                    }
+                    if (row[6] != null) writeRoom(json, row);
+
+                    // scalar rows are never managed, clearing keeps the session empty should that change
+                    if (++rowCount % FETCH_SIZE == 0) session.clear();
+                }
+                if (currentHotelId != null) endHotel(json);
+            } finally {
+                em.getTransaction().rollback(); // read only, nothing to commit
+            }
+        }
+        return hotels;
+    }
+
+    private void startHotel(JsonGenerator json, Object[] row) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", (Integer) row[0]);
+        json.writeStringField("hotelName", (String) row[1]);
+        json.writeStringField("hotelAddress", (String) row[2]);
+        json.writeStringField("hotelType", ((Hotel.HotelType) row[3]).name());
+        // a hotel without a position has neither
+        if (row[4] != null) {
+            json.writeNumberField("latitude", (Double) row[4]);
+            json.writeNumberField("longitude", (Double) row[5]);
+        }
+        json.writeArrayFieldStart("rooms");
+    }
+
+    private void writeRoom(JsonGenerator json, Object[] row) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("roomId", (Integer) row[6]);
+        json.writeNumberField("roomNumber", (Integer) row[7]);
+        json.writeNumberField("roomPrice", (BigDecimal) row[8]);
+        json.writeStringField("roomType", ((Room.RoomType) row[9]).name());
+        json.writeEndObject();
+    }
+
+    private void endHotel(JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+}
@@ -0,0 +1,200 @@
+package dk.lyngby.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dao.impl.ChangeEventDao;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.dto.ImportReportDto;
+import dk.lyngby.dto.ImportRowDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.exception.ApiException;
+import dk.lyngby.index.HotelGeoIndex;
+import dk.lyngby.index.HotelSearchIndex;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.model.ChangeEvent;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Streams rooms from NDJSON or CSV into the database, one chunk per transaction and shard
+public class CatalogImporter {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int HOTEL_ID_CACHE_SIZE = 10_000;
+    private static final Logger logger = LoggerFactory.getLogger(CatalogImporter.class);
+
+    private final ShardRouter shards;
+
+    public CatalogImporter(EntityManagerFactory emf) {
+        this(ShardRouter.of(emf, emf));
+    }
+
+    public CatalogImporter(ShardRouter shards) {
+        this.shards = shards;
+    }
+
+    public ImportReportDto importCatalog(InputStream inputStream, Format format) throws ApiException {
+        long start = System.nanoTime();
+        long[] counters = new long[3]; // rows, hotels created, rooms created
+        Map<String, Integer> hotelIds = hotelIdCache();
+
+        List<EntityManager> ems = new ArrayList<>(shards.count());
+        try (MappingIterator<ImportRowDto> rows = reader(format).readValues(inputStream)) {
+            shards.primaries().forEach(emf -> ems.add(emf.createEntityManager()));
+
+            List<ImportRowDto> chunk = new ArrayList<>(CHUNK_SIZE);
+            while (rows.hasNextValue()) {
+                ImportRowDto row = rows.nextValue();
+                if (!row.isValid()) {
+                    throw new ApiException(400, "Row " + (counters[0] + chunk.size() + 1) + " is missing hotel or room fields or has an invalid position, " + counters[0] + " rows were imported");
+                }
+                chunk.add(row);
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    commitChunk(ems, chunk, hotelIds, counters);
+                    logProgress(counters[0], start);
+                    chunk.clear();
+                }
+            }
+
+            if (!chunk.isEmpty()) commitChunk(ems, chunk, hotelIds, counters);
+
+        } catch (JsonProcessingException e) {
+            throw new ApiException(400, "Malformed row at line " + e.getLocation().getLineNr() + ": " + e.getOriginalMessage() + ", " + counters[0] + " rows were imported");
+        } catch (IOException e) {
+            throw new ApiException(400, "Could not read import: " + e.getMessage());
+        } finally {
+            ems.forEach(EntityManager::close);
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        ImportReportDto report = new ImportReportDto(counters[0], counters[1], counters[2], millis, rowsPerSecond(counters[0], millis));
+        logger.info("Import finished: {}", report);
+        return report;
+    }
+
+    // A hotel's rows go to the shard its name hashes to, the same shard the hotel api would have created it in.
+    // Each shard commits its part of the chunk on its own, a failing shard leaves the parts before it committed
+    private void commitChunk(List<EntityManager> ems, List<ImportRowDto> chunk, Map<String, Integer> hotelIds, long[] counters) {
+        Map<Integer, List<ImportRowDto>> rowsByShard = new LinkedHashMap<>();
+        chunk.forEach(row -> rowsByShard.computeIfAbsent(shards.shardOfHotelName(row.hotelName()), shard -> new ArrayList<>()).add(row));
+        rowsByShard.forEach((shard, rows) -> commitChunk(ems.get(shard), rows, hotelIds, counters));
+        counters[0] += chunk.size();
+    }
+
+    private void commitChunk(EntityManager em, List<ImportRowDto> chunk, Map<String, Integer> hotelIds, long[] counters) {
+        em.getTransaction().begin();
+        Set<Integer> touchedHotels = new HashSet<>();
+        List<Hotel> createdHotels = new ArrayList<>();
+        List<RoomAvailabilityDto> createdRooms = new ArrayList<>(chunk.size());
+
+        try {
+            for (ImportRowDto row : chunk) {
+                Integer hotelId = hotelIds.get(row.hotelName());
+
+                if (hotelId == null) {
+                    hotelId = findOrCreateHotel(em, row, createdHotels);
+                    hotelIds.put(row.hotelName(), hotelId);
+                }
+
+                Room room = new Room(row.roomNumber(), row.roomPrice(), row.roomType());
+                room.setHotel(em.getReference(Hotel.class, hotelId));
+                em.persist(room);
+                createdRooms.add(new RoomAvailabilityDto(room.getRoomId(), room.getRoomNumber(), hotelId, room.getRoomType(), room.getRoomPrice()));
+                touchedHotels.add(hotelId);
+                counters[2]++;
+            }
+
+            // the room lists changed, so the etags of the hotels have to change too
+            em.createQuery("UPDATE Hotel h SET h.version = h.version + 1 WHERE h.id IN :ids")
+                    .setParameter("ids", touchedHotels)
+                    .executeUpdate();
+            // one event per hotel rather than per room, a subscriber reloads the hotel's rooms
+            Set<Integer> createdHotelIds = createdHotels.stream().map(Hotel::getId).collect(Collectors.toSet());
+            List<ChangeEvent> events = touchedHotels.stream()
+                    .map(hotelId -> ChangeEventDao.append(em, ChangeEvent.EntityType.HOTEL, hotelId, hotelId, createdHotelIds.contains(hotelId) ? ChangeEvent.Operation.CREATED : ChangeEvent.Operation.UPDATED, null))
+                    .toList();
+            em.getTransaction().commit();
+            ReadYourWrites.recordWrite();
+            createdHotels.forEach(hotel -> {
+                HotelSearchIndex.getInstance().put(hotel.getId(), hotel.getHotelName(), hotel.getHotelAddress());
+                HotelGeoIndex.getInstance().put(hotel.getId(), hotel.getHotelName(), hotel.getHotelAddress(), hotel.getLatitude(), hotel.getLongitude());
+            });
+            createdRooms.forEach(OccupancyCalendar.getInstance()::putRoom);
+            ChangeFeed.getInstance().publish(events.stream().map(ChangeEventDto::new).toList());
+            counters[1] += createdHotels.size();
+        } catch (RuntimeException e) {
+            // earlier chunks stay committed, the ids cached from this chunk are gone with the rollback
+            em.getTransaction().rollback();
+            hotelIds.clear();
+            throw e;
+        }
+
+        em.clear(); // nothing from the chunk stays in memory
+    }
+
+    private Integer findOrCreateHotel(EntityManager em, ImportRowDto row, List<Hotel> createdHotels) {
+        List<Integer> ids = em.createQuery("SELECT h.id FROM Hotel h WHERE h.hotelName = :hotelName", Integer.class)
+                .setParameter("hotelName", row.hotelName())
+                .getResultList();
+
+        if (!ids.isEmpty()) return ids.get(0);
+
+        Hotel hotel = new Hotel(row.hotelName(), row.hotelAddress(), row.hotelType());
+        hotel.setLatitude(row.latitude());
+        hotel.setLongitude(row.longitude());
+        em.persist(hotel);
+        createdHotels.add(hotel);
+        return hotel.getId();
+    }
+
+    private ObjectReader reader(Format format) {
+        if (format == Format.CSV) {
+            return new CsvMapper().readerFor(ImportRowDto.class).with(CsvSchema.emptySchema().withHeader());
+        }
+        return new ObjectMapper().readerFor(ImportRowDto.class);
+    }
+
+    // Bounded so memory stays flat however many hotels the file contains
+    private Map<String, Integer> hotelIdCache() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > HOTEL_ID_CACHE_SIZE;
+            }
+        };
+    }
+
+    private void logProgress(long rows, long start) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Imported {} rows ({} rows/s)", rows, String.format("%.0f", rowsPerSecond(rows, millis)));
+    }
+
+    private static double rowsPerSecond(long rows, long millis) {
+        return millis == 0 ? rows : rows * 1000.0 / millis;
+    }
+}
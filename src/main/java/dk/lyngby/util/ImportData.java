@@ -0,0 +1,36 @@
+package dk.lyngby.util;
+
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.ShardRouter;
+import dk.lyngby.dto.ImportReportDto;
+import dk.lyngby.exception.ApiException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Usage: ImportData <file> [ndjson|csv], the format defaults to the file extension
+public class ImportData {
+    public static void main(String[] args) throws IOException, ApiException {
+
+        if (args.length < 1) {
+            System.err.println("Usage: ImportData <file> [ndjson|csv]");
+            return;
+        }
+
+        Path file = Path.of(args[0]);
+        CatalogImporter.Format format = args.length > 1
+                ? CatalogImporter.Format.valueOf(args[1].toUpperCase())
+                : file.toString().endsWith(".csv") ? CatalogImporter.Format.CSV : CatalogImporter.Format.NDJSON;
+
+        ShardRouter shards = HibernateConfig.getShardRouter(false);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            ImportReportDto report = new CatalogImporter(shards).importCatalog(in, format);
+            System.out.println(report);
+        }
+    }
+}
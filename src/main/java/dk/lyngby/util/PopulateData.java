@@ -28,10 +28,11 @@ public class PopulateData {
         try (var em = emf.createEntityManager()) {
             em.getTransaction().begin();
 
+            em.createNamedQuery("ChangeEvent.deleteAllRows").executeUpdate();
+            em.createNamedQuery("Booking.deleteAllRows").executeUpdate();
+            em.createNamedQuery("RateRule.deleteAllRows").executeUpdate();
             em.createNamedQuery("Room.deleteAllRows").executeUpdate();
             em.createNamedQuery("Hotel.deleteAllRows").executeUpdate();
-            em.createNativeQuery("ALTER SEQUENCE room_room_id_seq RESTART WITH 1").executeUpdate();
-            em.createNativeQuery("ALTER SEQUENCE hotel_hotel_id_seq RESTART WITH 1").executeUpdate();
 
             Hotel california = new Hotel("Hotel California", "California", Hotel.HotelType.LUXURY);
             Hotel hilton = new Hotel("Hilton", "Copenhagen", Hotel.HotelType.STANDARD);
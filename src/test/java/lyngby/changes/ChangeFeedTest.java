@@ -0,0 +1,225 @@
+package lyngby.changes;
+
+import dk.lyngby.changes.ChangeFeed;
+import dk.lyngby.dto.ChangeEventDto;
+import dk.lyngby.model.ChangeEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private static final long[] START = {0};
+    private static final Duration WRITE_TIMEOUT = Duration.ofMillis(200);
+
+    private ChangeFeed feed;
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    @DisplayName("Every subscriber gets the published events in order")
+    void fanOut() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(100, 2, WRITE_TIMEOUT);
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        feed.subscribe(first).start(List.of(), START);
+        feed.subscribe(second).start(List.of(), START);
+
+        // when
+        for (int id = 1; id <= 50; id++) feed.publish(event(id));
+
+        // then
+        awaitUntil(() -> first.ids().size() == 50 && second.ids().size() == 50);
+        assertEquals(first.ids(), second.ids());
+        assertEquals(1, first.ids().get(0));
+        assertEquals(50, first.ids().get(49));
+    }
+
+    @Test
+    @DisplayName("A subscriber that falls a full buffer behind is disconnected, the others keep getting events")
+    void slowConsumer() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(3, 1, WRITE_TIMEOUT);
+        RecordingSink slow = new RecordingSink();
+        RecordingSink fast = new RecordingSink();
+        feed.subscribe(slow); // never started, so nothing leaves its queue
+        feed.subscribe(fast).start(List.of(), START);
+        for (int id = 1; id <= 3; id++) feed.publish(event(id));
+        awaitUntil(() -> fast.ids().size() == 3);
+
+        // when
+        feed.publish(event(4));
+
+        // then
+        assertTrue(slow.isClosed());
+        assertTrue(slow.ids().isEmpty());
+        awaitUntil(() -> fast.ids().size() == 4);
+        assertEquals(1, feed.getMetrics().subscribers());
+        assertEquals(1, feed.getMetrics().slowConsumerDisconnects());
+    }
+
+    @Test
+    @DisplayName("A client that stops taking writes is disconnected after the write timeout and frees its sender")
+    void stalledClient() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(100, 1, WRITE_TIMEOUT);
+        StalledSink stalled = new StalledSink();
+        RecordingSink fast = new RecordingSink();
+        feed.subscribe(stalled).start(List.of(), START);
+        feed.subscribe(fast).start(List.of(), START);
+
+        // when
+        feed.publish(event(1));
+        feed.publish(event(2));
+
+        // then
+        awaitUntil(() -> fast.ids().size() == 2);
+        assertTrue(stalled.isClosed());
+        assertTrue(stalled.interrupted);
+        assertEquals(1, feed.getMetrics().subscribers());
+        assertEquals(1, feed.getMetrics().slowConsumerDisconnects());
+    }
+
+    @Test
+    @DisplayName("Replayed events come first and live events that were also replayed are not sent twice")
+    void replayThenLive() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(100, 1, WRITE_TIMEOUT);
+        RecordingSink sink = new RecordingSink();
+        ChangeFeed.Subscriber subscriber = feed.subscribe(sink);
+        feed.publish(event(3));
+        feed.publish(event(4));
+
+        // when
+        subscriber.start(List.of(event(2), event(3)), new long[]{1});
+        feed.publish(event(5));
+
+        // then
+        awaitUntil(() -> sink.ids().size() == 4);
+        assertEquals(List.of(2, 3, 4, 5), sink.ids());
+    }
+
+    @Test
+    @DisplayName("A client whose last event is gone is told to reload")
+    void reset() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(100, 1, WRITE_TIMEOUT);
+        RecordingSink sink = new RecordingSink();
+
+        // when
+        feed.subscribe(sink).start(null, START);
+        feed.publish(event(7));
+
+        // then
+        awaitUntil(() -> sink.ids().size() == 1);
+        assertEquals(1, sink.resets);
+    }
+
+    @Test
+    @DisplayName("The last event id does not pass a position whose transaction has not been published yet")
+    void lastEventIdWaitsForPending() throws InterruptedException {
+
+        // given
+        feed = new ChangeFeed(100, 1, WRITE_TIMEOUT);
+        RecordingSink sink = new RecordingSink();
+        feed.subscribe(sink).start(List.of(), new long[]{1});
+        feed.allocated(0, 2);
+        feed.allocated(0, 3);
+
+        // when
+        feed.publish(event(3)); // committed before position 2
+        feed.publish(event(2));
+        feed.publish(event(4));
+
+        // then
+        awaitUntil(() -> sink.ids().size() == 3);
+        assertEquals(List.of("1", "3", "4"), sink.lastEventIds());
+    }
+
+    private static ChangeEventDto event(int id) {
+        return new ChangeEventDto(id, ChangeEvent.EntityType.HOTEL, 1, 1, ChangeEvent.Operation.UPDATED, id, Instant.now(), 0, (long) id);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    // Blocks in its first write like a socket whose client stopped reading
+    private static class StalledSink extends RecordingSink {
+
+        private volatile boolean interrupted;
+
+        @Override
+        public void send(ChangeEventDto event, String lastEventId) {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class RecordingSink implements ChangeFeed.Sink {
+
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<String> lastEventIds = new ArrayList<>();
+        private volatile int resets;
+        private volatile boolean closed;
+
+        @Override
+        public synchronized void send(ChangeEventDto event, String lastEventId) {
+            ids.add(event.id());
+            lastEventIds.add(lastEventId);
+        }
+
+        @Override
+        public void reset() {
+            resets++;
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        synchronized List<Integer> ids() {
+            return new ArrayList<>(ids);
+        }
+
+        synchronized List<String> lastEventIds() {
+            return new ArrayList<>(lastEventIds);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package lyngby.config;
+
+import dk.lyngby.config.PinnedThreadMonitor;
+import io.javalin.Javalin;
+import io.javalin.util.ConcurrencyUtil;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Jetty on its platform thread pool against Jetty on virtual threads, with handlers that block the way a JDBC call does.
+// /pinned blocks inside synchronized, which keeps a virtual thread on its carrier and should take the gain away again.
+// Run with: java -cp <test classpath> lyngby.config.ServerThreadsBenchmark [concurrency] [requests] [blocking ms]
+public class ServerThreadsBenchmark {
+
+    private static final int PORT = 7171;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        long blockingMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            if (virtualThreads && !ConcurrencyUtil.isLoomAvailable()) {
+                System.out.printf("virtual threads: not available on Java %s, run on Java 21%n", Runtime.version().feature());
+                continue;
+            }
+            ConcurrencyUtil.INSTANCE.setUseLoom(virtualThreads);
+            if (virtualThreads) PinnedThreadMonitor.start(Duration.ofMillis(blockingMillis / 2));
+
+            Javalin app = Javalin.create()
+                    .get("/blocking", ctx -> {
+                        Thread.sleep(blockingMillis);
+                        ctx.result(Thread.currentThread().toString());
+                    })
+                    .get("/pinned", ctx -> {
+                        // a lock per request, nothing waits on it, the monitor alone pins the carrier
+                        synchronized (new Object()) {
+                            Thread.sleep(blockingMillis);
+                        }
+                        ctx.result(Thread.currentThread().toString());
+                    })
+                    .start(PORT);
+
+            String mode = virtualThreads ? "virtual threads" : "platform pool";
+            run(client, mode, "/blocking", Math.min(requests, concurrency), concurrency); // warm up
+            run(client, mode, "/blocking", requests, concurrency);
+            run(client, mode, "/pinned", requests, concurrency);
+            if (virtualThreads) System.out.printf("%s: %d pinned events, longest %.1f ms%n", mode, PinnedThreadMonitor.getPinnedEvents(), PinnedThreadMonitor.getMaxPinnedMillis());
+            app.stop();
+            PinnedThreadMonitor.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void run(HttpClient client, String mode, String path, int requests, int concurrency) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + path)).timeout(Duration.ofSeconds(60)).build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[requests];
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (e != null || response.statusCode() != 200) failures.incrementAndGet();
+                inFlight.release();
+            });
+        }
+        CompletableFuture.allOf(responses).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.printf("%s %s: %d requests, %d in flight, %,.0f req/s, p50 %.1f ms, p99 %.1f ms, %d failed%n", mode, path, requests, concurrency,
+                requests * 1e9 / elapsed, latencies[requests / 2] / 1e6, latencies[requests * 99 / 100] / 1e6, failures.get());
+    }
+}
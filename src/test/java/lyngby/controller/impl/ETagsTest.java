@@ -0,0 +1,41 @@
+package lyngby.controller.impl;
+
+import dk.lyngby.controller.impl.ETags;
+import io.javalin.http.Context;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ETagsTest {
+
+    @Test
+    @DisplayName("If-None-Match matches the current version, a list of etags, weak etags and *")
+    void isNotModified() {
+        assertTrue(ETags.isNotModified(context(Map.of("If-None-Match", "\"3\"")), 3));
+        assertTrue(ETags.isNotModified(context(Map.of("If-None-Match", "\"1\", \"3\"")), 3));
+        assertTrue(ETags.isNotModified(context(Map.of("If-None-Match", "W/\"3\"")), 3));
+        assertTrue(ETags.isNotModified(context(Map.of("If-None-Match", "*")), 3));
+        assertFalse(ETags.isNotModified(context(Map.of("If-None-Match", "\"2\"")), 3));
+        assertFalse(ETags.isNotModified(context(Map.of()), 3));
+        assertFalse(ETags.isNotModified(context(Map.of("If-None-Match", "\"3\"")), null));
+    }
+
+    @Test
+    @DisplayName("If-Match gives the expected version, none for * and one that never matches for foreign etags")
+    void ifMatchVersion() {
+        assertEquals(3, ETags.ifMatchVersion(context(Map.of("If-Match", "\"3\""))));
+        assertNull(ETags.ifMatchVersion(context(Map.of("If-Match", "*"))));
+        assertNull(ETags.ifMatchVersion(context(Map.of())));
+        assertEquals(-1, ETags.ifMatchVersion(context(Map.of("If-Match", "W/\"3\""))));
+        assertEquals(-1, ETags.ifMatchVersion(context(Map.of("If-Match", "\"abc\""))));
+    }
+
+    private static Context context(Map<String, String> headers) {
+        return (Context) Proxy.newProxyInstance(ETagsTest.class.getClassLoader(), new Class<?>[]{Context.class}, (proxy, method, args) ->
+                method.getName().equals("header") && args.length == 1 ? headers.get((String) args[0]) : null);
+    }
+}
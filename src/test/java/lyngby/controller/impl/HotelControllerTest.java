@@ -93,7 +93,8 @@
 //                .assertThat()
 //                .statusCode(200)
 //                // then
-//                .body("size()", equalTo(listSize));
+//                .body("hotelDtos", hasSize(listSize))
+//                .body("nextCursor", equalTo(null));
 //    }
 //
 //    @Test
@@ -0,0 +1,130 @@
+package lyngby.dao;
+
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dto.DbExecutorMetricsDto;
+import dk.lyngby.exception.ApiException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DbExecutorTest {
+
+    private DbExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+        UnitOfWork.end();
+        ReadYourWrites.unbind();
+    }
+
+    @Test
+    @DisplayName("The work runs on an executor thread with the caller's unit of work and client")
+    void carriesRequestScope() throws Exception {
+
+        // given
+        executor = new DbExecutor(2, 10, 1000);
+        UnitOfWork.Scope scope = UnitOfWork.begin(true);
+        ReadYourWrites.bind("client");
+
+        // when
+        Object[] seen = executor.supply(() -> new Object[]{Thread.currentThread(), UnitOfWork.current(), ReadYourWrites.currentClient(), UnitOfWork.isWrite()})
+                .get(1, TimeUnit.SECONDS);
+
+        // then
+        assertNotEquals(Thread.currentThread(), seen[0]);
+        assertSame(scope, seen[1]);
+        assertEquals("client", seen[2]);
+        assertEquals(true, seen[3]);
+    }
+
+    @Test
+    @DisplayName("The calling thread is left without the request once its work is handed off")
+    void callerGivesUpRequestScope() throws Exception {
+
+        // given
+        executor = new DbExecutor(2, 10, 1000);
+        UnitOfWork.Scope scope = UnitOfWork.begin(false);
+        ReadYourWrites.bind("client");
+
+        // when
+        CompletableFuture<UnitOfWork.Scope> seen = executor.supply(UnitOfWork::current);
+
+        // then
+        assertNull(UnitOfWork.current());
+        assertNull(ReadYourWrites.currentClient());
+        assertSame(scope, seen.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Work beyond the queue capacity is refused with 503")
+    void rejectsWhenQueueIsFull() throws Exception {
+
+        // given
+        executor = new DbExecutor(1, 1, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.run(() -> await(release));
+        executor.run(() -> {});
+
+        // when
+        CompletableFuture<Void> refused = executor.run(() -> {});
+        release.countDown();
+
+        // then
+        assertEquals(503, apiException(refused).getStatusCode());
+        DbExecutorMetricsDto metrics = executor.getMetrics();
+        assertEquals(1, metrics.rejected());
+        assertEquals(1, metrics.maxQueueDepth());
+    }
+
+    @Test
+    @DisplayName("Work still queued after the timeout fails with 503 and is never run")
+    void timesOutQueuedWork() throws Exception {
+
+        // given
+        executor = new DbExecutor(1, 10, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = executor.run(() -> await(release));
+        AtomicBoolean ran = new AtomicBoolean();
+
+        // when
+        CompletableFuture<Void> queued = executor.run(() -> ran.set(true));
+        assertEquals(503, apiException(queued).getStatusCode());
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+
+        // then
+        assertFalse(ran.get());
+        assertEquals(1, executor.getMetrics().timedOut());
+        assertEquals(0, executor.getMetrics().queueDepth());
+    }
+
+    private static ApiException apiException(CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        return assertInstanceOf(ApiException.class, e.getCause());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package lyngby.dao;
+
+import dk.lyngby.dao.PriceWriteBehind;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceWriteBehindTest {
+
+    // flushes only when the test asks for it
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("A room updated many times is written once with its last price")
+    void coalesce() throws IOException {
+
+        // given
+        List<Map<Integer, BigDecimal>> batches = new ArrayList<>();
+        PriceWriteBehind writeBehind = new PriceWriteBehind(dir.resolve("prices.log"), NEVER, 500, batches::add);
+        writeBehind.put(1, new BigDecimal("100"));
+        writeBehind.put(1, new BigDecimal("110"));
+        writeBehind.put(2, new BigDecimal("80"));
+        writeBehind.put(1, new BigDecimal("120"));
+
+        // when
+        writeBehind.flush();
+
+        // then
+        assertEquals(List.of(Map.of(1, new BigDecimal("120"), 2, new BigDecimal("80"))), batches);
+        assertFalse(writeBehind.hasPending());
+        assertEquals(4, writeBehind.getMetrics().journaled());
+        assertEquals(2, writeBehind.getMetrics().written());
+    }
+
+    @Test
+    @DisplayName("Acknowledged prices survive a crash, a discarded one and a line cut short do not")
+    void recover() throws IOException {
+
+        // given
+        Path journal = dir.resolve("prices.log");
+        PriceWriteBehind crashed = new PriceWriteBehind(journal, NEVER, 500, prices -> {});
+        crashed.put(1, new BigDecimal("100"));
+        crashed.put(2, new BigDecimal("80"));
+        crashed.put(1, new BigDecimal("120"));
+        crashed.discard(2);
+        Files.writeString(journal, "3 9", StandardOpenOption.APPEND);
+
+        // when
+        PriceWriteBehind restarted = new PriceWriteBehind(journal, NEVER, 500, prices -> {});
+
+        // then
+        assertEquals(new BigDecimal("120"), restarted.pendingPrice(1));
+        assertNull(restarted.pendingPrice(2));
+        assertNull(restarted.pendingPrice(3));
+    }
+
+    @Test
+    @DisplayName("Prices that could not be written stay pending and in the journal")
+    void failedWrite() throws IOException {
+
+        // given
+        Path journal = dir.resolve("prices.log");
+        PriceWriteBehind writeBehind = new PriceWriteBehind(journal, NEVER, 1, prices -> {
+            if (prices.containsKey(2)) throw new IllegalStateException("database down");
+        });
+        writeBehind.put(1, new BigDecimal("100"));
+        writeBehind.put(2, new BigDecimal("80"));
+
+        // when
+        writeBehind.flush();
+
+        // then
+        assertNull(writeBehind.pendingPrice(1));
+        assertEquals(new BigDecimal("80"), writeBehind.pendingPrice(2));
+        assertEquals(1, writeBehind.getMetrics().failedBatches());
+        PriceWriteBehind restarted = new PriceWriteBehind(journal, NEVER, 500, prices -> {});
+        assertNull(restarted.pendingPrice(1));
+        assertEquals(new BigDecimal("80"), restarted.pendingPrice(2));
+    }
+
+    @Test
+    @DisplayName("A price put while a direct update of the room runs stays pending, the older one is written before the update")
+    void putDuringDirectUpdate() throws IOException {
+
+        // given
+        Path journal = dir.resolve("prices.log");
+        List<Map<Integer, BigDecimal>> batches = new ArrayList<>();
+        PriceWriteBehind writeBehind = new PriceWriteBehind(journal, NEVER, 500, batches::add);
+        writeBehind.put(1, new BigDecimal("100"));
+
+        // when
+        boolean written = writeBehind.flush(1); // the update starts
+        writeBehind.put(1, new BigDecimal("130")); // acknowledged before the update commits
+
+        // then
+        assertTrue(written);
+        assertEquals(List.of(Map.of(1, new BigDecimal("100"))), batches);
+        assertEquals(new BigDecimal("130"), writeBehind.pendingPrice(1));
+        PriceWriteBehind restarted = new PriceWriteBehind(journal, NEVER, 500, prices -> {});
+        assertEquals(new BigDecimal("130"), restarted.pendingPrice(1));
+    }
+
+    @Test
+    @DisplayName("A direct update is refused while the room's journaled price cannot be written")
+    void directUpdateAfterFailedWrite() throws IOException {
+
+        // given
+        PriceWriteBehind writeBehind = new PriceWriteBehind(dir.resolve("prices.log"), NEVER, 500, prices -> {
+            throw new IllegalStateException("database down");
+        });
+        writeBehind.put(1, new BigDecimal("100"));
+
+        // when
+        boolean written = writeBehind.flush(1);
+
+        // then
+        assertFalse(written);
+        assertTrue(writeBehind.flush(2));
+        assertEquals(new BigDecimal("100"), writeBehind.pendingPrice(1));
+    }
+
+    @Test
+    @DisplayName("A price that comes in while the batch is written stays pending")
+    void newerPriceDuringFlush() throws IOException {
+
+        // given
+        Path journal = dir.resolve("prices.log");
+        AtomicReference<PriceWriteBehind> self = new AtomicReference<>();
+        PriceWriteBehind writeBehind = new PriceWriteBehind(journal, NEVER, 500, prices -> self.get().put(1, new BigDecimal("130")));
+        self.set(writeBehind);
+        writeBehind.put(1, new BigDecimal("120"));
+
+        // when
+        writeBehind.flush();
+
+        // then
+        assertEquals(new BigDecimal("130"), writeBehind.pendingPrice(1));
+        PriceWriteBehind restarted = new PriceWriteBehind(journal, NEVER, 500, prices -> {});
+        assertEquals(new BigDecimal("130"), restarted.pendingPrice(1));
+    }
+}
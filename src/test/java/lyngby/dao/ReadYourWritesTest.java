@@ -0,0 +1,71 @@
+package lyngby.dao;
+
+import dk.lyngby.dao.ReadYourWrites;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReadYourWritesTest {
+
+    private final EntityManagerFactory primary = emf();
+    private final EntityManagerFactory replica = emf();
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWrites.unbind();
+    }
+
+    @Test
+    @DisplayName("Reads go to the replica when the client has not written")
+    void readFromReplica() {
+
+        // given
+        ReadYourWrites.bind("reader");
+
+        // when
+        EntityManagerFactory actually = ReadYourWrites.forRead(primary, replica);
+
+        // then
+        assertSame(replica, actually);
+    }
+
+    @Test
+    @DisplayName("Reads go to the primary right after the client has written")
+    void readYourWrites() {
+
+        // given
+        ReadYourWrites.bind("writer");
+        ReadYourWrites.recordWrite();
+
+        // when
+        EntityManagerFactory actually = ReadYourWrites.forRead(primary, replica);
+
+        // then
+        assertSame(primary, actually);
+    }
+
+    @Test
+    @DisplayName("A write by one client does not move other clients to the primary")
+    void otherClientsStayOnReplica() {
+
+        // given
+        ReadYourWrites.bind("first");
+        ReadYourWrites.recordWrite();
+        ReadYourWrites.bind("second");
+
+        // when
+        EntityManagerFactory actually = ReadYourWrites.forRead(primary, replica);
+
+        // then
+        assertSame(replica, actually);
+    }
+
+    private static EntityManagerFactory emf() {
+        return (EntityManagerFactory) Proxy.newProxyInstance(ReadYourWritesTest.class.getClassLoader(), new Class<?>[]{EntityManagerFactory.class}, (proxy, method, args) -> null);
+    }
+}
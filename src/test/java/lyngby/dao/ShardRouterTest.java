@@ -0,0 +1,87 @@
+package lyngby.dao;
+
+import dk.lyngby.dao.ReadYourWrites;
+import dk.lyngby.dao.ShardRouter;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRouterTest {
+
+    private final EntityManagerFactory first = emf();
+    private final EntityManagerFactory firstReplica = emf();
+    private final EntityManagerFactory second = emf();
+    private final ShardRouter shards = new ShardRouter(List.of(first, second), List.of(firstReplica, second));
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWrites.unbind();
+    }
+
+    @Test
+    @DisplayName("An id routes to the shard it was generated in")
+    void routeById() {
+        assertEquals(0, shards.shardOf(50));
+        assertEquals(1, shards.shardOf(51));
+        assertSame(second, shards.primary(shards.shardOf(7)));
+    }
+
+    @Test
+    @DisplayName("A hotel name always lands in the same shard")
+    void routeByHotelName() {
+        int shard = shards.shardOfHotelName("Hilton");
+
+        assertEquals(shard, shards.shardOfHotelName("Hilton"));
+        assertTrue(shard == 0 || shard == 1);
+    }
+
+    @Test
+    @DisplayName("Reads go to each shard's replica when the client has not written")
+    void readFromReplicas() {
+
+        // given
+        ReadYourWrites.bind("reader");
+
+        // when
+        List<EntityManagerFactory> actually = shards.forReadAll();
+
+        // then
+        assertSame(firstReplica, actually.get(0));
+        assertSame(second, actually.get(1));
+    }
+
+    @Test
+    @DisplayName("The first rows of every shard are merged into one ordered page")
+    void gatherPage() {
+
+        // given
+        List<Integer> firstShardIds = List.of(2, 4, 6, 8);
+        List<Integer> secondShardIds = List.of(1, 3, 5, 7);
+
+        // when
+        List<Integer> actually = shards.gather(shards.primaries(), emf -> emf == first ? firstShardIds : secondShardIds, Comparator.naturalOrder(), 5);
+
+        // then
+        assertEquals(List.of(1, 2, 3, 4, 5), actually);
+    }
+
+    @Test
+    @DisplayName("A failing shard fails the whole read with its own exception")
+    void gatherFailure() {
+        assertThrows(IllegalStateException.class, () -> shards.gather(shards.primaries(), emf -> {
+            if (emf == second) throw new IllegalStateException("shard down");
+            return List.of(1);
+        }));
+    }
+
+    private static EntityManagerFactory emf() {
+        return (EntityManagerFactory) Proxy.newProxyInstance(ShardRouterTest.class.getClassLoader(), new Class<?>[]{EntityManagerFactory.class}, (proxy, method, args) -> null);
+    }
+}
@@ -0,0 +1,84 @@
+package lyngby.dao;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.UnitOfWork;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.util.PopulateData;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class UnitOfWorkTest {
+
+    private static HotelDao hotelDao;
+    private static Statistics statistics;
+    private static EntityManagerFactory emfTest;
+    private int hotelId;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        hotelDao = HotelDao.getInstance(emfTest);
+        statistics = emfTest.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @BeforeEach
+    void setUp() {
+        hotelId = PopulateData.populateData(emfTest).get(0).getHotel().getId();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        UnitOfWork.end();
+    }
+
+    @Test
+    @DisplayName("PUT /hotels/{id} validates and updates with one connection and one load of the hotel")
+    void oneConnectionPerRequest() {
+
+        // given
+        UnitOfWork.begin(true);
+
+        // when
+        hotelDao.validatePrimaryKey(hotelId);
+        hotelDao.update(hotelId, new Hotel("Hotel California", "Los Angeles", Hotel.HotelType.LUXURY));
+        UnitOfWork.end();
+
+        // then
+        assertEquals(1, statistics.getSessionOpenCount());
+        assertEquals(1, statistics.getConnectCount());
+        assertEquals("Los Angeles", hotelDao.read(hotelId).getHotelAddress());
+    }
+
+    @Test
+    @DisplayName("A transaction left open by a failed request is rolled back when the request ends")
+    void rollbackUnfinishedTransaction() {
+
+        // given
+        UnitOfWork.begin(true);
+
+        // when
+        try (var em = UnitOfWork.entityManager(emfTest)) {
+            em.getTransaction().begin();
+            em.persist(new Hotel("Ghost", "Nowhere", Hotel.HotelType.BUDGET));
+            em.flush();
+        }
+        UnitOfWork.end();
+
+        // then
+        assertNull(hotelDao.readAll().stream().filter(h -> h.getHotelName().equals("Ghost")).findFirst().orElse(null));
+    }
+}
@@ -0,0 +1,97 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.impl.BookingDao;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.exception.ApiException;
+import dk.lyngby.index.RoomReservations;
+import dk.lyngby.model.Booking;
+import dk.lyngby.model.Room;
+import dk.lyngby.util.PopulateData;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class BookingDaoTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 12, 20);
+
+    private static BookingDao bookingDao;
+    private static RoomDao roomDao;
+    private static HotelDao hotelDao;
+    private static EntityManagerFactory emfTest;
+    private Room room;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        bookingDao = BookingDao.getInstance(emfTest);
+        roomDao = RoomDao.getInstance(emfTest);
+        hotelDao = HotelDao.getInstance(emfTest);
+    }
+
+    @BeforeEach
+    void setUp() {
+        List<Room> rooms = PopulateData.populateData(emfTest);
+        room = rooms.get(0);
+    }
+
+    @Test
+    @DisplayName("A room is deleted together with its bookings and its nights are free again")
+    void deleteRoomWithBookings() throws ApiException {
+
+        // given
+        bookingDao.create(room.getRoomId(), "user", new Booking(DAY, DAY.plusDays(3)));
+
+        // when
+        roomDao.delete(room.getRoomId());
+
+        // then
+        assertTrue(bookingDao.readAll(room.getRoomId()).isEmpty());
+        assertEquals(0, RoomReservations.getInstance().size(room.getRoomId()));
+    }
+
+    @Test
+    @DisplayName("A hotel is deleted together with the bookings of its rooms")
+    void deleteHotelWithBookings() throws ApiException {
+
+        // given
+        bookingDao.create(room.getRoomId(), "user", new Booking(DAY, DAY.plusDays(3)));
+
+        // when
+        hotelDao.delete(room.getHotel().getId());
+
+        // then
+        assertFalse(hotelDao.validatePrimaryKey(room.getHotel().getId()));
+        assertTrue(bookingDao.readAll(room.getRoomId()).isEmpty());
+        assertEquals(0, RoomReservations.getInstance().size(room.getRoomId()));
+    }
+
+    @Test
+    @DisplayName("A stay overlapping one booked through another node is refused by the database")
+    void overlappingStayFromAnotherNode() throws ApiException {
+
+        // given
+        bookingDao.create(room.getRoomId(), "user", new Booking(DAY, DAY.plusDays(3)));
+        RoomReservations.getInstance().removeRoom(room.getRoomId()); // this node never saw the booking
+
+        // when
+        ApiException actually = assertThrows(ApiException.class, () -> bookingDao.create(room.getRoomId(), "other", new Booking(DAY.plusDays(1), DAY.plusDays(4))));
+
+        // then
+        assertEquals(409, actually.getStatusCode());
+        assertEquals(1, bookingDao.readAll(room.getRoomId()).size());
+        assertTrue(RoomReservations.getInstance().isFree(room.getRoomId(), DAY.plusDays(1), DAY.plusDays(4)));
+    }
+}
@@ -0,0 +1,125 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelStatsDto;
+import dk.lyngby.dto.RoomDto;
+import dk.lyngby.dto.RoomTypeStatsDto;
+import dk.lyngby.model.Room;
+import dk.lyngby.util.PopulateData;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Counts the sql statements behind the read endpoints, runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class DtoProjectionTest {
+
+    private static HotelDao hotelDao;
+    private static RoomDao roomDao;
+    private static List<Room> rooms;
+    private static Statistics statistics;
+    private static EntityManagerFactory emfTest;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        hotelDao = HotelDao.getInstance(emfTest);
+        roomDao = RoomDao.getInstance(emfTest);
+        statistics = emfTest.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @BeforeEach
+    void setUp() {
+        rooms = PopulateData.populateData(emfTest);
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("GET /hotels/{id} reads the hotel and its room numbers in two statements")
+    void readHotel() {
+
+        // given
+        int hotelId = rooms.get(0).getHotel().getId();
+
+        // when
+        HotelDto actually = hotelDao.readDto(hotelId);
+
+        // then
+        assertEquals("Hotel California", actually.getHotelName());
+        assertEquals(6, actually.getRooms().size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("GET /hotels reads a page of hotels and all their room numbers in two statements")
+    void readHotelPage() {
+
+        // when
+        List<HotelDto> actually = hotelDao.readDtoPage(null, 50);
+
+        // then
+        assertEquals(3, actually.size());
+        assertEquals(15, actually.stream().mapToInt(h -> h.getRooms().size()).sum());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("GET /rooms/{id} reads the room in one statement")
+    void readRoom() {
+
+        // given
+        int roomId = rooms.get(0).getRoomId();
+
+        // when
+        RoomDto actually = roomDao.readDto(roomId);
+
+        // then
+        assertEquals(roomId, actually.getRoomId());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("GET /rooms/hotel/{id} reads the rooms in one statement")
+    void searchRooms() {
+
+        // given
+        RoomFilter filter = new RoomFilter(rooms.get(0).getHotel().getId(), null, null, null, RoomFilter.Sort.ID, null, 51);
+
+        // when
+        List<RoomDto> actually = roomDao.search(filter);
+
+        // then
+        assertEquals(6, actually.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("GET /hotels/{id}/stats aggregates the rooms in one statement")
+    void readHotelStats() {
+
+        // given
+        int hotelId = rooms.get(0).getHotel().getId();
+
+        // when
+        HotelStatsDto actually = hotelDao.readStats(hotelId);
+
+        // then
+        assertEquals(6, actually.roomCount());
+        assertEquals(3, actually.roomTypes().size());
+        assertEquals(6, actually.roomTypes().stream().mapToLong(RoomTypeStatsDto::roomCount).sum());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,79 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.DataSourceConfig;
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.config.R2dbcConfig;
+import dk.lyngby.dao.AsyncDao;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.R2dbcHotelDao;
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.model.Hotel;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+// GET /hotels/{id} reads through Hibernate on the db executor against the same reads over R2DBC, at a growing number of
+// reads in flight. Reads the hotels already in the development database (mvn package and PopulateData first).
+// Run with: java -cp <test classpath> lyngby.dao.impl.R2dbcDaoBenchmark [reads] [in flight,...]
+public class R2dbcDaoBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int reads = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int[] inFlight = args.length > 1 ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray() : new int[]{10, 100, 1_000};
+
+        EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory(false);
+        HotelDao hotelDao = HotelDao.getInstance(emf);
+        List<Integer> hotelIds = hotelDao.readDtoPage(null, 1_000).stream().map(HotelDto::getId).toList();
+        if (hotelIds.isEmpty()) throw new IllegalStateException("No hotels in the database, run PopulateData first");
+
+        int poolSize = DataSourceConfig.getMaximumPoolSize("primary");
+        DbExecutor executor = new DbExecutor(poolSize, Arrays.stream(inFlight).max().getAsInt(), 60_000);
+        AsyncDao<Hotel, Integer, HotelDao> asyncDao = new AsyncDao<>(hotelDao, executor);
+        R2dbcHotelDao r2dbcDao = R2dbcHotelDao.getInstance(R2dbcConfig.getConnectionFactory(), R2dbcConfig.getConnectionFactory(), asyncDao);
+
+        for (int concurrency : inFlight) {
+            run("hibernate", reads, concurrency, i -> asyncDao.supply(dao -> dao.readDto(hotelIds.get(i % hotelIds.size()))));
+            run("r2dbc", reads, concurrency, i -> r2dbcDao.readDto(hotelIds.get(i % hotelIds.size())));
+        }
+
+        executor.shutdown();
+        R2dbcConfig.close();
+        DataSourceConfig.close();
+        System.exit(0);
+    }
+
+    private static void run(String name, int reads, int concurrency, IntFunction<CompletableFuture<HotelDto>> read) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[reads];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[reads];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            permits.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            futures[i] = read.apply(i).whenComplete((hotel, e) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (e != null || hotel == null) failures.incrementAndGet();
+                permits.release();
+            });
+        }
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-9s %5d in flight: %,8.0f reads/s, p50 %7.2f ms, p99 %7.2f ms, peak threads %d, %d failed%n", name, concurrency,
+                reads * 1e9 / elapsed, latencies[reads / 2] / 1e6, latencies[reads * 99 / 100] / 1e6, threads.getPeakThreadCount(), failures.get());
+    }
+}
@@ -0,0 +1,153 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.config.R2dbcConfig;
+import dk.lyngby.dao.AsyncDao;
+import dk.lyngby.dao.DbExecutor;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.R2dbcHotelDao;
+import dk.lyngby.dao.impl.R2dbcRoomDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.RoomDto;
+import dk.lyngby.model.Hotel;
+import dk.lyngby.model.Room;
+import dk.lyngby.util.PopulateData;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The R2DBC daos answer like the Hibernate daos on the same data, runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class R2dbcDaoTest {
+
+    private static HotelDao hotelDao;
+    private static RoomDao roomDao;
+    private static R2dbcHotelDao r2dbcHotelDao;
+    private static R2dbcRoomDao r2dbcRoomDao;
+    private static DbExecutor executor;
+    private static EntityManagerFactory emfTest;
+    private static List<Room> rooms;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        hotelDao = HotelDao.getInstance(emfTest);
+        roomDao = RoomDao.getInstance(emfTest);
+        executor = new DbExecutor(2, 10, 5000);
+
+        // the container behind the test factory, reached with the R2DBC driver instead
+        String jdbcUrl;
+        try (var em = emfTest.createEntityManager()) {
+            jdbcUrl = em.unwrap(Session.class).doReturningWork(connection -> connection.getMetaData().getURL());
+        }
+        ConnectionFactory connectionFactory = R2dbcConfig.createConnectionFactory("test-r2dbc", jdbcUrl, "postgres", "postgres", 2);
+        r2dbcHotelDao = R2dbcHotelDao.getInstance(connectionFactory, connectionFactory, new AsyncDao<>(hotelDao, executor));
+        r2dbcRoomDao = R2dbcRoomDao.getInstance(connectionFactory, connectionFactory, new AsyncDao<>(roomDao, executor));
+    }
+
+    @AfterAll
+    static void tearDownAll() {
+        R2dbcConfig.close();
+        executor.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        rooms = PopulateData.populateData(emfTest);
+    }
+
+    @Test
+    @DisplayName("A hotel is read with its rooms")
+    void readHotel() {
+
+        // given
+        int hotelId = rooms.get(0).getHotel().getId();
+        Hotel expected = hotelDao.read(hotelId);
+
+        // when
+        Hotel actually = r2dbcHotelDao.read(hotelId).join();
+
+        // then
+        assertEquals(expected, actually);
+        assertEquals(expected.getVersion(), actually.getVersion());
+        assertEquals(expected.getRooms(), actually.getRooms());
+    }
+
+    @Test
+    @DisplayName("readAll and readPage return the same hotels as Hibernate")
+    void readHotels() {
+        assertEquals(3, r2dbcHotelDao.readAll().join().size());
+        assertEquals(hotelDao.readPage(null, 2), r2dbcHotelDao.readPage(null, 2).join());
+    }
+
+    @Test
+    @DisplayName("The hotel dtos carry the room numbers and the version")
+    void readHotelDtos() {
+
+        // given
+        int hotelId = rooms.get(0).getHotel().getId();
+        HotelDto expected = hotelDao.readDto(hotelId);
+
+        // when
+        HotelDto actually = r2dbcHotelDao.readDto(hotelId).join();
+
+        // then
+        assertEquals(expected.getHotelName(), actually.getHotelName());
+        assertEquals(expected.getRooms(), actually.getRooms());
+        assertEquals(expected.getVersion(), actually.getVersion());
+        assertEquals(hotelDao.readDtoPage(null, 10).size(), r2dbcHotelDao.readDtoPage(null, 10).join().size());
+    }
+
+    @Test
+    @DisplayName("A room is read with its hotel")
+    void readRoom() {
+
+        // given
+        Room expected = rooms.get(0);
+
+        // when
+        Room actually = r2dbcRoomDao.read(expected.getRoomId()).join();
+        RoomDto actuallyDto = r2dbcRoomDao.readDto(expected.getRoomId()).join();
+
+        // then
+        assertEquals(expected, actually);
+        assertEquals(expected.getHotel().getId(), actuallyDto.getHotelId());
+        assertEquals(15, r2dbcRoomDao.readAll().join().size());
+    }
+
+    @Test
+    @DisplayName("Unknown ids read as null and fail the primary key check")
+    void unknownIds() {
+        assertNull(r2dbcHotelDao.read(-1).join());
+        assertNull(r2dbcRoomDao.readDto(-1).join());
+        assertFalse(r2dbcHotelDao.validatePrimaryKey(-1).join());
+        assertTrue(r2dbcRoomDao.validatePrimaryKey(rooms.get(0).getRoomId()).join());
+    }
+
+    @Test
+    @DisplayName("Writes go through Hibernate and are read back over R2DBC")
+    void createAndDelete() {
+
+        // given
+        Hotel expected = new Hotel("Radisson", "Stuttgart", Hotel.HotelType.STANDARD);
+
+        // when
+        Hotel created = r2dbcHotelDao.create(expected).join();
+
+        // then
+        assertEquals(expected, r2dbcHotelDao.read(created.getId()).join());
+        r2dbcHotelDao.delete(created.getId()).join();
+        assertFalse(r2dbcHotelDao.validatePrimaryKey(created.getId()).join());
+    }
+}
@@ -0,0 +1,56 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.RateRuleDao;
+import dk.lyngby.model.RateRule;
+import dk.lyngby.util.PopulateData;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class RateRuleDaoTest {
+
+    private static RateRuleDao rateRuleDao;
+    private static HotelDao hotelDao;
+    private static EntityManagerFactory emfTest;
+    private int hotelId;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        rateRuleDao = RateRuleDao.getInstance(emfTest);
+        hotelDao = HotelDao.getInstance(emfTest);
+    }
+
+    @BeforeEach
+    void setUp() {
+        hotelId = PopulateData.populateData(emfTest).get(0).getHotel().getId();
+    }
+
+    @Test
+    @DisplayName("A hotel is deleted together with its rate rules")
+    void deleteHotelWithRateRules() {
+
+        // given
+        RateRule rule = new RateRule();
+        rule.setMultiplier(new BigDecimal("1.25"));
+        rateRuleDao.create(hotelId, rule);
+
+        // when
+        hotelDao.delete(hotelId);
+
+        // then
+        assertFalse(hotelDao.validatePrimaryKey(hotelId));
+        assertTrue(rateRuleDao.readAll(hotelId).isEmpty());
+    }
+}
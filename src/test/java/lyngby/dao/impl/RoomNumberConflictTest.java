@@ -0,0 +1,89 @@
+package lyngby.dao.impl;
+
+import dk.lyngby.config.HibernateConfig;
+import dk.lyngby.dao.impl.HotelDao;
+import dk.lyngby.dao.impl.RoomDao;
+import dk.lyngby.model.Room;
+import dk.lyngby.util.PopulateData;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs when docker is available for the test database
+@Testcontainers(disabledWithoutDocker = true)
+class RoomNumberConflictTest {
+
+    private static RoomDao roomDao;
+    private static HotelDao hotelDao;
+    private static EntityManagerFactory emfTest;
+    private int hotelId;
+
+    @BeforeAll
+    static void setUpAll() {
+        emfTest = HibernateConfig.getEntityManagerFactory(true);
+        roomDao = RoomDao.getInstance(emfTest);
+        hotelDao = HotelDao.getInstance(emfTest);
+    }
+
+    @BeforeEach
+    void setUp() {
+        hotelId = PopulateData.populateData(emfTest).get(0).getHotel().getId();
+    }
+
+    @Test
+    @DisplayName("The room number check only looks at the given hotel")
+    void validateHotelRoomNumber() {
+        assertTrue(roomDao.validateHotelRoomNumber(100, hotelId));
+        assertFalse(roomDao.validateHotelRoomNumber(999, hotelId));
+        assertFalse(roomDao.validateHotelRoomNumber(111, hotelId));
+    }
+
+    @Test
+    @DisplayName("Inserting a taken room number fails on the unique constraint")
+    void insertTakenRoomNumber() {
+
+        // given
+        Room room = new Room(100, new BigDecimal(2500), Room.RoomType.SINGLE);
+
+        // when
+        PersistenceException actually = assertThrows(PersistenceException.class, () -> roomDao.addRoomToHotel(hotelId, room));
+
+        // then
+        assertTrue(RoomDao.isRoomNumberConflict(actually));
+    }
+
+    @Test
+    @DisplayName("Rooms with different numbers added to one hotel at the same time all go in")
+    void concurrentInserts() throws Exception {
+
+        // given
+        int versionBefore = hotelDao.readVersion(hotelId);
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        List<Future<Room>> added = new ArrayList<>();
+
+        // when
+        for (int roomNumber = 500; roomNumber < 520; roomNumber++) {
+            Room room = new Room(roomNumber, new BigDecimal(2500), Room.RoomType.SINGLE);
+            added.add(requests.submit(() -> roomDao.addRoomToHotel(hotelId, room)));
+        }
+        for (Future<Room> room : added) room.get();
+        requests.shutdown();
+
+        // then
+        assertEquals(versionBefore + 20, hotelDao.readVersion(hotelId));
+        assertTrue(roomDao.validateHotelRoomNumber(519, hotelId));
+    }
+}
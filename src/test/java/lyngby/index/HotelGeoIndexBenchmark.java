@@ -0,0 +1,62 @@
+package lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.index.HotelGeoIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Nearest hotel latency as the catalog grows, run with: java -Xmx2g -cp <test classpath> lyngby.index.HotelGeoIndexBenchmark [queries]
+// The hotels are spread around cities the way real ones are, so the cities get denser as the catalog grows
+public class HotelGeoIndexBenchmark {
+
+    private static final int[] CATALOG_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int CITIES = 500;
+
+    public static void main(String[] args) {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Random random = new Random(42);
+        double[][] cities = new double[CITIES][];
+        for (int i = 0; i < CITIES; i++) cities[i] = new double[]{random.nextDouble() * 120 - 60, random.nextDouble() * 360 - 180};
+
+        for (int hotels : CATALOG_SIZES) {
+            HotelGeoIndex index = new HotelGeoIndex();
+            long start = System.nanoTime();
+            index.rebuild(consumer -> {
+                for (int id = 1; id <= hotels; id++) {
+                    double[] position = near(cities[random.nextInt(CITIES)], random);
+                    consumer.accept(new HotelDto(id, "Hotel " + id, "Street " + id, position[0], position[1]));
+                }
+            });
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            double[][] workload = new double[queries][];
+            for (int i = 0; i < queries; i++) workload[i] = near(cities[random.nextInt(CITIES)], random);
+
+            // warm up the jit before measuring
+            for (int i = 0; i < Math.min(queries, 5_000); i++) index.nearest(workload[i][0], workload[i][1], 25, 10);
+
+            long[] latencies = new long[queries];
+            long hits = 0;
+            for (int i = 0; i < queries; i++) {
+                long t = System.nanoTime();
+                hits += index.nearest(workload[i][0], workload[i][1], 25, 10).size();
+                latencies[i] = System.nanoTime() - t;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("%,9d hotels built in %5d ms: %.1f hits/query, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    hotels, buildMillis, hits / (double) queries, millis(latencies, 0.50), millis(latencies, 0.99), latencies[queries - 1] / 1e6);
+        }
+    }
+
+    // Within roughly 20 km of the city centre
+    private static double[] near(double[] city, Random random) {
+        double latitude = city[0] + random.nextGaussian() * 0.1;
+        double longitude = city[1] + random.nextGaussian() * 0.1 / Math.cos(Math.toRadians(city[0]));
+        return new double[]{Math.max(-90, Math.min(90, latitude)), ((longitude + 540) % 360) - 180};
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[(int) (sorted.length * percentile) - 1] / 1e6;
+    }
+}
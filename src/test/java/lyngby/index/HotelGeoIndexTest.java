@@ -0,0 +1,119 @@
+package lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelNearbyDto;
+import dk.lyngby.index.HotelGeoIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotelGeoIndexTest {
+
+    private HotelGeoIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new HotelGeoIndex();
+        index.rebuild(consumer -> List.of(
+                new HotelDto(1, "Hotel California", "California", 34.0522, -118.2437),
+                new HotelDto(2, "Hilton", "Copenhagen", 55.6469, 12.6372),
+                new HotelDto(3, "Motel", "Copenhagen", 55.6761, 12.5683),
+                new HotelDto(4, "Scandic", "Lyngby", 55.7704, 12.5038),
+                new HotelDto(5, "No position", "Nowhere")
+        ).forEach(consumer));
+    }
+
+    @Test
+    @DisplayName("The nearest hotels within the radius come first")
+    void nearestFirst() {
+        // when
+        List<HotelNearbyDto> hotels = index.nearest(55.6761, 12.5683, 25, 10);
+
+        // then
+        assertEquals(List.of(3, 2, 4), ids(hotels));
+        assertEquals(0, hotels.get(0).distanceKm(), 1e-9);
+        assertEquals(4, index.size()); // the hotel without a position is left out
+    }
+
+    @Test
+    @DisplayName("Radius and limit cut the result")
+    void radiusAndLimit() {
+        assertEquals(List.of(3, 2), ids(index.nearest(55.6761, 12.5683, 10, 10)));
+        assertEquals(List.of(3), ids(index.nearest(55.6761, 12.5683, 25, 1)));
+        assertEquals(List.of(), ids(index.nearest(0, 0, 500, 10)));
+    }
+
+    @Test
+    @DisplayName("Hotels are found across the date line")
+    void acrossTheDateLine() {
+        // given
+        index.put(6, "Fiji East", "Taveuni", -16.8, 179.99);
+        index.put(7, "Fiji West", "Taveuni", -16.8, -179.99);
+
+        // then
+        assertEquals(List.of(6, 7), ids(index.nearest(-16.8, 179.99, 50, 10)));
+    }
+
+    @Test
+    @DisplayName("Moves and deletes are picked up incrementally")
+    void incrementalUpdates() {
+        // when
+        index.put(1, "Hotel California", "Lyngby", 55.7705, 12.5039);
+        index.remove(4);
+        index.put(3, "Motel", "Copenhagen", null, null);
+
+        // then
+        assertEquals(List.of(1, 2), ids(index.nearest(55.7704, 12.5038, 25, 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    @DisplayName("The same hotels as measuring the distance to every hotel")
+    void matchesFullScan() {
+        // given
+        Random random = new Random(7);
+        List<HotelDto> hotels = new ArrayList<>();
+        for (int id = 1; id <= 20_000; id++) {
+            hotels.add(new HotelDto(id, "Hotel " + id, "Address", random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+        index.rebuild(hotels::forEach);
+
+        for (int query = 0; query < 200; query++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+
+            // when
+            List<HotelNearbyDto> nearest = index.nearest(latitude, longitude, 500, 5);
+
+            // then
+            List<Integer> expected = hotels.stream()
+                    .filter(hotel -> distanceKm(latitude, longitude, hotel) <= 500)
+                    .sorted(Comparator.comparingDouble((HotelDto hotel) -> distanceKm(latitude, longitude, hotel)).thenComparing(HotelDto::getId))
+                    .limit(5)
+                    .map(HotelDto::getId)
+                    .toList();
+            assertEquals(expected, ids(nearest));
+            for (int i = 1; i < nearest.size(); i++) assertTrue(nearest.get(i - 1).distanceKm() <= nearest.get(i).distanceKm());
+        }
+    }
+
+    private static double distanceKm(double latitude, double longitude, HotelDto hotel) {
+        double dLat = Math.toRadians(hotel.getLatitude() - latitude);
+        double dLon = Math.toRadians(hotel.getLongitude() - longitude);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(hotel.getLatitude())) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * 6371.0088 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static List<Integer> ids(List<HotelNearbyDto> hotels) {
+        return hotels.stream().map(HotelNearbyDto::id).toList();
+    }
+}
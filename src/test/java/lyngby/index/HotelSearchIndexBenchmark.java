@@ -0,0 +1,74 @@
+package lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.index.HotelSearchIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Lookup latency at 1M hotels, run with: java -Xmx2g -cp <test classpath> lyngby.index.HotelSearchIndexBenchmark [hotels] [queries]
+public class HotelSearchIndexBenchmark {
+
+    private static final String[] NAME_WORDS = {"hotel", "grand", "royal", "park", "plaza", "inn", "motel", "palace", "central", "harbour",
+            "garden", "tower", "city", "scandic", "hilton", "radisson", "comwell", "marriott", "nordic", "baltic"};
+    private static final String[] CITIES = {"copenhagen", "aarhus", "odense", "aalborg", "esbjerg", "randers", "kolding", "horsens",
+            "vejle", "roskilde", "herning", "lyngby", "silkeborg", "naestved", "fredericia", "viborg", "koege", "holstebro"};
+
+    public static void main(String[] args) {
+        int hotels = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        Random random = new Random(42);
+
+        HotelSearchIndex index = new HotelSearchIndex();
+        long start = System.nanoTime();
+        index.rebuild(consumer -> {
+            for (int id = 1; id <= hotels; id++) {
+                String name = NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + word(random);
+                String address = word(random) + " " + random.nextInt(200) + ", " + CITIES[random.nextInt(CITIES.length)];
+                consumer.accept(new HotelDto(id, name, address));
+            }
+        });
+        System.out.printf("built %d hotels in %d ms%n", index.size(), (System.nanoTime() - start) / 1_000_000);
+
+        String[] workload = new String[queries];
+        for (int i = 0; i < queries; i++) workload[i] = query(random);
+
+        // warm up the jit before measuring
+        for (int i = 0; i < Math.min(queries, 5_000); i++) index.search(workload[i], 10);
+
+        long[] latencies = new long[queries];
+        long hits = 0;
+        for (int i = 0; i < queries; i++) {
+            long t = System.nanoTime();
+            hits += index.search(workload[i], 10).size();
+            latencies[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%d queries, %.1f hits/query, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                queries, hits / (double) queries, millis(latencies, 0.50), millis(latencies, 0.99), millis(latencies, 0.999), latencies[queries - 1] / 1e6);
+
+        start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) index.put(hotels + i, "Hotel " + word(random), word(random) + ", " + CITIES[random.nextInt(CITIES.length)]);
+        System.out.printf("10000 incremental puts, %.3f ms each%n", (System.nanoTime() - start) / 1e6 / 10_000);
+    }
+
+    // One to three words the way people type them, the last one cut short
+    private static String query(Random random) {
+        String full = switch (random.nextInt(3)) {
+            case 0 -> NAME_WORDS[random.nextInt(NAME_WORDS.length)];
+            case 1 -> NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + CITIES[random.nextInt(CITIES.length)];
+            default -> word(random);
+        };
+        return full.substring(0, Math.max(2, full.length() - random.nextInt(4)));
+    }
+
+    private static String word(Random random) {
+        char[] chars = new char[5 + random.nextInt(4)];
+        for (int i = 0; i < chars.length; i++) chars[i] = (char) ('a' + random.nextInt(26));
+        return new String(chars);
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[(int) (sorted.length * percentile) - 1] / 1e6;
+    }
+}
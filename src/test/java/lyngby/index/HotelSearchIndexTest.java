@@ -0,0 +1,111 @@
+package lyngby.index;
+
+import dk.lyngby.dto.HotelDto;
+import dk.lyngby.dto.HotelSearchHitDto;
+import dk.lyngby.index.HotelSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotelSearchIndexTest {
+
+    private HotelSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new HotelSearchIndex();
+        index.rebuild(consumer -> List.of(
+                new HotelDto(1, "Hotel California", "California"),
+                new HotelDto(2, "Hilton", "Copenhagen"),
+                new HotelDto(3, "Motel", "Copenhagen"),
+                new HotelDto(4, "Hôtel d'Angleterre", "Kongens Nytorv")
+        ).forEach(consumer));
+    }
+
+    @Test
+    @DisplayName("Every query word must prefix a word of the hotel")
+    void allWordsMustMatch() {
+        assertEquals(List.of(2), ids(index.search("hil cop", 10)));
+        assertEquals(List.of(), ids(index.search("hil cali", 10)));
+    }
+
+    @Test
+    @DisplayName("Name matches rank above address matches")
+    void rankedPrefixMatches() {
+        assertEquals(List.of(1), ids(index.search("cali", 10)));
+        assertEquals(List.of(1, 4), ids(index.search("hot", 10)));
+        assertEquals(List.of(3, 2), ids(index.search("copenhagen", 10))); // equal score, shorter name first
+    }
+
+    @Test
+    @DisplayName("Accents and case are ignored")
+    void normalized() {
+        assertEquals(List.of(4), ids(index.search("ANGLE", 10)));
+        assertEquals(List.of(1, 4), ids(index.search("hôt", 10)));
+    }
+
+    @Test
+    @DisplayName("Creates, updates and deletes are picked up incrementally")
+    void incrementalUpdates() {
+
+        // when
+        index.put(5, "Scandic", "Lyngby Hovedgade");
+        index.put(2, "Hilton", "Aarhus");
+        index.remove(3);
+
+        // then
+        assertEquals(List.of(5), ids(index.search("lyng", 10)));
+        assertEquals(List.of(2), ids(index.search("aar", 10)));
+        assertTrue(index.search("copenhagen", 10).isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    @DisplayName("The limit keeps the best ranked hits")
+    void limit() {
+        assertEquals(List.of(1), ids(index.search("hot", 1)));
+    }
+
+    @Test
+    @DisplayName("A rare word is found behind a word with more than a thousand hotels")
+    void rareWordBehindCommonWord() {
+
+        // given
+        index.rebuild(consumer -> {
+            for (int id = 1; id <= 2000; id++) consumer.accept(new HotelDto(id, "Copenhagen Inn " + id, "Vesterbrogade"));
+            consumer.accept(new HotelDto(2001, "Grand Copenhagen", "Vesterbrogade"));
+        });
+
+        // when
+        List<HotelSearchHitDto> hits = index.search("grand copenhagen", 10);
+
+        // then
+        assertEquals(List.of(2001), ids(hits));
+        assertEquals(List.of(2001), ids(index.search("copenhagen grand", 10)));
+    }
+
+    @Test
+    @DisplayName("Hotels added one at a time, in and out of order, are all found")
+    void manyPuts() {
+
+        // when
+        for (int id = 10; id < 3000; id += 2) index.put(id, "Harbour " + id, "Nyhavn");
+        for (int id = 11; id < 3000; id += 2) index.put(id, "Harbour " + id, "Nyhavn");
+        index.remove(2000);
+
+        // then
+        assertEquals(List.of(11), ids(index.search("harbour 11", 1)));
+        assertEquals(List.of(2999), ids(index.search("harb 2999", 10)));
+        assertTrue(index.search("harbour 2000", 10).isEmpty());
+        assertEquals(2993, index.size());
+    }
+
+    private static List<Integer> ids(List<HotelSearchHitDto> hits) {
+        return hits.stream().map(HotelSearchHitDto::id).toList();
+    }
+}
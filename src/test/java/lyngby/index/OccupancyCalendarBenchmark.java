@@ -0,0 +1,65 @@
+package lyngby.index;
+
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.model.Room;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+// Availability search latency over 100k rooms booked across a year, run with: java -cp <test classpath> lyngby.index.OccupancyCalendarBenchmark [rooms] [queries]
+public class OccupancyCalendarBenchmark {
+
+    private static final Room.RoomType[] TYPES = Room.RoomType.values();
+
+    public static void main(String[] args) {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+
+        OccupancyCalendar calendar = new OccupancyCalendar();
+        long start = System.nanoTime();
+        long[] stays = new long[1];
+        calendar.rebuild(consumer -> {
+            for (int id = 1; id <= rooms; id++) {
+                consumer.accept(new RoomAvailabilityDto(id, id % 1000, id / 100 + 1, TYPES[random.nextInt(TYPES.length)], BigDecimal.valueOf(500 + random.nextInt(4500))));
+            }
+        }, consumer -> {
+            // every room is booked about 70% of the year, in stays of one to seven nights
+            for (int id = 1; id <= rooms; id++) {
+                int day = random.nextInt(3);
+                while (day < 365) {
+                    int nights = 1 + random.nextInt(7);
+                    consumer.accept(new BookingDto(null, id, "user", today.plusDays(day), today.plusDays(day + nights)));
+                    stays[0]++;
+                    day += nights + random.nextInt(6);
+                }
+            }
+        });
+        System.out.printf("built %d rooms with %d stays in %d ms%n", calendar.size(), stays[0], (System.nanoTime() - start) / 1_000_000);
+
+        for (String name : new String[]{"warm up", "all rooms", "type and price"}) {
+            boolean filtered = !name.equals("all rooms");
+            long[] latencies = new long[queries];
+            long found = 0;
+            for (int i = 0; i < queries; i++) {
+                LocalDate from = today.plusDays(random.nextInt(358));
+                LocalDate to = from.plusDays(1 + random.nextInt(7));
+                RoomFilter filter = new RoomFilter(null, filtered ? TYPES[random.nextInt(TYPES.length)] : null, null,
+                        filtered ? BigDecimal.valueOf(1000 + random.nextInt(3000)) : null, RoomFilter.Sort.ID, null, 51);
+
+                long t = System.nanoTime();
+                found += calendar.findAvailable(from, to, filter).size();
+                latencies[i] = System.nanoTime() - t;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("%-15s %d queries, %.1f rooms/page, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    name, queries, found / (double) queries, latencies[queries / 2] / 1e6, latencies[queries * 99 / 100] / 1e6, latencies[queries - 1] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package lyngby.index;
+
+import dk.lyngby.dao.RoomFilter;
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.index.OccupancyCalendar;
+import dk.lyngby.model.Room;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OccupancyCalendarTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private OccupancyCalendar calendar;
+
+    @BeforeEach
+    void setUp() {
+        calendar = new OccupancyCalendar();
+        calendar.rebuild(consumer -> List.of(
+                new RoomAvailabilityDto(1, 100, 1, Room.RoomType.SINGLE, new BigDecimal("2520")),
+                new RoomAvailabilityDto(2, 101, 1, Room.RoomType.DOUBLE, new BigDecimal("3200")),
+                new RoomAvailabilityDto(3, 200, 2, Room.RoomType.DOUBLE, new BigDecimal("1450.50"))
+        ).forEach(consumer), consumer -> List.of(
+                // crosses the first 64 night word
+                new BookingDto(1, 2, "user", TODAY.plusDays(60), TODAY.plusDays(70))
+        ).forEach(consumer));
+    }
+
+    @Test
+    @DisplayName("A room is free when none of the nights of the stay are booked")
+    void free() {
+        assertFalse(calendar.isFree(2, TODAY.plusDays(69), TODAY.plusDays(71)));
+        assertFalse(calendar.isFree(2, TODAY.plusDays(50), TODAY.plusDays(61)));
+        assertTrue(calendar.isFree(2, TODAY.plusDays(70), TODAY.plusDays(80)));
+        assertTrue(calendar.isFree(2, TODAY.plusDays(55), TODAY.plusDays(60)));
+    }
+
+    @Test
+    @DisplayName("Available rooms match type, price and hotel")
+    void filters() {
+        LocalDate from = TODAY.plusDays(65);
+        LocalDate to = TODAY.plusDays(66);
+
+        assertEquals(List.of(1, 3), ids(calendar.findAvailable(from, to, filter(null, null, null, 10))));
+        assertEquals(List.of(3), ids(calendar.findAvailable(from, to, filter(null, Room.RoomType.DOUBLE, null, 10))));
+        assertEquals(List.of(3), ids(calendar.findAvailable(from, to, filter(null, null, new BigDecimal("2000"), 10))));
+        assertEquals(List.of(1), ids(calendar.findAvailable(from, to, filter(1, null, null, 10))));
+        assertEquals(List.of(1, 2, 3), ids(calendar.findAvailable(TODAY, TODAY.plusDays(7), filter(null, null, null, 10))));
+    }
+
+    @Test
+    @DisplayName("Pages hold the lowest room ids after the cursor")
+    void paging() {
+        assertEquals(List.of(1, 2), ids(calendar.findAvailable(TODAY, TODAY.plusDays(1), filter(null, null, null, 2))));
+        assertEquals(List.of(3), ids(calendar.findAvailable(TODAY, TODAY.plusDays(1), new RoomFilter(null, null, null, null, RoomFilter.Sort.ID, 2, 2))));
+    }
+
+    @Test
+    @DisplayName("Bookings, new rooms and deleted rooms are picked up incrementally")
+    void incrementalUpdates() {
+
+        // when
+        calendar.book(1, TODAY.plusDays(1), TODAY.plusDays(3));
+        calendar.putRoom(new RoomAvailabilityDto(4, 102, 1, Room.RoomType.SUITE, new BigDecimal("4500")));
+        calendar.removeHotel(2);
+
+        // then
+        assertEquals(List.of(2, 4), ids(calendar.findAvailable(TODAY.plusDays(2), TODAY.plusDays(4), filter(null, null, null, 10))));
+        assertEquals(3, calendar.size());
+    }
+
+    private static RoomFilter filter(Integer hotelId, Room.RoomType type, BigDecimal maxPrice, int limit) {
+        return new RoomFilter(hotelId, type, null, maxPrice, RoomFilter.Sort.ID, null, limit);
+    }
+
+    private static List<Integer> ids(List<RoomAvailabilityDto> rooms) {
+        return rooms.stream().map(RoomAvailabilityDto::roomId).toList();
+    }
+}
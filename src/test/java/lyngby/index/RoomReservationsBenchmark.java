@@ -0,0 +1,97 @@
+package lyngby.index;
+
+import dk.lyngby.index.RoomReservations;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+
+// Booking throughput when many threads race for few rooms, run with: java -cp <test classpath> lyngby.index.RoomReservationsBenchmark [threads] [rooms] [attempts per thread]
+public class RoomReservationsBenchmark {
+
+    private static final LocalDate FIRST_NIGHT = LocalDate.of(2027, 1, 1);
+
+    private record Stay(int roomId, LocalDate checkIn, LocalDate checkOut) {}
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int attempts = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        // warm up the jit before measuring
+        run("warm up", new RoomReservations(), threads, rooms, attempts / 10, false);
+        run("warm up", new RoomReservations(), threads, rooms, attempts / 10, true);
+
+        run("compare-and-set", new RoomReservations(), threads, rooms, attempts, false);
+        run("global lock", new RoomReservations(), threads, rooms, attempts, true);
+    }
+
+    private static void run(String name, RoomReservations reservations, int threads, int rooms, int attempts, boolean globalLock) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<List<Stay>> booked = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            List<Stay> stays = new ArrayList<>();
+            booked.add(stays);
+            Random random = new Random(t);
+            IntFunction<Stay> nextStay = i -> {
+                LocalDate checkIn = FIRST_NIGHT.plusDays(random.nextInt(3650));
+                return new Stay(random.nextInt(rooms), checkIn, checkIn.plusDays(1 + random.nextInt(7)));
+            };
+
+            Thread worker = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < attempts; i++) {
+                    Stay stay = nextStay.apply(i);
+                    boolean reserved;
+                    if (globalLock) {
+                        synchronized (reservations) {
+                            reserved = reservations.reserve(stay.roomId(), stay.checkIn(), stay.checkOut());
+                        }
+                    } else {
+                        reserved = reservations.reserve(stay.roomId(), stay.checkIn(), stay.checkOut());
+                    }
+                    if (reserved) stays.add(stay);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        long nanos = System.nanoTime() - begin;
+
+        List<Stay> all = booked.stream().flatMap(List::stream).toList();
+        long total = (long) threads * attempts;
+        System.out.printf("%-16s %d threads, %d rooms: %,.0f attempts/s, %d stays booked, %d double bookings%n",
+                name, threads, rooms, total * 1e9 / nanos, all.size(), doubleBookings(all));
+    }
+
+    // Stays of the same room sorted by check in must not overlap
+    private static long doubleBookings(List<Stay> stays) {
+        List<Stay> sorted = new ArrayList<>(stays);
+        sorted.sort(Comparator.comparingInt(Stay::roomId).thenComparing(Stay::checkIn));
+        long overlaps = 0;
+        for (int i = 1; i < sorted.size(); i++) {
+            Stay previous = sorted.get(i - 1);
+            Stay stay = sorted.get(i);
+            if (previous.roomId() == stay.roomId() && previous.checkOut().isAfter(stay.checkIn())) overlaps++;
+        }
+        return overlaps;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
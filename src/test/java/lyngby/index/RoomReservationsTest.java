@@ -0,0 +1,108 @@
+package lyngby.index;
+
+import dk.lyngby.dto.BookingDto;
+import dk.lyngby.index.RoomReservations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomReservationsTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 12, 20);
+
+    private RoomReservations reservations;
+
+    @BeforeEach
+    void setUp() {
+        reservations = new RoomReservations();
+        reservations.rebuild(consumer -> List.of(
+                new BookingDto(1, 1, "user", DAY, DAY.plusDays(3)),
+                new BookingDto(2, 1, "user", DAY.plusDays(7), DAY.plusDays(10))
+        ).forEach(consumer));
+    }
+
+    @Test
+    @DisplayName("A stay overlapping a stored stay is refused")
+    void overlapping() {
+        assertFalse(reservations.reserve(1, DAY.plusDays(2), DAY.plusDays(4)));
+        assertFalse(reservations.reserve(1, DAY.plusDays(6), DAY.plusDays(8)));
+        assertFalse(reservations.reserve(1, DAY.minusDays(1), DAY.plusDays(11)));
+        assertEquals(2, reservations.size(1));
+    }
+
+    @Test
+    @DisplayName("Check in on the day the previous guest checks out is allowed")
+    void backToBack() {
+        assertTrue(reservations.reserve(1, DAY.plusDays(3), DAY.plusDays(7)));
+        assertTrue(reservations.reserve(2, DAY, DAY.plusDays(3)));
+        assertEquals(3, reservations.size(1));
+    }
+
+    @Test
+    @DisplayName("Released nights can be booked again")
+    void release() {
+
+        // when
+        reservations.release(1, DAY, DAY.plusDays(3));
+
+        // then
+        assertTrue(reservations.isFree(1, DAY, DAY.plusDays(3)));
+        assertTrue(reservations.reserve(1, DAY.plusDays(1), DAY.plusDays(2)));
+    }
+
+    @Test
+    @DisplayName("A deleted room gives up all of its nights")
+    void removeRoom() {
+
+        // when
+        reservations.removeRoom(1);
+
+        // then
+        assertEquals(0, reservations.size(1));
+        assertTrue(reservations.reserve(1, DAY, DAY.plusDays(10)));
+    }
+
+    @Test
+    @DisplayName("Of many requests racing for the same nights exactly one wins")
+    void race() throws Exception {
+
+        // given
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger won = new AtomicInteger();
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t % 2; // half of them ask for a stay shifted by one night
+            futures.add(executor.submit(() -> {
+                start.await();
+                if (reservations.reserve(1, DAY.plusDays(3 + offset), DAY.plusDays(5 + offset))) won.incrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(1, won.get());
+        assertEquals(3, reservations.size(1));
+    }
+}
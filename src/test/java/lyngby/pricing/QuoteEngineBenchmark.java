@@ -0,0 +1,70 @@
+package lyngby.pricing;
+
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.model.Room;
+import dk.lyngby.pricing.QuoteEngine;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Bulk quote latency over many hotels, run with: java -cp <test classpath> lyngby.pricing.QuoteEngineBenchmark [hotels] [rooms per quote] [quotes]
+public class QuoteEngineBenchmark {
+
+    private static final Room.RoomType[] TYPES = Room.RoomType.values();
+
+    public static void main(String[] args) {
+        int hotels = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int roomsPerQuote = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int quotes = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+
+        // a season, a weekend rate, a suite rate and two length of stay discounts per hotel
+        List<RateRuleDto> rules = new ArrayList<>();
+        for (int hotel = 1; hotel <= hotels; hotel++) {
+            LocalDate season = today.plusDays(random.nextInt(300));
+            rules.add(new RateRuleDto(null, hotel, null, season, season.plusDays(60), null, null, new BigDecimal("1.30")));
+            rules.add(new RateRuleDto(null, hotel, null, null, null, Set.of(DayOfWeek.FRIDAY, DayOfWeek.SATURDAY), null, new BigDecimal("1.15")));
+            rules.add(new RateRuleDto(null, hotel, Room.RoomType.SUITE, season, season.plusDays(30), null, null, new BigDecimal("1.10")));
+            rules.add(new RateRuleDto(null, hotel, null, null, null, null, 7, new BigDecimal("0.95")));
+            rules.add(new RateRuleDto(null, hotel, null, null, null, null, 14, new BigDecimal("0.90")));
+        }
+        List<RoomAvailabilityDto> rooms = new ArrayList<>();
+        for (int id = 1; id <= roomsPerQuote; id++) {
+            rooms.add(new RoomAvailabilityDto(id, id, 1 + random.nextInt(hotels), TYPES[random.nextInt(TYPES.length)], BigDecimal.valueOf(500 + random.nextInt(4500))));
+        }
+
+        for (int parallelism : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+            QuoteEngine engine = new QuoteEngine(parallelism);
+            long start = System.nanoTime();
+            engine.quote(rooms, today.plusDays(1), today.plusDays(2), hotelIds -> rulesOf(rules, hotelIds));
+            System.out.printf("parallelism %d: compiled the tables of %d hotels in %d ms%n", parallelism, hotels, (System.nanoTime() - start) / 1_000_000);
+
+            long[] latencies = new long[quotes];
+            for (int i = 0; i < quotes; i++) {
+                LocalDate checkIn = today.plusDays(random.nextInt(700));
+                LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(21));
+                long t = System.nanoTime();
+                engine.quote(rooms, checkIn, checkOut, hotelIds -> rulesOf(rules, hotelIds));
+                latencies[i] = System.nanoTime() - t;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("parallelism %d: %d quotes of %d rooms, p50 %.3f ms, p99 %.3f ms, %,.0f rooms/s%n", parallelism, quotes, roomsPerQuote,
+                    latencies[quotes / 2] / 1e6, latencies[quotes * 99 / 100] / 1e6, roomsPerQuote * 1e9 / latencies[quotes / 2]);
+        }
+        System.exit(0);
+    }
+
+    private static List<RateRuleDto> rulesOf(List<RateRuleDto> rules, Collection<Integer> hotelIds) {
+        Set<Integer> wanted = Set.copyOf(hotelIds);
+        return rules.stream().filter(rule -> wanted.contains(rule.hotelId())).toList();
+    }
+}
@@ -0,0 +1,114 @@
+package lyngby.pricing;
+
+import dk.lyngby.dto.QuoteDto;
+import dk.lyngby.dto.RateRuleDto;
+import dk.lyngby.dto.RoomAvailabilityDto;
+import dk.lyngby.model.Room;
+import dk.lyngby.pricing.QuoteEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QuoteEngineTest {
+
+    // a monday far enough ahead that every stay below is in the future
+    private static final LocalDate MONDAY = LocalDate.now().plusDays(14).with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+    private static final RoomAvailabilityDto SINGLE = new RoomAvailabilityDto(1, 100, 1, Room.RoomType.SINGLE, new BigDecimal("1000"));
+    private static final RoomAvailabilityDto SUITE = new RoomAvailabilityDto(2, 101, 1, Room.RoomType.SUITE, new BigDecimal("2000"));
+
+    private QuoteEngine engine;
+    private List<RateRuleDto> rules;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        engine = new QuoteEngine(2);
+        loads = new AtomicInteger();
+        rules = new ArrayList<>(List.of(
+                // weekend nights cost 25% more
+                new RateRuleDto(1, 1, null, null, null, Set.of(DayOfWeek.FRIDAY, DayOfWeek.SATURDAY), null, new BigDecimal("1.25")),
+                // suites are 10% off in the second week
+                new RateRuleDto(2, 1, Room.RoomType.SUITE, MONDAY.plusDays(7), MONDAY.plusDays(14), null, null, new BigDecimal("0.90")),
+                // a week or more gets 5% off, two weeks 10%, the best discount wins
+                new RateRuleDto(3, 1, null, null, null, null, 7, new BigDecimal("0.95")),
+                new RateRuleDto(4, 1, null, null, null, null, 14, new BigDecimal("0.90"))
+        ));
+    }
+
+    @Test
+    @DisplayName("Weekday and date rules apply per night and stack")
+    void nightlyRules() {
+
+        // when monday to monday, friday and saturday are weekend nights
+        List<QuoteDto> quotes = quote(List.of(SINGLE, SUITE), MONDAY, MONDAY.plusDays(3));
+        List<QuoteDto> weekend = quote(List.of(SUITE), MONDAY.plusDays(11), MONDAY.plusDays(13));
+
+        // then
+        assertEquals(new BigDecimal("3000.00"), quotes.get(0).totalPrice());
+        assertEquals(new BigDecimal("6000.00"), quotes.get(1).totalPrice());
+        assertEquals(new BigDecimal("4500.00"), weekend.get(0).totalPrice()); // 2000 * 1.25 * 0.9 * 2
+    }
+
+    @Test
+    @DisplayName("Only the best length of stay discount applies")
+    void lengthOfStay() {
+        assertEquals(new BigDecimal("7125.00"), quote(List.of(SINGLE), MONDAY, MONDAY.plusDays(7)).get(0).totalPrice()); // (5 + 2 * 1.25) * 1000 * 0.95
+        assertEquals(new BigDecimal("13500.00"), quote(List.of(SINGLE), MONDAY, MONDAY.plusDays(14)).get(0).totalPrice()); // (10 + 4 * 1.25) * 1000 * 0.9
+    }
+
+    @Test
+    @DisplayName("Tables are compiled once and again after the rules change")
+    void compiledOnce() {
+
+        // when
+        quote(List.of(SINGLE), MONDAY, MONDAY.plusDays(1));
+        quote(List.of(SUITE), MONDAY, MONDAY.plusDays(1));
+        rules.add(new RateRuleDto(5, 1, null, MONDAY, MONDAY.plusDays(1), null, null, new BigDecimal("2")));
+        engine.invalidate(1);
+        List<QuoteDto> quotes = quote(List.of(SINGLE), MONDAY, MONDAY.plusDays(1));
+
+        // then
+        assertEquals(2, loads.get());
+        assertEquals(new BigDecimal("2000.00"), quotes.get(0).totalPrice());
+    }
+
+    @Test
+    @DisplayName("Large quotes run in parallel and keep the order of the rooms")
+    void parallel() {
+
+        // given
+        List<RoomAvailabilityDto> rooms = IntStream.rangeClosed(1, 1000)
+                .mapToObj(id -> new RoomAvailabilityDto(id, id, id % 10, Room.RoomType.DOUBLE, BigDecimal.valueOf(id)))
+                .toList();
+
+        // when
+        List<QuoteDto> quotes = quote(rooms, MONDAY, MONDAY.plusDays(1));
+
+        // then
+        assertEquals(1000, quotes.size());
+        assertEquals(rooms.stream().map(RoomAvailabilityDto::roomId).toList(), quotes.stream().map(QuoteDto::roomId).toList());
+        assertEquals(new BigDecimal("1000.00"), quotes.get(999).totalPrice()); // hotel 0 has no rules
+    }
+
+    private List<QuoteDto> quote(List<RoomAvailabilityDto> rooms, LocalDate checkIn, LocalDate checkOut) {
+        return engine.quote(rooms, checkIn, checkOut, this::rules);
+    }
+
+    private List<RateRuleDto> rules(Collection<Integer> hotelIds) {
+        loads.incrementAndGet();
+        return rules.stream().filter(rule -> hotelIds.contains(rule.hotelId())).toList();
+    }
+}
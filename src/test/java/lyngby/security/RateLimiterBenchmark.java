@@ -0,0 +1,87 @@
+package lyngby.security;
+
+import dk.lyngby.security.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of the limiter with every thread on one caller's bucket against every thread on callers of its own, next to
+// a bucket that takes a lock. Run with: java -cp <test classpath> lyngby.security.RateLimiterBenchmark [threads] [seconds] [callers]
+public class RateLimiterBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int callers = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        String[] keys = new String[callers];
+        for (int i = 0; i < callers; i++) keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // a rate no caller reaches in the run, every request takes a token and moves its bucket
+            RateLimiter limiter = new RateLimiter("benchmark", 1e9, 1_000_000, System::nanoTime);
+            LockedBucket locked = new LockedBucket(1e9, 1_000_000);
+            run(threads, seconds, "lock-free, one caller", worker -> limiter.acquire(keys[0]));
+            run(threads, seconds, "lock-free, " + callers + " callers", worker -> limiter.acquire(keys[(int) (worker % callers)]));
+            run(threads, seconds, "synchronized, one caller", worker -> locked.acquire());
+        }
+        System.exit(0);
+    }
+
+    private static void run(int threads, int seconds, String name, Acquire acquire) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t * 7919L;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long i = seed;
+                long done = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < end) {
+                    acquire.acquire(i++);
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        System.out.printf("%d threads, %s: %,.0f acquires/s%n", threads, name, operations.sum() / (double) seconds);
+    }
+
+    private interface Acquire {
+        long acquire(long worker);
+    }
+
+    // The same bucket behind a monitor, what the limiter would be with a lock per caller
+    private static class LockedBucket {
+
+        private final long intervalNanos;
+        private final long burstNanos;
+        private long fullAt = System.nanoTime();
+
+        LockedBucket(double perSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.burstNanos = intervalNanos * burst;
+        }
+
+        synchronized long acquire() {
+            long now = System.nanoTime();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) return wait;
+            fullAt = next;
+            return 0;
+        }
+    }
+}
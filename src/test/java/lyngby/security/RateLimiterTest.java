@@ -0,0 +1,98 @@
+package lyngby.security;
+
+import dk.lyngby.security.RateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final RateLimiter limiter = new RateLimiter("test", 10, 3, now::get);
+
+    @Test
+    @DisplayName("A caller gets its burst at once and then one request per interval")
+    void burstThenRate() {
+
+        // given
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.acquire("client"));
+
+        // when
+        long wait = limiter.acquire("client");
+
+        // then
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait);
+        now.addAndGet(wait);
+        assertEquals(0, limiter.acquire("client"));
+        assertTrue(limiter.acquire("client") > 0);
+        assertEquals(4, limiter.getMetrics().allowed());
+        assertEquals(2, limiter.getMetrics().rejected());
+    }
+
+    @Test
+    @DisplayName("Callers have their own buckets")
+    void perKey() {
+
+        // given
+        for (int i = 0; i < 3; i++) limiter.acquire("busy");
+
+        // when
+        long wait = limiter.acquire("quiet");
+
+        // then
+        assertEquals(0, wait);
+        assertTrue(limiter.acquire("busy") > 0);
+    }
+
+    @Test
+    @DisplayName("A bucket is dropped once it is full again, the caller starts over with a full one")
+    void expireIdle() {
+
+        // given
+        limiter.acquire("gone");
+        limiter.acquire("busy");
+        limiter.acquire("busy");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+
+        // when
+        int expired = limiter.expireIdle();
+
+        // then
+        assertEquals(1, expired);
+        assertEquals(1, limiter.size());
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.acquire("gone"));
+    }
+
+    @Test
+    @DisplayName("Threads taking from the same bucket at once never get more than the burst")
+    void concurrentAcquire() throws InterruptedException {
+
+        // given
+        RateLimiter shared = new RateLimiter("test", 1, 100, now::get);
+        AtomicInteger allowed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        // when
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (shared.acquire("client") == 0) allowed.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        // then
+        assertEquals(100, allowed.get());
+        assertEquals(7_900, shared.getMetrics().rejected());
+    }
+}